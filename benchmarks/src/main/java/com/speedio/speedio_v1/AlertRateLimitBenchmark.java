@@ -0,0 +1,47 @@
+package com.speedio.speedio_v1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EmailAlertSender's per-recipient daily quota under contention: four threads reserving and
+ * releasing quota for a small shared set of recipients, as concurrent download and upload
+ * handlers would.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Thread)
+public class AlertRateLimitBenchmark {
+
+    private static final String[] RECIPIENTS = {
+            "ops@example.com", "noc@example.com", "branch-1@example.com", "branch-2@example.com"
+    };
+
+    private final LocalDate today = LocalDate.now();
+    private int next;
+
+    @Benchmark
+    public boolean reserveAndRelease() {
+        String recipient = RECIPIENTS[next++ & (RECIPIENTS.length - 1)];
+        boolean reserved = EmailAlertSender.reserveQuota(recipient, today);
+        if (reserved) {
+            EmailAlertSender.releaseQuota(recipient); // Keep the quota from running out
+        }
+        return reserved;
+    }
+}
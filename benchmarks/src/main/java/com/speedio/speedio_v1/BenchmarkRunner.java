@@ -0,0 +1,33 @@
+package com.speedio.speedio_v1;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Runs every benchmark with the GC profiler, so gc.alloc.rate.norm (bytes allocated per operation)
+ * is reported next to the timings, and writes jmh-baseline.json for comparison with later runs.
+ * Arguments, if any, are handed to the regular JMH command line instead.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        if (args.length > 0) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        Options options = new OptionsBuilder()
+                .include(BenchmarkRunner.class.getPackageName() + "\\..*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("jmh-baseline.json")
+                .build();
+        new Runner(options).run();
+    }
+}
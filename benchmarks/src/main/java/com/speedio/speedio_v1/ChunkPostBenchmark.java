@@ -0,0 +1,79 @@
+package com.speedio.speedio_v1;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posting one 1 MB chunk through the shared keep-alive pool to a loopback server that answers like
+ * the real upload endpoint. Runs fully offline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChunkPostBenchmark {
+
+    private static final byte[] REPLY = "Chunk received, waiting for more chunks".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private String url;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/upload", exchange -> {
+            byte[] drain = new byte[64 * 1024];
+            try (InputStream body = exchange.getRequestBody()) {
+                while (body.read(drain) != -1) {
+                    // Discard the chunk
+                }
+            }
+            exchange.sendResponseHeaders(200, REPLY.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(REPLY);
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/upload";
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        HttpClientPool.shutdown();
+        server.stop(0);
+    }
+
+    @Benchmark
+    public String postChunk() throws IOException {
+        SyntheticChunkEntity chunk = new SyntheticChunkEntity("benchmark-file", 1, 10, 10, 1024 * 1024);
+        TestRun run = new TestRun(TestRun.DEFAULT_TIMEOUT_MILLIS);
+        try {
+            return UploadSpeedCheckHandler.postChunk(HttpClientPool.getClient(), url, chunk, run);
+        } finally {
+            run.complete();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.speedio.speedio_v1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mbps conversion and formatting as done for every result: BigDecimal bit rate to double, the
+ * label's String.format, and the upload path's round-to-two-decimals.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MbpsConversionBenchmark {
+
+    @Param({"1234567.891", "987654321.0123"})
+    private String bitsPerSecond;
+
+    private BigDecimal transferRateBit;
+    private double mbps;
+
+    @Setup
+    public void setUp() {
+        transferRateBit = new BigDecimal(bitsPerSecond);
+        mbps = transferRateBit.doubleValue() / (1024 * 1024);
+    }
+
+    @Benchmark
+    public double convert() {
+        return transferRateBit.doubleValue() / (1024 * 1024);
+    }
+
+    @Benchmark
+    public String format() {
+        return String.format("%.2f Mbps", mbps);
+    }
+
+    @Benchmark
+    public double roundTwoDecimals() {
+        return Math.round(mbps * 100.0) / 100.0;
+    }
+
+    @Benchmark
+    public String snapshotText() {
+        return new StatsSnapshot(SpeedStatistics.Window.ONE_HOUR, 60, mbps, mbps, mbps, mbps, mbps, mbps, mbps).toString();
+    }
+}
@@ -0,0 +1,57 @@
+package com.speedio.speedio_v1;
+
+import fr.bmartel.speedtest.SpeedTestReport;
+import fr.bmartel.speedtest.model.SpeedTestMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cost of one jspeedtest progress event: the handler's path into an atomic latest-value slot (what
+ * ProgressSink does) against formatting a label string per event, as the handler used to.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProgressCallbackBenchmark {
+
+    private final AtomicLong latest = new AtomicLong();
+    private DownloadSpeedCheckHandler handler;
+    private SpeedTestReport report;
+
+    @Setup
+    public void setUp() {
+        handler = new DownloadSpeedCheckHandler(speed -> { }, 50.0, () -> { });
+        handler.setProgressListener(speed -> latest.set(Double.doubleToRawLongBits(speed)));
+        long now = System.currentTimeMillis();
+        report = new SpeedTestReport(SpeedTestMode.DOWNLOAD, 42.5f, now - 1500, now, 4_500_000L, 10_485_760L,
+                new BigDecimal("3000000.123456"), new BigDecimal("24000000.987654"), 1);
+    }
+
+    @Benchmark
+    public long handlerProgress() {
+        handler.handleProgress(42.5f, report);
+        return latest.get();
+    }
+
+    @Benchmark
+    public void formatPerEvent(Blackhole blackhole) {
+        double currentSpeed = report.getTransferRateBit().doubleValue() / (1024 * 1024);
+        blackhole.consume(String.format("%.2f Mbps", currentSpeed));
+    }
+}
@@ -0,0 +1,47 @@
+package com.speedio.speedio_v1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generating one 1 MB upload chunk into a discarding stream. gc.alloc.rate.norm should stay in the
+ * a few kilobytes (multipart head and tail), independent of the chunk size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UploadPayloadBenchmark {
+
+    private static final long CHUNK_BYTES = 1024 * 1024;
+
+    private final OutputStream sink = OutputStream.nullOutputStream();
+    private final byte[] block = new byte[64 * 1024];
+    private long state = 0x9E3779B97F4A7C15L;
+
+    @Benchmark
+    public long writeChunk() throws IOException {
+        SyntheticChunkEntity chunk = new SyntheticChunkEntity("benchmark-file", 1, 10, 10, CHUNK_BYTES);
+        chunk.writeTo(sink);
+        return chunk.getContentLength();
+    }
+
+    @Benchmark
+    public long fillBlock() {
+        state = SyntheticChunkEntity.fillRandom(block, block.length, state);
+        return state;
+    }
+}
@@ -0,0 +1,87 @@
+package com.speedio.speedio_v1;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits and convergence settings for an adaptive speed test: the test runs until the throughput
+ * estimate has stayed within {@code tolerance} for {@code stableWindows} consecutive windows, or
+ * until it has used {@code maxBytes} or {@code maxMillis}, whichever comes first.
+ */
+public final class AdaptiveTestPolicy {
+
+    private static final long DEFAULT_MAX_BYTES = 100L * 1024 * 1024;
+    private static final long DEFAULT_MAX_MILLIS = TimeUnit.SECONDS.toMillis(15);
+    private static final double DEFAULT_TOLERANCE = 0.05;
+    private static final long DEFAULT_SAMPLE_INTERVAL_MILLIS = 100;
+    private static final long DEFAULT_WINDOW_MILLIS = 500;
+    private static final int DEFAULT_STABLE_WINDOWS = 4;
+
+    private final long maxBytes;
+    private final long maxMillis;
+    private final double tolerance;
+    private final long sampleIntervalMillis;
+    private final long windowMillis;
+    private final int stableWindows;
+
+    public AdaptiveTestPolicy(long maxBytes, long maxMillis, double tolerance) {
+        this(maxBytes, maxMillis, tolerance, DEFAULT_SAMPLE_INTERVAL_MILLIS, DEFAULT_WINDOW_MILLIS, DEFAULT_STABLE_WINDOWS);
+    }
+
+    public AdaptiveTestPolicy(long maxBytes, long maxMillis, double tolerance, long sampleIntervalMillis,
+                              long windowMillis, int stableWindows) {
+        if (maxBytes <= 0 || maxMillis <= 0) {
+            throw new IllegalArgumentException("Byte and time budgets must be positive: " + maxBytes + " bytes, " + maxMillis + " ms");
+        }
+        if (tolerance <= 0 || tolerance >= 1) {
+            throw new IllegalArgumentException("Tolerance must be in (0, 1): " + tolerance);
+        }
+        if (sampleIntervalMillis <= 0 || windowMillis < sampleIntervalMillis || stableWindows < 2) {
+            throw new IllegalArgumentException("Need sampleInterval <= window and at least 2 stable windows");
+        }
+        this.maxBytes = maxBytes;
+        this.maxMillis = maxMillis;
+        this.tolerance = tolerance;
+        this.sampleIntervalMillis = sampleIntervalMillis;
+        this.windowMillis = windowMillis;
+        this.stableWindows = stableWindows;
+    }
+
+    // 100 MB or 15 s, stop once four consecutive 0.5 s windows agree within 5%
+    public static AdaptiveTestPolicy defaults() {
+        return new AdaptiveTestPolicy(DEFAULT_MAX_BYTES, DEFAULT_MAX_MILLIS, DEFAULT_TOLERANCE);
+    }
+
+    public ThroughputEstimator newEstimator() {
+        return new ThroughputEstimator(this);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public long getSampleIntervalMillis() {
+        return sampleIntervalMillis;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public int getStableWindows() {
+        return stableWindows;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("adaptive(max %d MB, %d s, tolerance %.0f%%)",
+                maxBytes / (1024 * 1024), maxMillis / 1000, tolerance * 100);
+    }
+}
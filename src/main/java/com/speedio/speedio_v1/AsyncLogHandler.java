@@ -0,0 +1,156 @@
+package com.speedio.speedio_v1;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Log handler that never blocks the logging thread. {@link #publish} only puts the record into a
+ * bounded ring buffer; one daemon thread formats and writes records in batches and flushes once
+ * per batch. When the buffer is full the record is dropped and counted instead of making a
+ * measurement thread wait for the console, and the writer reports how many were lost.
+ */
+public class AsyncLogHandler extends Handler {
+
+    public static final int DEFAULT_CAPACITY = 8192;
+    private static final int BATCH_SIZE = 256;
+    private static final long POLL_MILLIS = 100;
+    private static final long CLOSE_WAIT_MILLIS = 2000;
+
+    private final BlockingQueue<Entry> buffer;
+    private final Writer out;
+    private final Thread writerThread;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed;
+
+    public AsyncLogHandler(OutputStream stream) {
+        this(stream, DEFAULT_CAPACITY);
+    }
+
+    public AsyncLogHandler(OutputStream stream, int capacity) {
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.out = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+        setFormatter(new JsonLinesFormatter());
+        this.writerThread = new Thread(this::drain, "speedio-log-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        if (!(getFormatter() instanceof JsonLinesFormatter)) {
+            record.getSourceClassName(); // Other formatters may print the source, which is only known on this thread
+        }
+        TestRun run = TestRun.current();
+        if (!buffer.offer(new Entry(record, run != null ? run.getId() : 0, Thread.currentThread().getName()))) {
+            dropped.incrementAndGet();
+            SpeedioMetrics.LOG_RECORDS_DROPPED.increment();
+        }
+    }
+
+    // Every batch is flushed as soon as it is written
+    @Override
+    public void flush() {
+    }
+
+    // Writes what is still buffered, waiting at most CLOSE_WAIT_MILLIS
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writerThread.join(CLOSE_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            reportError("Could not flush log output", e, ErrorManager.FLUSH_FAILURE);
+        }
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void drain() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        long reportedDrops = 0;
+        while (!closed || !buffer.isEmpty()) {
+            try {
+                Entry first = buffer.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                closed = true; // Finish what is buffered, then stop
+                continue;
+            }
+            buffer.drainTo(batch, BATCH_SIZE - 1);
+            for (Entry entry : batch) {
+                write(entry);
+            }
+            batch.clear();
+
+            long drops = dropped.get();
+            if (drops != reportedDrops) {
+                LogRecord notice = new LogRecord(Level.WARNING,
+                        (drops - reportedDrops) + " log records dropped, the log buffer was full");
+                notice.setLoggerName(AsyncLogHandler.class.getName());
+                write(new Entry(notice, 0, Thread.currentThread().getName()));
+                reportedDrops = drops;
+            }
+            try {
+                out.flush();
+            } catch (IOException e) {
+                reportError("Could not flush log output", e, ErrorManager.FLUSH_FAILURE);
+            }
+        }
+    }
+
+    private void write(Entry entry) {
+        Formatter formatter = getFormatter();
+        try {
+            String line = formatter instanceof JsonLinesFormatter
+                    ? ((JsonLinesFormatter) formatter).format(entry.record, entry.runId, entry.threadName)
+                    : formatter.format(entry.record);
+            out.write(line);
+        } catch (IOException e) {
+            reportError("Could not write log record", e, ErrorManager.WRITE_FAILURE);
+        } catch (RuntimeException e) {
+            reportError("Could not format log record", e, ErrorManager.FORMAT_FAILURE);
+        }
+    }
+
+    private static final class Entry {
+        final LogRecord record;
+        final long runId; // Captured on the logging thread, like threadName
+        final String threadName;
+
+        Entry(LogRecord record, long runId, String threadName) {
+            this.record = record;
+            this.runId = runId;
+            this.threadName = threadName;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.speedio.speedio_v1;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wire formats for {@link MeasurementBatch}. The binary format is the default:
+ *
+ * <pre>
+ * int    magic "SPB1"
+ * UTF    agent id
+ * long   batch id
+ * varint target count, then each target as UTF
+ * varint record count, then per record:
+ *   varlong  zig-zag timestamp delta to the previous record (the first is relative to 0)
+ *   byte     direction
+ *   varint   target index
+ *   double   Mbps
+ *   varlong  bytes
+ *   varlong  duration ms
+ *   short    error code
+ *   byte     confidence as in {@link MeasurementStore}
+ *   float    background Mbps, NaN if unknown
+ * </pre>
+ *
+ * A record of a batch from one agent takes about 30 bytes. JSON, written with Jackson, is the
+ * fallback for collectors in other languages; unknown values are written as null.
+ */
+public final class BatchCodec {
+
+    public static final String BINARY_TYPE = "application/x-speedio-batch";
+    public static final String JSON_TYPE = "application/json";
+
+    private static final int MAGIC = 0x53504231; // "SPB1"
+    // Bounds what a corrupt or hostile count can make us allocate; larger batches are rejected
+    public static final int MAX_RECORDS = 65536;
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private BatchCodec() {
+    }
+
+    public static byte[] encode(MeasurementBatch batch, boolean json) throws IOException {
+        return json ? encodeJson(batch) : encodeBinary(batch);
+    }
+
+    // Picks the decoder by content type; anything but JSON is read as binary
+    public static MeasurementBatch decode(byte[] body, String contentType) throws IOException {
+        if (contentType != null && contentType.startsWith(JSON_TYPE)) {
+            return decodeJson(body);
+        }
+        return decodeBinary(body);
+    }
+
+    public static byte[] encodeBinary(MeasurementBatch batch) throws IOException {
+        List<Measurement> measurements = batch.getMeasurements();
+        Map<String, Integer> targetIndex = new HashMap<>();
+        List<String> targets = new ArrayList<>();
+        for (Measurement measurement : measurements) {
+            if (targetIndex.putIfAbsent(measurement.getTarget(), targets.size()) == null) {
+                targets.add(measurement.getTarget());
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + measurements.size() * 32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeUTF(batch.getAgentId());
+        out.writeLong(batch.getBatchId());
+        writeVarLong(out, targets.size());
+        for (String target : targets) {
+            out.writeUTF(target);
+        }
+        writeVarLong(out, measurements.size());
+        long previousTimestamp = 0;
+        for (Measurement measurement : measurements) {
+            long delta = measurement.getTimestampMillis() - previousTimestamp;
+            writeVarLong(out, (delta << 1) ^ (delta >> 63)); // Zig-zag, in case the agent's clock stepped back
+            previousTimestamp = measurement.getTimestampMillis();
+            out.writeByte(measurement.getDirection().ordinal());
+            writeVarLong(out, targetIndex.get(measurement.getTarget()));
+            out.writeDouble(measurement.getMbps());
+            writeVarLong(out, measurement.getBytes());
+            writeVarLong(out, measurement.getDurationMillis());
+            out.writeShort(measurement.getErrorCode());
+            out.writeByte(MeasurementStore.encodeConfidence(measurement.getConfidence()));
+            out.writeFloat((float) measurement.getBackgroundMbps());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public static MeasurementBatch decodeBinary(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a measurement batch");
+        }
+        String agentId = in.readUTF();
+        long batchId = in.readLong();
+        String[] targets = new String[readCount(in)];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = in.readUTF();
+        }
+        int count = readCount(in);
+        Direction[] directions = Direction.values();
+        List<Measurement> measurements = new ArrayList<>(count);
+        long timestamp = 0;
+        for (int i = 0; i < count; i++) {
+            long zigZag = readVarLong(in);
+            timestamp += (zigZag >>> 1) ^ -(zigZag & 1);
+            int direction = in.readUnsignedByte();
+            long target = readVarLong(in);
+            if (direction >= directions.length || target >= targets.length) {
+                throw new IOException("Corrupt measurement record " + i);
+            }
+            double mbps = in.readDouble();
+            long transferred = readVarLong(in);
+            long duration = readVarLong(in);
+            short errorCode = in.readShort();
+            double confidence = MeasurementStore.decodeConfidence(in.readByte());
+            float background = in.readFloat();
+            measurements.add(new Measurement(timestamp, directions[direction], targets[(int) target], mbps,
+                    transferred, duration, errorCode, confidence).withBackgroundMbps(background));
+        }
+        if (in.available() > 0) {
+            throw new IOException("Trailing bytes after " + count + " measurements");
+        }
+        return new MeasurementBatch(agentId, batchId, measurements);
+    }
+
+    public static byte[] encodeJson(MeasurementBatch batch) throws IOException {
+        ObjectNode root = mapper.createObjectNode();
+        root.put("agent", batch.getAgentId());
+        root.put("batch", batch.getBatchId());
+        ArrayNode records = root.putArray("measurements");
+        for (Measurement measurement : batch.getMeasurements()) {
+            ObjectNode record = records.addObject();
+            record.put("time", measurement.getTimestampMillis());
+            record.put("direction", measurement.getDirection().name());
+            record.put("target", measurement.getTarget());
+            record.put("mbps", measurement.getMbps());
+            record.put("bytes", measurement.getBytes());
+            record.put("durationMs", measurement.getDurationMillis());
+            record.put("error", measurement.getErrorCode());
+            putNumber(record, "confidence", measurement.getConfidence());
+            putNumber(record, "backgroundMbps", measurement.getBackgroundMbps());
+        }
+        return mapper.writeValueAsBytes(root);
+    }
+
+    public static MeasurementBatch decodeJson(byte[] body) throws IOException {
+        JsonNode root = mapper.readTree(body);
+        JsonNode records = root == null ? null : root.get("measurements");
+        if (records == null || !records.isArray() || !root.hasNonNull("agent") || !root.hasNonNull("batch")) {
+            throw new IOException("Not a measurement batch");
+        }
+        if (records.size() > MAX_RECORDS) {
+            throw new IOException("Too many measurements in one batch: " + records.size());
+        }
+        List<Measurement> measurements = new ArrayList<>(records.size());
+        for (JsonNode record : records) {
+            Direction direction;
+            try {
+                direction = Direction.valueOf(record.path("direction").asText());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown direction in " + record);
+            }
+            measurements.add(new Measurement(record.path("time").asLong(), direction, record.path("target").asText(),
+                    record.path("mbps").asDouble(), record.path("bytes").asLong(), record.path("durationMs").asLong(),
+                    (short) record.path("error").asInt(), getNumber(record, "confidence"))
+                    .withBackgroundMbps(getNumber(record, "backgroundMbps")));
+        }
+        return new MeasurementBatch(root.get("agent").asText(), root.get("batch").asLong(), measurements);
+    }
+
+    private static void putNumber(ObjectNode record, String field, double value) {
+        if (Double.isNaN(value)) {
+            record.putNull(field);
+        } else {
+            record.put(field, value);
+        }
+    }
+
+    private static double getNumber(JsonNode record, String field) {
+        JsonNode value = record.get(field);
+        return value == null || value.isNull() ? Double.NaN : value.asDouble();
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        long count = readVarLong(in);
+        if (count > MAX_RECORDS) {
+            throw new IOException("Too many entries in one batch: " + count);
+        }
+        return (int) count;
+    }
+
+    // 7 bits per byte, low bits first; non-negative values only
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
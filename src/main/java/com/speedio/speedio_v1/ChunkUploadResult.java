@@ -0,0 +1,82 @@
+package com.speedio.speedio_v1;
+
+/**
+ * Outcome of a {@link ConcurrentChunkUploader} run. The wire rate counts every request body byte
+ * over the time at least one body was being sent, i.e. what the link carried while it was busy;
+ * the payload rate is file bytes over the whole run, so the difference between the two is the
+ * protocol overhead: multipart framing plus time spent waiting for responses with nothing to send.
+ */
+public final class ChunkUploadResult {
+
+    private final int chunks;
+    private final long payloadBytes;
+    private final long wireBytes;
+    private final long elapsedNanos;
+    private final long sendingNanos;
+    private final long turnaroundNanos; // Summed over all chunks
+    private final String errorType;
+
+    ChunkUploadResult(int chunks, long payloadBytes, long wireBytes, long elapsedNanos, long sendingNanos,
+                      long turnaroundNanos, String errorType) {
+        this.chunks = chunks;
+        this.payloadBytes = payloadBytes;
+        this.wireBytes = wireBytes;
+        this.elapsedNanos = elapsedNanos;
+        this.sendingNanos = sendingNanos;
+        this.turnaroundNanos = turnaroundNanos;
+        this.errorType = errorType;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    public long getPayloadBytes() {
+        return payloadBytes;
+    }
+
+    public long getWireBytes() {
+        return wireBytes;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    // Time with at least one request body still being handed to the connection
+    public long getSendingNanos() {
+        return sendingNanos;
+    }
+
+    // The upload speed as users see it; this is what gets stored and compared to the threshold
+    public double getPayloadMbps() {
+        return DownloadTimeSeries.mbps(payloadBytes, elapsedNanos);
+    }
+
+    public double getWireMbps() {
+        return DownloadTimeSeries.mbps(wireBytes, sendingNanos);
+    }
+
+    // Share of the run with nothing left to send, only waiting for responses
+    public double getIdleFraction() {
+        return elapsedNanos > 0 ? Math.max(0.0, 1.0 - (double) sendingNanos / elapsedNanos) : 0.0;
+    }
+
+    // Mean time from a chunk's last body byte to its response: round trip plus server processing
+    public double getMeanTurnaroundMillis() {
+        return chunks > 0 ? turnaroundNanos / 1e6 / chunks : Double.NaN;
+    }
+
+    // Null when every chunk was acknowledged
+    public String getErrorType() {
+        return errorType;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.2f Mbps payload, %.2f Mbps on the wire, %d chunks, %d/%d bytes payload/wire in %d ms, "
+                        + "idle %.0f%%, turnaround %.1f ms%s",
+                getPayloadMbps(), getWireMbps(), chunks, payloadBytes, wireBytes, elapsedNanos / 1_000_000,
+                getIdleFraction() * 100, getMeanTurnaroundMillis(), errorType != null ? ", error: " + errorType : "");
+    }
+}
@@ -0,0 +1,213 @@
+package com.speedio.speedio_v1;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Uploads chunks with several requests in flight per connection, so the link keeps sending while
+ * earlier chunks wait for their responses. Each connection is its own HTTP/2 client, with
+ * {@code inFlight} chunks sent as concurrent streams; against HTTP/1.1 servers the JDK client
+ * opens one connection per request in flight instead, which keeps the link just as busy.
+ *
+ * <p>Each connection runs {@code inFlight} chains: when a chunk is acknowledged, the same chain
+ * sends the next one, so no thread blocks on a response. Chunks of one file may therefore reach
+ * the server out of order.
+ *
+ * <p>Cancelling the {@link TestRun} stops every chain from sending further chunks and returns
+ * right away; the JDK client cannot abort a request in flight, so those few still finish in the
+ * background and their results are ignored.
+ */
+public class ConcurrentChunkUploader {
+
+    private static final Logger logger = Logger.getLogger(ConcurrentChunkUploader.class.getName());
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(5); // Same as the sequential upload
+
+    private final URI uploadUri;
+    private final int connections;
+    private final int inFlight;
+    private final long chunkBytes;
+
+    public ConcurrentChunkUploader(String uploadUrl, int connections, int inFlight, long chunkBytes) {
+        if (connections < 1 || inFlight < 1 || chunkBytes < 1) {
+            throw new IllegalArgumentException("Connections, requests in flight and chunk size must be positive");
+        }
+        this.uploadUri = URI.create(uploadUrl);
+        this.connections = connections;
+        this.inFlight = inFlight;
+        this.chunkBytes = chunkBytes;
+    }
+
+    // Sends bytesPerConnection on every connection, or less once the estimator (may be null) says stop
+    public ChunkUploadResult upload(long bytesPerConnection, ThroughputEstimator estimator) {
+        TestRun testRun = new TestRun(REQUEST_TIMEOUT.toMillis());
+        try {
+            return upload(bytesPerConnection, estimator, testRun);
+        } finally {
+            testRun.complete();
+        }
+    }
+
+    // Same, but ends when the test run is cancelled or reaches its deadline
+    public ChunkUploadResult upload(long bytesPerConnection, ThroughputEstimator estimator, TestRun testRun) {
+        Run run = new Run(estimator);
+        Runnable stop = () -> run.stopped.set(true);
+        testRun.onAbort(stop);
+        long totalChunks = Math.max(1, (bytesPerConnection + chunkBytes - 1) / chunkBytes);
+        for (int c = 0; c < connections; c++) {
+            Connection connection = new Connection(HttpClientPool.getMultiplexedClient(c), totalChunks, bytesPerConnection);
+            for (int i = 0; i < inFlight; i++) {
+                sendNext(connection, run);
+            }
+        }
+
+        try {
+            if (!testRun.await(run.chainsDone)) {
+                run.error.compareAndSet(null, "UPLOAD_" + testRun.getOutcome().name()); // Already counted by the test run
+            }
+        } catch (InterruptedException e) {
+            logger.log(Level.SEVERE, "Concurrent upload interrupted", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            testRun.removeOnAbort(stop);
+        }
+        return run.result();
+    }
+
+    private void sendNext(Connection connection, Run run) {
+        int chunkNumber = connection.nextChunk.incrementAndGet();
+        if (run.stopped.get() || chunkNumber > connection.totalChunks) {
+            run.chainsDone.countDown();
+            return;
+        }
+        long payload = Math.min(chunkBytes, connection.fileBytes - (chunkNumber - 1) * chunkBytes);
+        SyntheticChunkEntity chunk = new SyntheticChunkEntity(connection.fileId, chunkNumber, connection.totalChunks,
+                connection.fileSizeMB, payload);
+        AtomicLong bodySentNanos = new AtomicLong();
+        Runnable onBodySent = () -> {
+            if (bodySentNanos.compareAndSet(0, System.nanoTime())) {
+                run.sendingStopped(bodySentNanos.get());
+            }
+        };
+
+        HttpRequest request = HttpRequest.newBuilder(uploadUri)
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", chunk.getContentType().getValue())
+                .POST(HttpRequest.BodyPublishers.fromPublisher(
+                        HttpRequest.BodyPublishers.ofInputStream(() -> chunk.newContentStream(onBodySent)),
+                        chunk.getContentLength()))
+                .build();
+
+        long startNanos = System.nanoTime();
+        run.sendingStarted(startNanos);
+        connection.client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, failure) -> {
+            long now = System.nanoTime();
+            onBodySent.run(); // A failed request may never have drained its body
+            SpeedioMetrics.UPLOAD_CHUNK.observeNanos(now - startNanos);
+            if (failure != null) {
+                if (!run.stopped.get() && run.fail("UPLOAD_IO_ERROR")) {
+                    logger.log(Level.SEVERE, "Error during concurrent upload of chunk " + chunkNumber, failure);
+                }
+                run.chainsDone.countDown();
+                return;
+            }
+            if (response.statusCode() / 100 != 2 || !response.body().contains(LocalSpeedTestServer.CHUNK_RECEIVED_REPLY)) {
+                if (run.fail("UPLOAD_UNEXPECTED_RESPONSE")) { // The other chunks in flight usually fail the same way
+                    logger.warning("Unexpected response for chunk " + chunkNumber + " (" + response.statusCode() + "): " + response.body());
+                }
+                run.chainsDone.countDown();
+                return;
+            }
+            run.acknowledged(now, payload, chunk.getContentLength(), now - bodySentNanos.get());
+            logger.fine(() -> "Chunk " + chunkNumber + " acknowledged over " + response.version());
+            sendNext(connection, run);
+        });
+    }
+
+    private static final class Connection {
+        final HttpClient client;
+        final String fileId = UUID.randomUUID().toString();
+        final long totalChunks;
+        final long fileBytes;
+        final int fileSizeMB;
+        final AtomicInteger nextChunk = new AtomicInteger();
+
+        Connection(HttpClient client, long totalChunks, long fileBytes) {
+            this.client = client;
+            this.totalChunks = totalChunks;
+            this.fileBytes = fileBytes;
+            this.fileSizeMB = (int) (fileBytes / (1024 * 1024));
+        }
+    }
+
+    // Shared state of one upload; callbacks of all connections update it concurrently
+    private final class Run {
+        final ThroughputEstimator estimator;
+        final CountDownLatch chainsDone = new CountDownLatch(connections * inFlight);
+        final AtomicBoolean stopped = new AtomicBoolean(false);
+        final AtomicReference<String> error = new AtomicReference<>();
+        final AtomicInteger chunks = new AtomicInteger();
+        final LongAdder payloadBytes = new LongAdder();
+        final LongAdder wireBytes = new LongAdder();
+        final LongAdder turnaroundNanos = new LongAdder();
+        final long startNanos = System.nanoTime();
+        volatile long endNanos = startNanos;
+        private int sending; // Request bodies not yet fully handed to a connection
+        private long sendingSince;
+        private long sendingNanos;
+
+        Run(ThroughputEstimator estimator) {
+            this.estimator = estimator;
+        }
+
+        synchronized void sendingStarted(long now) {
+            if (sending++ == 0) {
+                sendingSince = now;
+            }
+        }
+
+        synchronized void sendingStopped(long now) {
+            if (--sending == 0) {
+                sendingNanos += now - sendingSince;
+            }
+        }
+
+        void acknowledged(long now, long payload, long wire, long turnaround) {
+            chunks.incrementAndGet();
+            payloadBytes.add(payload);
+            wireBytes.add(wire);
+            turnaroundNanos.add(turnaround);
+            synchronized (this) {
+                endNanos = Math.max(endNanos, now);
+            }
+            if (estimator != null && estimator.update(now, payloadBytes.sum())) {
+                stopped.set(true);
+            }
+        }
+
+        // Returns true for the first failure of the run
+        boolean fail(String errorType) {
+            stopped.set(true);
+            SpeedioMetrics.recordError(errorType);
+            return error.compareAndSet(null, errorType);
+        }
+
+        synchronized ChunkUploadResult result() {
+            long busy = sendingNanos + (sending > 0 ? endNanos - sendingSince : 0);
+            return new ChunkUploadResult(chunks.get(), payloadBytes.sum(), wireBytes.sum(), endNanos - startNanos,
+                    Math.min(busy, endNanos - startNanos), turnaroundNanos.sum(), error.get());
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package com.speedio.speedio_v1;
+
+public enum Direction {
+    DOWNLOAD,
+    UPLOAD
+}
@@ -0,0 +1,10 @@
+package com.speedio.speedio_v1;
+
+/**
+ * How {@link DownloadSpeedCheckHandler} moves the bytes: jspeedtest's {@code SpeedTestSocket}
+ * callbacks, or the built-in {@link NioDownloadEngine} with fixed-interval sampling.
+ */
+public enum DownloadEngine {
+    JSPEEDTEST,
+    NIO
+}
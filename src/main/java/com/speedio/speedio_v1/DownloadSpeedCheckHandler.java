@@ -4,9 +4,14 @@ import fr.bmartel.speedtest.SpeedTestReport;
 import fr.bmartel.speedtest.SpeedTestSocket;
 import fr.bmartel.speedtest.model.SpeedTestError;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,88 +22,277 @@ public class DownloadSpeedCheckHandler {
     private static final String TEST_SERVER_URL = "https://sample-videos.com/video321/mp4/720/big_buck_bunny_720p_10mb.mp4";
     private static final String WARMUP_URL = "https://sample-videos.com/video321/mp4/720/big_buck_bunny_720p_1mb.mp4";
 
+    private static final double BITS_PER_MEGABIT = 1_000_000; // Decimal megabits, as ISPs quote them
+    private static final int SOCKET_TIMEOUT_MILLIS = 20000;
+
     private final Consumer<String> downloadSpeedCallback;
     private final Runnable onSpeedBelowThreshold; // Runnable to trigger the email alert
     private final double speedThreshold;
-    private double lastDownloadSpeed;
-    private final AtomicBoolean emailSentFlag = new AtomicBoolean(false); // Flag to prevent duplicate emails
+    private volatile double lastDownloadSpeed;
+    private final int parallelStreams;
+    private final List<String> downloadUrls;
+    private volatile ParallelDownloadResult lastParallelResult;
+    private volatile long lastTransferredBytes;
+    private volatile SpeedTestError lastError;
+    private volatile Consumer<Measurement> measurementListener = measurement -> { };
+    private volatile SpeedStatistics statistics = new SpeedStatistics();
+    private volatile ThresholdRule thresholdRule;
+    private volatile DoubleConsumer progressListener;
+    private volatile String warmUpUrl = WARMUP_URL;
+    private volatile AdaptiveTestPolicy adaptivePolicy; // Null runs the fixed-size test
+    private volatile double lastConfidence = Double.NaN;
+    private volatile DownloadEngine engine = DownloadEngine.JSPEEDTEST;
+    private volatile DownloadTimeSeries lastTimeSeries;
+    private volatile long testTimeoutMillis = TestRun.DEFAULT_TIMEOUT_MILLIS;
+    private volatile TestRun currentRun;
+    private final AtomicBoolean emailSentFlag = new AtomicBoolean(false); // Flag to prevent duplicate emails per slowdown
 
     public DownloadSpeedCheckHandler(Consumer<String> downloadSpeedCallback, double speedThreshold, Runnable onSpeedBelowThreshold) {
+        this(downloadSpeedCallback, speedThreshold, onSpeedBelowThreshold, 1, List.of(TEST_SERVER_URL));
+    }
+
+    // Streams are spread round-robin over the given URLs; one stream keeps the single-socket test
+    public DownloadSpeedCheckHandler(Consumer<String> downloadSpeedCallback, double speedThreshold, Runnable onSpeedBelowThreshold,
+                                     int parallelStreams, List<String> downloadUrls) {
+        if (parallelStreams < 1) {
+            throw new IllegalArgumentException("At least one download stream is required: " + parallelStreams);
+        }
+        if (downloadUrls.isEmpty()) {
+            throw new IllegalArgumentException("At least one download URL is required");
+        }
         this.downloadSpeedCallback = downloadSpeedCallback;
         this.speedThreshold = speedThreshold;
         this.onSpeedBelowThreshold = onSpeedBelowThreshold;
+        this.parallelStreams = parallelStreams;
+        this.downloadUrls = List.copyOf(downloadUrls);
         this.lastDownloadSpeed = 0.0;
+        this.thresholdRule = ThresholdRule.singleSample(speedThreshold);
+        this.progressListener = speed -> downloadSpeedCallback.accept(String.format("%.2f Mbps", speed));
     }
 
-    public void startSpeedTest() {
-        logger.info("Starting speed test...");
-        new Thread(() -> {
-            if (emailSentFlag.compareAndSet(false, true)) { // Ensure only one thread can send the email
-                checkAndUpdateSpeed();
+    // Runs a full test on the calling thread; scheduling is left to MonitoringScheduler
+    public void runSpeedTest() {
+        runSpeedTest(new TestRun(testTimeoutMillis));
+    }
 
-                // After the speed check is completed, decide if the email should be sent
-                if (isSpeedBelowThreshold()) {
-                    logger.warning("Speed is below the threshold. Sending alert email...");
-                    onSpeedBelowThreshold.run(); // Trigger the email alert
-                } else {
-                    logger.info("Speed is above the threshold. No email will be sent.");
-                }
+    public void runSpeedTest(TestRun run) {
+        TestRun previous = run.bind();
+        try {
+            logger.info("Starting speed test...");
+            checkAndUpdateSpeed(run);
+            if (!run.isAborted()) { // A partial result says nothing about the threshold
+                checkThreshold();
+            }
+        } finally {
+            TestRun.restore(previous);
+        }
+    }
+
+    // After the speed check is completed, decide if the email should be sent
+    private void checkThreshold() {
+        if (isSpeedBelowThreshold()) {
+            if (emailSentFlag.compareAndSet(false, true)) { // Only alert once until the speed recovers
+                logger.warning("Speed is below the threshold. Sending alert email...");
+                onSpeedBelowThreshold.run(); // Trigger the email alert
+            } else {
+                logger.info("Speed is still below the threshold. Alert already sent.");
             }
-        }).start();
+        } else {
+            emailSentFlag.set(false);
+            logger.info("Speed is above the threshold. No email will be sent.");
+        }
+    }
+
+    // Receives one Measurement per completed test, e.g. MeasurementStore::append
+    public void setMeasurementListener(Consumer<Measurement> measurementListener) {
+        this.measurementListener = measurementListener;
+    }
+
+    // Statistics can outlive the handler, so a retry with a new handler keeps the sample history
+    public void setStatistics(SpeedStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    // Called for every progress event, possibly thousands of times per test; must be cheap
+    public void setProgressListener(DoubleConsumer progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    // Should be a small file on the same server as the test; null skips the warm-up
+    public void setWarmUpUrl(String warmUpUrl) {
+        this.warmUpUrl = warmUpUrl;
+    }
+
+    // Stops each test once the throughput estimate converges instead of downloading the whole file
+    public void setAdaptivePolicy(AdaptiveTestPolicy adaptivePolicy) {
+        this.adaptivePolicy = adaptivePolicy;
+    }
+
+    // NIO reads into a reused direct buffer and samples every 100 ms; jspeedtest stays the default for comparison
+    public void setEngine(DownloadEngine engine) {
+        this.engine = engine;
+    }
+
+    // Deadline for the tests this handler starts itself; callers passing a TestRun set their own
+    public void setTestTimeoutMillis(long testTimeoutMillis) {
+        if (testTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Test timeout must be positive: " + testTimeoutMillis);
+        }
+        this.testTimeoutMillis = testTimeoutMillis;
+    }
+
+    // Stops the running test, if any, and closes its sockets; returns false when nothing was running
+    public boolean cancel() {
+        TestRun run = currentRun;
+        return run != null && run.cancel();
+    }
+
+    public void setThresholdRule(ThresholdRule thresholdRule) {
+        this.thresholdRule = thresholdRule;
+    }
+
+    public SpeedStatistics getStatistics() {
+        return statistics;
     }
 
     public void checkAndUpdateSpeed() {
+        checkAndUpdateSpeed(new TestRun(testTimeoutMillis));
+    }
+
+    public void checkAndUpdateSpeed(TestRun run) {
+        TestRun previous = run.bind();
+        try {
+            measure(run);
+        } finally {
+            TestRun.restore(previous);
+        }
+    }
+
+    private void measure(TestRun run) {
         logger.info("Running speed check...");
-        lastDownloadSpeed = checkDownloadSpeed();
+        long startMillis = System.currentTimeMillis();
+        long startTime = System.nanoTime();
+        currentRun = run;
+        SpeedioMetrics.ACTIVE_DOWNLOADS.increment();
+        double speed;
+        try {
+            speed = checkDownloadSpeed(run);
+        } finally {
+            SpeedioMetrics.ACTIVE_DOWNLOADS.decrement();
+            run.complete();
+            currentRun = null;
+        }
+        SpeedioMetrics.DOWNLOADS.increment();
+        long durationMillis = (System.nanoTime() - startTime) / 1_000_000;
+        if (run.isAborted()) {
+            // Stored for the history, but kept out of the statistics and the last speed
+            measurementListener.accept(new Measurement(startMillis, Direction.DOWNLOAD, downloadUrls.get(0), speed,
+                    lastTransferredBytes, durationMillis, Measurement.errorCodeOf(run.getOutcome()), lastConfidence));
+            downloadSpeedCallback.accept(run.getOutcome() == TestOutcome.CANCELLED ? "Cancelled" : "Timed out");
+            return;
+        }
+        lastDownloadSpeed = speed;
+        statistics.record(startMillis, lastDownloadSpeed);
+        measurementListener.accept(new Measurement(startMillis, Direction.DOWNLOAD, downloadUrls.get(0), lastDownloadSpeed,
+                lastTransferredBytes, durationMillis, Measurement.errorCodeOf(lastError), lastConfidence));
         String formattedSpeed = String.format("%.2f Mbps", lastDownloadSpeed);
         downloadSpeedCallback.accept(formattedSpeed);
 
         // Log both the threshold and the last speed for debugging
-        logger.info("Threshold: " + speedThreshold + " Mbps, Last download speed: " + lastDownloadSpeed + " Mbps");
+        logger.info("Threshold: " + speedThreshold + " Mbps (" + thresholdRule + "), Last download speed: " + lastDownloadSpeed + " Mbps");
     }
 
     public double checkDownloadSpeed() {
-        logger.fine("Performing warm-up...");
-        performWarmUp();
+        TestRun run = new TestRun(testTimeoutMillis);
+        try {
+            return checkDownloadSpeed(run);
+        } finally {
+            run.complete();
+        }
+    }
+
+    private double checkDownloadSpeed(TestRun run) {
+        lastTransferredBytes = 0;
+        lastError = null;
+        lastConfidence = Double.NaN;
+
+        AdaptiveTestPolicy policy = adaptivePolicy;
+        if (policy == null) {
+            logger.fine("Performing warm-up...");
+            performWarmUp(run);
+            if (run.isAborted()) {
+                return 0.0;
+            }
+        }
 
+        long transferStart = System.nanoTime();
+        try {
+            if (engine == DownloadEngine.NIO) {
+                return checkNioDownloadSpeed(policy, run);
+            }
+            if (policy != null) {
+                return checkAdaptiveDownloadSpeed(policy, run);
+            }
+            if (parallelStreams > 1) {
+                ParallelDownloadResult result = checkParallelDownloadSpeed(run);
+                lastParallelResult = result;
+                logger.info("Parallel download result: " + result);
+                return result.getAggregateMbps();
+            }
+            return checkSingleStreamDownloadSpeed(run);
+        } finally {
+            SpeedioMetrics.DOWNLOAD_TRANSFER.observeNanos(System.nanoTime() - transferStart);
+        }
+    }
+
+    private double checkSingleStreamDownloadSpeed(TestRun run) {
+        final Runnable firstByte = firstByteTimer();
         final double[] speedResult = {0.0};
         final CountDownLatch latch = new CountDownLatch(1);
 
         SpeedTestSocket speedTestSocket = new SpeedTestSocket();
-        speedTestSocket.setSocketTimeout(20000);
+        speedTestSocket.setSocketTimeout(SOCKET_TIMEOUT_MILLIS);
 
         speedTestSocket.addSpeedTestListener(new fr.bmartel.speedtest.inter.ISpeedTestListener() {
             @Override
             public void onCompletion(SpeedTestReport report) {
-                double speed = report.getTransferRateBit().doubleValue() / (1024 * 1024); // Convert to Mbps
+                double speed = report.getTransferRateBit().doubleValue() / BITS_PER_MEGABIT; // Convert to Mbps
                 speedResult[0] = speed;
-                logger.fine("Download speed: " + speed + " Mbps");
+                lastTransferredBytes = report.getTotalPacketSize();
+                logger.fine(() -> "Download speed: " + speed + " Mbps");
                 latch.countDown();
             }
 
             @Override
             public void onProgress(float percent, SpeedTestReport report) {
-                double currentSpeed = report.getTransferRateBit().doubleValue() / (1024 * 1024); // Convert to Mbps
-                String formattedSpeed = String.format("%.2f Mbps", currentSpeed);
-                logger.fine("Progress: " + percent + "%, Current speed: " + formattedSpeed);
-
-                // Update the UI with the current speed in real-time
-                downloadSpeedCallback.accept(formattedSpeed);
+                firstByte.run();
+                handleProgress(percent, report);
             }
 
             @Override
             public void onError(SpeedTestError speedTestError, String errorMessage) {
+                if (run.isAborted()) {
+                    latch.countDown();
+                    return; // The run closed the socket itself
+                }
+                if (readInFull(speedTestSocket)) {
+                    return; // A spurious write error; onCompletion reports the result
+                }
                 logger.log(Level.SEVERE, "Error during speed test: " + errorMessage);
+                SpeedioMetrics.recordError(speedTestError.name());
+                lastError = speedTestError;
                 latch.countDown();
             }
         });
 
-        speedTestSocket.startDownload(TEST_SERVER_URL);
+        run.onAbort(() -> stop(speedTestSocket));
+        speedTestSocket.startDownload(downloadUrls.get(0));
 
         try {
-            latch.await(); // Wait for the speed test to complete
+            run.await(latch); // Wait for the speed test to complete
         } catch (InterruptedException e) {
             logger.log(Level.SEVERE, "Speed test interrupted", e);
+            Thread.currentThread().interrupt();
         } finally {
             speedTestSocket.closeSocket();
         }
@@ -106,7 +300,234 @@ public class DownloadSpeedCheckHandler {
         return speedResult[0];
     }
 
-    private void performWarmUp() {
+    // Hot path: runs for every progress event of the single-stream test
+    void handleProgress(float percent, SpeedTestReport report) {
+        double currentSpeed = report.getTransferRateBit().doubleValue() / BITS_PER_MEGABIT; // Convert to Mbps
+        logger.fine(() -> "Progress: " + percent + "%, Current speed: " + currentSpeed + " Mbps");
+
+        // Update the UI with the current speed in real-time
+        progressListener.accept(currentSpeed);
+    }
+
+    // Sums the bytes every stream moved between the moment the last stream started and the moment the
+    // first stream finished, so the aggregate only covers the window where all streams overlapped.
+    private ParallelDownloadResult checkParallelDownloadSpeed(TestRun run) {
+        final int streams = parallelStreams;
+        final double[] streamSpeeds = new double[streams];
+        final AtomicLongArray streamBytes = new AtomicLongArray(streams);
+        final AtomicLongArray streamRateBits = new AtomicLongArray(streams); // Latest rate per stream as double bits
+        final AtomicBoolean[] streamStarted = new AtomicBoolean[streams];
+        final CountDownLatch allStarted = new CountDownLatch(streams);
+        final CountDownLatch firstDone = new CountDownLatch(1);
+        final CountDownLatch allDone = new CountDownLatch(streams);
+        final List<SpeedTestSocket> sockets = new ArrayList<>(streams);
+
+        for (int i = 0; i < streams; i++) {
+            final int stream = i;
+            streamStarted[i] = new AtomicBoolean(false);
+            final Runnable markStarted = () -> {
+                if (streamStarted[stream].compareAndSet(false, true)) {
+                    allStarted.countDown();
+                }
+            };
+
+            final Runnable firstByte = firstByteTimer();
+            SpeedTestSocket socket = new SpeedTestSocket();
+            socket.setSocketTimeout(SOCKET_TIMEOUT_MILLIS);
+            socket.addSpeedTestListener(new fr.bmartel.speedtest.inter.ISpeedTestListener() {
+                @Override
+                public void onCompletion(SpeedTestReport report) {
+                    streamBytes.set(stream, report.getTotalPacketSize());
+                    streamSpeeds[stream] = report.getTransferRateBit().doubleValue() / BITS_PER_MEGABIT;
+                    streamRateBits.set(stream, 0L); // A finished stream no longer adds to the live rate (0L is 0.0)
+                    markStarted.run();
+                    firstDone.countDown();
+                    allDone.countDown();
+                }
+
+                @Override
+                public void onProgress(float percent, SpeedTestReport report) {
+                    firstByte.run();
+                    streamBytes.set(stream, report.getTemporaryPacketSize());
+                    streamRateBits.set(stream, Double.doubleToRawLongBits(report.getTransferRateBit().doubleValue()));
+                    markStarted.run();
+
+                    double totalRate = 0.0;
+                    for (int other = 0; other < streams; other++) {
+                        totalRate += Double.longBitsToDouble(streamRateBits.get(other));
+                    }
+                    progressListener.accept(totalRate / BITS_PER_MEGABIT);
+                }
+
+                @Override
+                public void onError(SpeedTestError speedTestError, String errorMessage) {
+                    if (readInFull(socket)) {
+                        return; // A spurious write error; onCompletion counts the stream
+                    }
+                    if (!run.isAborted()) {
+                        logger.log(Level.SEVERE, "Error on download stream " + stream + ": " + errorMessage);
+                        SpeedioMetrics.recordError(speedTestError.name());
+                        lastError = speedTestError;
+                    }
+                    streamRateBits.set(stream, 0L);
+                    markStarted.run();
+                    firstDone.countDown();
+                    allDone.countDown();
+                }
+            });
+            sockets.add(socket);
+            run.onAbort(() -> stop(socket));
+        }
+
+        for (int i = 0; i < streams; i++) {
+            sockets.get(i).startDownload(downloadUrls.get(i % downloadUrls.size()));
+        }
+
+        long windowStart = 0;
+        long windowEnd = 0;
+        long bytesAtStart = 0;
+        long bytesAtEnd = 0;
+        try {
+            if (run.await(allStarted)) {
+                windowStart = System.nanoTime();
+                bytesAtStart = sumBytes(streamBytes);
+
+                if (run.await(firstDone)) {
+                    windowEnd = System.nanoTime();
+                    bytesAtEnd = sumBytes(streamBytes);
+
+                    run.await(allDone); // Let the remaining streams finish so their per-stream rates are complete
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.log(Level.SEVERE, "Parallel speed test interrupted", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            sockets.forEach(SpeedTestSocket::closeSocket);
+        }
+        lastTransferredBytes = sumBytes(streamBytes);
+
+        double windowSeconds = (windowEnd - windowStart) / 1_000_000_000.0;
+        double aggregateMbps;
+        if (windowSeconds > 0 && bytesAtEnd > bytesAtStart) {
+            aggregateMbps = (bytesAtEnd - bytesAtStart) * 8.0 / windowSeconds / BITS_PER_MEGABIT;
+        } else {
+            // Streams never overlapped (e.g. one finished before another started), so fall back to their sum
+            aggregateMbps = 0.0;
+            for (double speed : streamSpeeds) {
+                aggregateMbps += speed;
+            }
+        }
+        return new ParallelDownloadResult(aggregateMbps, streamSpeeds, Math.max(0.0, windowSeconds));
+    }
+
+    // Runs every stream until the estimate converges or the budget is spent, fetching its file again
+    // whenever it ends first. There is no warm-up: the estimator finds and discards slow start itself.
+    private double checkAdaptiveDownloadSpeed(AdaptiveTestPolicy policy, TestRun run) {
+        final int streams = parallelStreams;
+        final ThroughputEstimator estimator = policy.newEstimator();
+        final AdaptiveDownload download = new AdaptiveDownload(streams, estimator, run);
+
+        for (int i = 0; i < streams; i++) {
+            download.fetch(i, firstByteTimer());
+        }
+
+        try {
+            run.await(download.done);
+        } catch (InterruptedException e) {
+            logger.log(Level.SEVERE, "Adaptive speed test interrupted", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            estimator.finish(System.nanoTime(), sumBytes(download.streamBytes));
+            download.stopAll();
+        }
+
+        lastTransferredBytes = estimator.getBytes();
+        lastConfidence = estimator.getConfidence();
+        logger.info("Adaptive download result (" + streams + " streams, " + policy + "): " + estimator);
+        return estimator.getBitsPerSecond() / BITS_PER_MEGABIT;
+    }
+
+    // Same stream layout as the jspeedtest paths; the adaptive policy, if any, decides when to stop
+    private double checkNioDownloadSpeed(AdaptiveTestPolicy policy, TestRun run) {
+        ThroughputEstimator estimator = policy != null ? policy.newEstimator() : null;
+        Runnable firstByte = firstByteTimer();
+        DownloadTimeSeries series = new NioDownloadEngine(SOCKET_TIMEOUT_MILLIS).run(downloadUrls, parallelStreams, mbps -> {
+            if (mbps > 0) {
+                firstByte.run();
+            }
+            progressListener.accept(mbps);
+        }, estimator, run);
+
+        lastTimeSeries = series;
+        lastTransferredBytes = series.getTotalBytes();
+        if (series.getError() != null) {
+            lastError = series.getError();
+            SpeedioMetrics.recordError(series.getError().name());
+        }
+        if (estimator != null) {
+            lastConfidence = estimator.getConfidence();
+            logger.info("Adaptive NIO download result (" + parallelStreams + " streams, " + policy + "): " + estimator);
+            return estimator.getBitsPerSecond() / BITS_PER_MEGABIT;
+        }
+        logger.info("NIO download result: " + series);
+        return series.getMbps();
+    }
+
+    // Records the time from now to the first progress event once; later calls only read a flag
+    private static Runnable firstByteTimer() {
+        long startNanos = System.nanoTime();
+        AtomicBoolean seen = new AtomicBoolean(false);
+        return () -> {
+            if (!seen.get() && seen.compareAndSet(false, true)) {
+                SpeedioMetrics.FIRST_BYTE.observeNanos(System.nanoTime() - startNanos);
+            }
+        };
+    }
+
+    // On fast links jspeedtest can report its request write as failed after reading the whole body
+    private static boolean readInFull(SpeedTestSocket socket) {
+        SpeedTestReport report = socket.getLiveReport();
+        return report.getTotalPacketSize() > 0 && report.getTemporaryPacketSize() >= report.getTotalPacketSize();
+    }
+
+    private static void stop(SpeedTestSocket socket) {
+        socket.forceStopTask();
+        socket.closeSocket();
+    }
+
+    private static long sumBytes(AtomicLongArray streamBytes) {
+        long total = 0;
+        for (int i = 0; i < streamBytes.length(); i++) {
+            total += streamBytes.get(i);
+        }
+        return total;
+    }
+
+    public ParallelDownloadResult getLastParallelResult() {
+        return lastParallelResult;
+    }
+
+    // The 100 ms samples of the last NIO run; null until the NIO engine has run
+    public DownloadTimeSeries getLastTimeSeries() {
+        return lastTimeSeries;
+    }
+
+    private void performWarmUp(TestRun run) {
+        String url = warmUpUrl;
+        if (url == null) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        if (engine == DownloadEngine.NIO) {
+            DownloadTimeSeries warmUp = new NioDownloadEngine(SOCKET_TIMEOUT_MILLIS).run(List.of(url), 1, mbps -> { }, null, run);
+            if (warmUp.getError() != null) {
+                logger.log(Level.SEVERE, "Error during warm-up: " + warmUp.getError());
+                SpeedioMetrics.recordError(warmUp.getError().name());
+            }
+            SpeedioMetrics.WARM_UP.observeNanos(System.nanoTime() - startNanos);
+            return;
+        }
         SpeedTestSocket warmUpSocket = new SpeedTestSocket();
         warmUpSocket.setSocketTimeout(10000);
 
@@ -120,28 +541,118 @@ public class DownloadSpeedCheckHandler {
 
             @Override
             public void onProgress(float percent, SpeedTestReport report) {
-                logger.fine("Warm-up progress: " + percent + "%");
+                logger.fine(() -> "Warm-up progress: " + percent + "%");
             }
 
             @Override
             public void onError(SpeedTestError speedTestError, String errorMessage) {
-                logger.log(Level.SEVERE, "Error during warm-up: " + errorMessage);
+                if (!run.isAborted()) {
+                    logger.log(Level.SEVERE, "Error during warm-up: " + errorMessage);
+                    SpeedioMetrics.recordError(speedTestError.name());
+                }
                 warmUpLatch.countDown();
             }
         });
 
-        warmUpSocket.startDownload(WARMUP_URL);
+        Runnable stopWarmUp = () -> stop(warmUpSocket);
+        run.onAbort(stopWarmUp);
+        warmUpSocket.startDownload(url);
 
         try {
-            warmUpLatch.await(); // Wait for warm-up to complete
+            run.await(warmUpLatch); // Wait for warm-up to complete
         } catch (InterruptedException e) {
             logger.log(Level.SEVERE, "Warm-up interrupted", e);
+            Thread.currentThread().interrupt();
         } finally {
+            run.removeOnAbort(stopWarmUp);
             warmUpSocket.closeSocket();
+            SpeedioMetrics.WARM_UP.observeNanos(System.nanoTime() - startNanos);
         }
     }
 
     public boolean isSpeedBelowThreshold() {
-        return lastDownloadSpeed < speedThreshold;
+        return thresholdRule.isBreached(statistics);
+    }
+
+    /**
+     * The streams of one adaptive download. A fixed test file is usually far smaller than the
+     * adaptive budget, so a stream whose file ends before the estimate has settled fetches it again
+     * on a fresh socket; jspeedtest closes a socket once its download completes.
+     */
+    private final class AdaptiveDownload {
+        private final int streams;
+        private final ThroughputEstimator estimator;
+        private final TestRun run;
+        private final AtomicLongArray streamBytes;
+        private final AtomicLongArray finishedBytes; // Bytes of each stream's earlier fetches
+        private final AtomicLongArray streamRateBits; // Latest rate per stream as double bits
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final List<SpeedTestSocket> sockets = new CopyOnWriteArrayList<>();
+
+        AdaptiveDownload(int streams, ThroughputEstimator estimator, TestRun run) {
+            this.streams = streams;
+            this.estimator = estimator;
+            this.run = run;
+            this.streamBytes = new AtomicLongArray(streams);
+            this.finishedBytes = new AtomicLongArray(streams);
+            this.streamRateBits = new AtomicLongArray(streams);
+        }
+
+        void fetch(int stream, Runnable firstByte) {
+            SpeedTestSocket socket = new SpeedTestSocket();
+            socket.setSocketTimeout(SOCKET_TIMEOUT_MILLIS);
+            socket.addSpeedTestListener(new fr.bmartel.speedtest.inter.ISpeedTestListener() {
+                @Override
+                public void onCompletion(SpeedTestReport report) {
+                    streamBytes.set(stream, finishedBytes.addAndGet(stream, report.getTotalPacketSize()));
+                    if (estimator.update(System.nanoTime(), sumBytes(streamBytes))) {
+                        done.countDown();
+                    } else if (done.getCount() > 0 && !run.isAborted()) {
+                        fetch(stream, firstByte); // The file ran out before the estimate converged
+                    }
+                }
+
+                @Override
+                public void onProgress(float percent, SpeedTestReport report) {
+                    firstByte.run();
+                    streamBytes.set(stream, finishedBytes.get(stream) + report.getTemporaryPacketSize());
+                    streamRateBits.set(stream, Double.doubleToRawLongBits(report.getTransferRateBit().doubleValue()));
+
+                    double totalRate = 0.0;
+                    for (int other = 0; other < streams; other++) {
+                        totalRate += Double.longBitsToDouble(streamRateBits.get(other));
+                    }
+                    progressListener.accept(totalRate / BITS_PER_MEGABIT);
+
+                    if (estimator.update(System.nanoTime(), sumBytes(streamBytes))) {
+                        done.countDown();
+                    }
+                }
+
+                @Override
+                public void onError(SpeedTestError speedTestError, String errorMessage) {
+                    if (done.getCount() == 0 || run.isAborted()) {
+                        return; // Errors from sockets we stopped ourselves
+                    }
+                    if (readInFull(socket)) {
+                        return; // A spurious write error; onCompletion carries on
+                    }
+                    logger.log(Level.SEVERE, "Error on download stream " + stream + ": " + errorMessage);
+                    SpeedioMetrics.recordError(speedTestError.name());
+                    lastError = speedTestError;
+                    done.countDown();
+                }
+            });
+            sockets.add(socket);
+            run.onAbort(() -> stop(socket));
+            socket.startDownload(downloadUrls.get(stream % downloadUrls.size()));
+            if (done.getCount() == 0) {
+                stop(socket); // The test ended while this fetch was starting, after stopAll() went by
+            }
+        }
+
+        void stopAll() {
+            sockets.forEach(DownloadSpeedCheckHandler::stop);
+        }
     }
-}
\ No newline at end of file
+}
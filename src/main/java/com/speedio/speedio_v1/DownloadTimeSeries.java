@@ -0,0 +1,86 @@
+package com.speedio.speedio_v1;
+
+import fr.bmartel.speedtest.model.SpeedTestError;
+
+/**
+ * Result of a {@link NioDownloadEngine} run: cumulative byte counts sampled on a fixed interval,
+ * and the overall rate between the first and the last body byte. All rates are decimal megabits
+ * (10^6 bit/s), the unit ISPs quote.
+ */
+public final class DownloadTimeSeries {
+
+    private final long intervalNanos;
+    private final long[] sampleNanos; // Since the start of the run
+    private final long[] sampleBytes; // Cumulative over all streams
+    private final long totalBytes;
+    private final long transferNanos;
+    private final int streams;
+    private final SpeedTestError error;
+
+    DownloadTimeSeries(long intervalNanos, long[] sampleNanos, long[] sampleBytes, long totalBytes, long transferNanos,
+                       int streams, SpeedTestError error) {
+        this.intervalNanos = intervalNanos;
+        this.sampleNanos = sampleNanos;
+        this.sampleBytes = sampleBytes;
+        this.totalBytes = totalBytes;
+        this.transferNanos = transferNanos;
+        this.streams = streams;
+        this.error = error;
+    }
+
+    public int getSampleCount() {
+        return sampleNanos.length;
+    }
+
+    public long getSampleNanos(int index) {
+        return sampleNanos[index];
+    }
+
+    public long getSampleBytes(int index) {
+        return sampleBytes[index];
+    }
+
+    // Rate over the interval ending at this sample
+    public double getIntervalMbps(int index) {
+        long previousNanos = index > 0 ? sampleNanos[index - 1] : 0;
+        long previousBytes = index > 0 ? sampleBytes[index - 1] : 0;
+        return mbps(sampleBytes[index] - previousBytes, sampleNanos[index] - previousNanos);
+    }
+
+    public long getIntervalMillis() {
+        return intervalNanos / 1_000_000;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    // First to last body byte over all streams, so connects and response headers are not counted
+    public long getTransferNanos() {
+        return transferNanos;
+    }
+
+    public double getMbps() {
+        return mbps(totalBytes, transferNanos);
+    }
+
+    public int getStreams() {
+        return streams;
+    }
+
+    // Null when every stream read its response to the end or was stopped on purpose
+    public SpeedTestError getError() {
+        return error;
+    }
+
+    static double mbps(long bytes, long nanos) {
+        return nanos > 0 ? bytes * 8_000.0 / nanos : 0.0; // bits per nanosecond * 10^9 / 10^6
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.2f Mbps over %d streams, %d bytes in %d ms, %d samples of %d ms%s",
+                getMbps(), streams, totalBytes, transferNanos / 1_000_000, sampleNanos.length, getIntervalMillis(),
+                error != null ? ", error: " + error : "");
+    }
+}
@@ -1,64 +1,219 @@
 package com.speedio.speedio_v1;
 
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDate;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Queues alert emails and sends them from a single background dispatcher, so a slow or dead mail
+ * endpoint never blocks or skews a speed test. Identical alerts within {@link #COALESCE_WINDOW_MILLIS}
+ * are dropped, each recipient gets at most {@link #MAX_EMAILS_PER_DAY} emails a day, and failed
+ * deliveries are retried with exponential backoff.
+ */
 public class EmailAlertSender {
 
     private static final Logger logger = Logger.getLogger(EmailAlertSender.class.getName());
 
+    private static final URI EMAIL_API_URI = URI.create("https://emailio-c9198bebc9fe.herokuapp.com/api/email/send");
     private static final int MAX_EMAILS_PER_DAY = 3;
-    private static Map<LocalDate, Integer> emailCountMap = new HashMap<>();
+    private static final int QUEUE_CAPACITY = 64;
+    private static final long COALESCE_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long INITIAL_BACKOFF_MILLIS = 2000;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
 
-    public static void sendEmailAlert(String to, String subject, String body) {
-        LocalDate today = LocalDate.now();
+    private static final BlockingQueue<Alert> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final Map<String, DailyQuota> quotas = new ConcurrentHashMap<>();
+    private static final Map<String, Long> recentAlerts = new ConcurrentHashMap<>();
+    private static Thread dispatcher;
 
-        // Initialize today's count if not present
-        emailCountMap.putIfAbsent(today, 0);
+    /**
+     * Queues an alert and returns immediately. Returns false if the alert was coalesced with an
+     * identical recent one, the recipient's daily quota is used up, or the queue is full.
+     */
+    public static boolean sendEmailAlert(String to, String subject, String body) {
+        long now = System.currentTimeMillis();
+        String key = to + '\n' + subject;
 
-        int emailsSentToday = emailCountMap.get(today);
+        if (isDuplicate(key, now)) {
+            logger.info("Suppressed duplicate alert to " + to + " with subject: " + subject);
+            SpeedioMetrics.ALERTS_DUPLICATE.increment();
+            return false;
+        }
 
-        if (emailsSentToday < MAX_EMAILS_PER_DAY) {
-            // Proceed to send the email
-            try {
-                URL url = new URL("https://emailio-c9198bebc9fe.herokuapp.com/api/email/send");
-                HttpURLConnection con = (HttpURLConnection) url.openConnection();
-                con.setRequestMethod("POST");
-                con.setDoOutput(true);
-                con.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        if (!reserveQuota(to, LocalDate.now())) {
+            forget(key, now);
+            logger.warning("Maximum number of emails sent today to " + to + ". No more emails will be sent.");
+            SpeedioMetrics.ALERTS_OVER_QUOTA.increment();
+            return false;
+        }
 
-                String urlParameters = "to=" + to + "&subject=" + subject + "&body=" + body;
+        if (!queue.offer(new Alert(to, subject, body))) {
+            releaseQuota(to);
+            forget(key, now);
+            logger.warning("Alert queue is full. Dropping alert to " + to);
+            SpeedioMetrics.ALERTS_QUEUE_FULL.increment();
+            return false;
+        }
+
+        SpeedioMetrics.ALERTS_QUEUED.increment();
+        ensureDispatcherRunning();
+        return true;
+    }
 
-                OutputStream os = con.getOutputStream();
-                os.write(urlParameters.getBytes());
-                os.flush();
-                os.close();
+    public static synchronized void shutdown() {
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+            dispatcher = null;
+        }
+    }
 
-                int responseCode = con.getResponseCode();
-                System.out.println("POST Response Code :: " + responseCode);
+    // Atomically takes one email from the recipient's quota for the given day
+    static boolean reserveQuota(String to, LocalDate today) {
+        boolean[] reserved = {false};
+        quotas.compute(to, (recipient, quota) -> {
+            if (quota == null || !quota.day.equals(today)) {
+                reserved[0] = true;
+                return new DailyQuota(today, 1);
+            }
+            if (quota.count >= MAX_EMAILS_PER_DAY) {
+                return quota;
+            }
+            reserved[0] = true;
+            return new DailyQuota(quota.day, quota.count + 1);
+        });
+        return reserved[0];
+    }
 
-                // Increment the count of emails sent today
-                emailCountMap.put(today, emailsSentToday + 1);
+    // Gives back a reservation for an alert that was never delivered
+    static void releaseQuota(String to) {
+        quotas.computeIfPresent(to, (recipient, quota) ->
+                quota.count <= 1 ? null : new DailyQuota(quota.day, quota.count - 1));
+    }
 
-                logger.info("Email sent to " + to + " with subject: " + subject);
-            } catch (Exception e) {
-                e.printStackTrace();
+    // Records the alert as sent at now unless an identical one was sent within the window
+    private static boolean isDuplicate(String key, long now) {
+        boolean[] duplicate = {false};
+        recentAlerts.compute(key, (k, last) -> {
+            if (last != null && now - last < COALESCE_WINDOW_MILLIS) {
+                duplicate[0] = true;
+                return last;
             }
-        } else {
-            logger.warning("Maximum number of emails sent today. No more emails will be sent.");
+            return now;
+        });
+        if (recentAlerts.size() > QUEUE_CAPACITY) {
+            recentAlerts.values().removeIf(last -> now - last >= COALESCE_WINDOW_MILLIS);
+        }
+        return duplicate[0];
+    }
+
+    // Undoes isDuplicate for an alert that was rejected, so a later retry of it is not suppressed
+    private static void forget(String key, long now) {
+        recentAlerts.remove(key, now);
+    }
+
+    private static synchronized void ensureDispatcherRunning() {
+        if (dispatcher == null || !dispatcher.isAlive()) {
+            dispatcher = new Thread(EmailAlertSender::dispatchLoop, "speedio-alert-dispatcher");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
         }
+    }
 
-        // Cleanup for old entries
-        cleanupOldEntries();
+    private static void dispatchLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                deliver(queue.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Alert dispatcher stopped with " + queue.size() + " alerts pending");
     }
 
-    private static void cleanupOldEntries() {
-        LocalDate yesterday = LocalDate.now().minusDays(1);
-        emailCountMap.entrySet().removeIf(entry -> entry.getKey().isBefore(yesterday));
+    private static void deliver(Alert alert) {
+        HttpRequest request = HttpRequest.newBuilder(EMAIL_API_URI)
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(alert.formBody(), StandardCharsets.UTF_8))
+                .build();
+
+        // The dispatcher only starts the request; the response is handled on the client's executor
+        HttpClientPool.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    if (error == null && response.statusCode() / 100 == 2) {
+                        logger.info("Email sent to " + alert.to + " with subject: " + alert.subject);
+                    } else if (error == null && !isRetryable(response.statusCode())) {
+                        releaseQuota(alert.to);
+                        logger.warning("Email API rejected alert to " + alert.to + " with status " + response.statusCode());
+                    } else {
+                        retry(alert, error != null ? error.toString() : "status " + response.statusCode());
+                    }
+                });
+    }
+
+    private static boolean isRetryable(int statusCode) {
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+
+    private static void retry(Alert alert, String reason) {
+        alert.attempt++;
+        if (alert.attempt >= MAX_ATTEMPTS) {
+            releaseQuota(alert.to);
+            logger.log(Level.SEVERE, "Giving up on alert to " + alert.to + " after " + alert.attempt + " attempts: " + reason);
+            return;
+        }
+
+        long backoffMillis = INITIAL_BACKOFF_MILLIS << (alert.attempt - 1);
+        logger.warning("Alert to " + alert.to + " failed (" + reason + "). Retrying in " + backoffMillis + " ms");
+        CompletableFuture.delayedExecutor(backoffMillis, TimeUnit.MILLISECONDS).execute(() -> {
+            if (!queue.offer(alert)) {
+                releaseQuota(alert.to);
+                logger.warning("Alert queue is full. Dropping retry of alert to " + alert.to);
+            }
+        });
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static final class Alert {
+        final String to;
+        final String subject;
+        final String body;
+        volatile int attempt;
+
+        Alert(String to, String subject, String body) {
+            this.to = to;
+            this.subject = subject;
+            this.body = body;
+        }
+
+        String formBody() {
+            return "to=" + encode(to) + "&subject=" + encode(subject) + "&body=" + encode(body);
+        }
+    }
+
+    private static final class DailyQuota {
+        final LocalDate day;
+        final int count;
+
+        DailyQuota(LocalDate day, int count) {
+            this.day = day;
+            this.count = count;
+        }
     }
-}
\ No newline at end of file
+}
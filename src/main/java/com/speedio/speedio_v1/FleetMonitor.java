@@ -0,0 +1,244 @@
+package com.speedio.speedio_v1;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Monitors many targets from one collector. Each {@link MonitorTarget} gets its own schedule,
+ * statistics, threshold rule and alert state; probes run on a bounded pool shared by the whole
+ * fleet, and targets on the same link are serialized by {@link MonitoringScheduler}, which queues a
+ * run whose link is busy until the probe ahead of it is done. Measurements
+ * are stored and reported under the target id, and alerts name the target and its link.
+ */
+public class FleetMonitor {
+
+    private static final Logger logger = Logger.getLogger(FleetMonitor.class.getName());
+
+    private static final int TIMER_THREADS = 2; // Timers only hand probes to the pool
+    private static final double JITTER = 0.1;
+    private static final int ALERT_SAMPLES_BELOW = 2; // Same rule as the single-link monitor
+    private static final int ALERT_SAMPLE_WINDOW = 3;
+    private static final String PROBE_PREFIX = "target:";
+
+    private final MonitorConfig config;
+    private final MonitoringListener listener;
+    private final TargetRegistry registry = new TargetRegistry();
+    private final MonitoringScheduler scheduler;
+    private final Map<String, TargetState> states = new ConcurrentHashMap<>();
+    private final Set<TestRun> activeRuns = ConcurrentHashMap.newKeySet();
+    private MeasurementStore measurementStore;
+    private ResultShipper resultShipper;
+    private volatile boolean started;
+
+    public FleetMonitor(MonitorConfig config, MonitoringListener listener) {
+        this.config = config;
+        this.listener = listener;
+        this.scheduler = new MonitoringScheduler(TIMER_THREADS, config.getFleetMaxConcurrent());
+        try {
+            measurementStore = new MeasurementStore(config.getHistoryDir());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not open measurement history. Results will not be stored.", e);
+        }
+        if (config.getShipUrl() != null) {
+            try {
+                ResultShipper shipper = ResultShipper.fromConfig(config);
+                shipper.start();
+                resultShipper = shipper;
+            } catch (IOException | IllegalArgumentException e) {
+                logger.log(Level.WARNING, "Could not start shipping results to " + config.getShipUrl(), e);
+            }
+        }
+        config.getTargets().forEach(registry::register);
+    }
+
+    public synchronized void start() {
+        started = true;
+        registry.getTargets().forEach(this::schedule);
+        logger.info("Monitoring " + registry.size() + " targets with at most " + config.getFleetMaxConcurrent() + " concurrent probes");
+    }
+
+    // Adds or replaces a target; a replaced target keeps its statistics
+    public synchronized void addTarget(MonitorTarget target) {
+        registry.register(target);
+        if (started) {
+            schedule(target);
+        }
+    }
+
+    public synchronized void removeTarget(String id) {
+        if (registry.remove(id) != null) {
+            scheduler.cancel(PROBE_PREFIX + id);
+            states.remove(id);
+        }
+    }
+
+    public boolean runNow(String id) {
+        MonitorTarget target = registry.get(id);
+        if (target == null) {
+            return false;
+        }
+        TargetState state = stateFor(target);
+        return scheduler.runNow(target.getLink(), () -> runProbe(state));
+    }
+
+    public TargetRegistry getRegistry() {
+        return registry;
+    }
+
+    // Null for unknown targets or targets that have not been scheduled yet
+    public SpeedStatistics getStatistics(String id) {
+        TargetState state = states.get(id);
+        return state != null ? state.statistics : null;
+    }
+
+    public int getQueuedProbes() {
+        return scheduler.getQueuedProbes();
+    }
+
+    public MeasurementStore getMeasurementStore() {
+        return measurementStore;
+    }
+
+    public void shutdown() {
+        logger.info("Stopping fleet monitoring...");
+        activeRuns.forEach(TestRun::cancel); // Closes the probes' sockets instead of waiting for their deadlines
+        scheduler.shutdown();
+        EmailAlertSender.shutdown();
+        HttpClientPool.shutdown();
+        synchronized (this) {
+            if (measurementStore != null) {
+                measurementStore.close();
+            }
+            if (resultShipper != null) {
+                resultShipper.close();
+            }
+        }
+    }
+
+    private void schedule(MonitorTarget target) {
+        TargetState state = stateFor(target);
+        // Start each target at a random point of its first interval so a large fleet does not probe in bursts
+        long initialDelay = ThreadLocalRandom.current().nextLong(target.getIntervalMillis());
+        scheduler.schedule(PROBE_PREFIX + target.getId(), target.getLink(), () -> runProbe(state),
+                target.getIntervalMillis(), JITTER, initialDelay);
+    }
+
+    private TargetState stateFor(MonitorTarget target) {
+        return states.compute(target.getId(), (id, existing) -> {
+            if (existing == null) {
+                return new TargetState(target, new SpeedStatistics());
+            }
+            return existing.target == target ? existing : new TargetState(target, existing.statistics);
+        });
+    }
+
+    private void runProbe(TargetState state) {
+        TestRun run = new TestRun(config.getTestTimeoutMillis());
+        activeRuns.add(run);
+        try {
+            runProbe(state, run);
+        } finally {
+            run.complete();
+            activeRuns.remove(run);
+        }
+    }
+
+    private void runProbe(TargetState state, TestRun run) {
+        MonitorTarget target = state.target;
+        listener.onTestStarted(target.getDirection());
+        if (target.getDirection() == Direction.DOWNLOAD) {
+            DownloadSpeedCheckHandler handler = new DownloadSpeedCheckHandler(speed -> { }, target.getThreshold(), () -> { },
+                    target.getStreams(), List.of(target.getUrl()));
+            handler.setStatistics(state.statistics);
+            handler.setThresholdRule(state.rule);
+            handler.setProgressListener(speed -> { }); // Nobody watches live progress of fleet probes
+            handler.setWarmUpUrl(null); // The built-in warm-up file is on another server than the target
+            handler.setAdaptivePolicy(config.getAdaptivePolicy());
+            handler.setEngine(config.getDownloadEngine());
+            handler.setMeasurementListener(measurement -> onMeasurement(state, measurement));
+            handler.checkAndUpdateSpeed(run);
+        } else {
+            UploadSpeedCheckHandler handler = new UploadSpeedCheckHandler(speed -> { }, null, target.getUrl());
+            handler.setAdaptivePolicy(config.getAdaptivePolicy());
+            handler.setUploadMode(config.getUploadMode(), config.getUploadChunksInFlight());
+            handler.setMeasurementListener(measurement -> onMeasurement(state, measurement));
+            handler.startSpeedTest(run);
+        }
+    }
+
+    private void onMeasurement(TargetState state, Measurement measurement) {
+        MonitorTarget target = state.target;
+        Measurement tagged = measurement.withTarget(target.getId());
+        if (tagged.isAborted()) {
+            recordMeasurement(tagged); // Kept in the history, but never counted against the threshold
+            listener.onMeasurement(tagged);
+            return;
+        }
+        if (tagged.getDirection() == Direction.UPLOAD) {
+            state.statistics.record(tagged.getTimestampMillis(), tagged.getMbps()); // The download handler records its own
+        }
+        recordMeasurement(tagged);
+        listener.onMeasurement(tagged);
+        checkThreshold(state, tagged);
+    }
+
+    private void checkThreshold(TargetState state, Measurement measurement) {
+        if (!state.rule.isBreached(state.statistics)) {
+            state.alertSent.set(false);
+            return;
+        }
+        if (!state.alertSent.compareAndSet(false, true)) {
+            return; // Only alert once until the target recovers
+        }
+
+        MonitorTarget target = state.target;
+        logger.warning("Target " + target.getId() + " on link " + target.getLink() + " is below its threshold: " + measurement);
+        if (target.getAlertEmail().isEmpty()) {
+            return;
+        }
+        String subject = "Sysmonitor.io - " + target.getDirection() + " speed alert for " + target.getId();
+        String body = String.format(
+                "Target: %s%nLink: %s%nURL: %s%nTimestamp: %s%nThreshold: %s Mbps%nCurrent Speed: %.2f Mbps%n",
+                target.getId(), target.getLink(), target.getUrl(),
+                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")),
+                target.getThreshold(), measurement.getMbps());
+        EmailAlertSender.sendEmailAlert(target.getAlertEmail(), subject, body);
+    }
+
+    // Ships the measurement, if configured, and stores it locally
+    private void recordMeasurement(Measurement measurement) {
+        if (resultShipper != null) {
+            resultShipper.ship(measurement);
+        }
+        if (measurementStore == null) {
+            return;
+        }
+        try {
+            measurementStore.append(measurement);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not store measurement " + measurement, e);
+        }
+    }
+
+    private static final class TargetState {
+        final MonitorTarget target;
+        final SpeedStatistics statistics;
+        final ThresholdRule rule;
+        final AtomicBoolean alertSent = new AtomicBoolean(false);
+
+        TargetState(MonitorTarget target, SpeedStatistics statistics) {
+            this.target = target;
+            this.statistics = statistics;
+            this.rule = ThresholdRule.kOfLastM(ALERT_SAMPLES_BELOW, ALERT_SAMPLE_WINDOW, target.getThreshold());
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.speedio.speedio_v1;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Application-wide keep-alive HTTP clients. Upload chunks share one Apache connection pool, so
+ * repeated requests to the same server reuse warm TCP/TLS connections instead of paying a new
+ * handshake each time; responses must be fully consumed (or closed) to return a connection.
+ * Alerts and result shipping share one JDK client, which keeps its own keep-alive connections and
+ * has no pool statistics; requests sent through {@link #sendAsync} and {@link #send} are counted in
+ * {@link SpeedioMetrics#BACKGROUND_REQUESTS} instead. Concurrent uploads use separate JDK clients.
+ */
+public final class HttpClientPool {
+
+    private static final Logger logger = Logger.getLogger(HttpClientPool.class.getName());
+
+    private static final int MAX_TOTAL_CONNECTIONS = 32;
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 8; // Enough for the 5 parallel upload connections
+    private static final int CONNECT_TIMEOUT_MS = 20000;
+    private static final long IDLE_EVICTION_SECONDS = 60;
+
+    private static PoolingHttpClientConnectionManager connectionManager;
+    private static CloseableHttpClient client;
+    private static HttpClient asyncClient;
+    private static final List<HttpClient> multiplexedClients = new ArrayList<>();
+
+    private HttpClientPool() {
+    }
+
+    public static synchronized CloseableHttpClient getClient() {
+        if (client == null) {
+            connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(MAX_TOTAL_CONNECTIONS);
+            connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+            connectionManager.setValidateAfterInactivity(5000);
+
+            client = HttpClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setDefaultRequestConfig(RequestConfig.custom()
+                            .setConnectTimeout(CONNECT_TIMEOUT_MS)
+                            .build())
+                    .evictExpiredConnections()
+                    .evictIdleConnections(IDLE_EVICTION_SECONDS, TimeUnit.SECONDS)
+                    .build();
+            logger.info("Created shared HTTP connection pool (max " + MAX_TOTAL_CONNECTIONS + ", "
+                    + MAX_CONNECTIONS_PER_ROUTE + " per route)");
+        }
+        return client;
+    }
+
+    // JDK client for background work outside the upload pool: alerts and shipping results
+    public static synchronized HttpClient getAsyncClient() {
+        if (asyncClient == null) {
+            asyncClient = HttpClient.newBuilder()
+                    .connectTimeout(Duration.ofMillis(CONNECT_TIMEOUT_MS))
+                    .build();
+        }
+        return asyncClient;
+    }
+
+    public static <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        SpeedioMetrics.BACKGROUND_REQUESTS.increment();
+        return getAsyncClient().sendAsync(request, handler)
+                .whenComplete((response, error) -> SpeedioMetrics.BACKGROUND_REQUESTS.decrement());
+    }
+
+    public static <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+            throws IOException, InterruptedException {
+        SpeedioMetrics.BACKGROUND_REQUESTS.increment();
+        try {
+            return getAsyncClient().send(request, handler);
+        } finally {
+            SpeedioMetrics.BACKGROUND_REQUESTS.decrement();
+        }
+    }
+
+    /**
+     * HTTP/2 clients for concurrent chunk uploads. The JDK client multiplexes every request to
+     * one origin over a single HTTP/2 connection, so each index is a separate client and thus a
+     * separate connection; against HTTP/1.1 servers a client opens one connection per request in
+     * flight instead.
+     */
+    public static synchronized HttpClient getMultiplexedClient(int connection) {
+        while (multiplexedClients.size() <= connection) {
+            multiplexedClients.add(HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(Duration.ofMillis(CONNECT_TIMEOUT_MS))
+                    .build());
+        }
+        return multiplexedClients.get(connection);
+    }
+
+    public static synchronized PoolStats getTotalStats() {
+        if (connectionManager == null) {
+            return new PoolStats(0, 0, 0, MAX_TOTAL_CONNECTIONS);
+        }
+        return connectionManager.getTotalStats();
+    }
+
+    public static synchronized Map<String, PoolStats> getRouteStats() {
+        Map<String, PoolStats> stats = new LinkedHashMap<>();
+        if (connectionManager != null) {
+            for (HttpRoute route : connectionManager.getRoutes()) {
+                stats.put(route.getTargetHost().toURI(), connectionManager.getStats(route));
+            }
+        }
+        return stats;
+    }
+
+    public static synchronized void shutdown() {
+        if (client != null) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Error while closing the shared HTTP client", e);
+            }
+            client = null;
+            connectionManager = null;
+        }
+        multiplexedClients.clear(); // JDK clients have no close(); they shut down once unreferenced
+    }
+}
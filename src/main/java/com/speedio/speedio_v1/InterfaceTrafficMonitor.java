@@ -0,0 +1,367 @@
+package com.speedio.speedio_v1;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Passively samples the Linux byte counters of the network interface, so the scheduler can tell
+ * whether the line is already busy before it starts a test. Counters come from
+ * {@code /proc/net/dev}, or from {@code /sys/class/net/<if>/statistics} where that is not readable.
+ * The files stay open and are re-read from offset 0 into one reused buffer, so a sample costs a
+ * read syscall and a few hundred bytes of parsing.
+ *
+ * <p>Without a configured interface the one carrying the default route is used, falling back to
+ * the sum of every interface except loopback. While a test runs its own traffic would look like
+ * background load, so samples taken then are kept out of the window.
+ */
+public class InterfaceTrafficMonitor implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(InterfaceTrafficMonitor.class.getName());
+
+    private static final Path PROC_NET_DEV = Paths.get("/proc/net/dev");
+    private static final Path PROC_NET_ROUTE = Paths.get("/proc/net/route");
+    private static final Path SYS_CLASS_NET = Paths.get("/sys/class/net");
+    private static final String LOOPBACK = "lo";
+    private static final String DEFAULT_ROUTE = "00000000";
+    private static final int TX_BYTES_FIELD = 8; // After 8 receive columns in /proc/net/dev
+    private static final double BITS_PER_MEGABIT = 1_000_000.0;
+
+    private final String interfaceName; // Null sums every interface except loopback
+    private final byte[] interfaceBytes;
+    private final long sampleMillis;
+    private final long[] sampleNanos; // Ring of the samples in the window, guarded by this
+    private final long[] rxBytes;
+    private final long[] txBytes;
+    private int newest = -1;
+    private int count;
+    private final AtomicInteger activeTests = new AtomicInteger();
+
+    // Only touched by the sampler thread after start()
+    private final long[] counters = new long[2];
+    private byte[] readBuffer = new byte[4096];
+    private int cursor;
+    private RandomAccessFile procFile;
+    private final List<RandomAccessFile> sysRxFiles = new ArrayList<>();
+    private final List<RandomAccessFile> sysTxFiles = new ArrayList<>();
+    private long lastNanos;
+    private long lastRx;
+    private long lastTx;
+    private boolean readFailed;
+
+    private ScheduledExecutorService sampler;
+
+    // A null interface name picks the default-route interface
+    public InterfaceTrafficMonitor(String interfaceName, long sampleMillis, long windowMillis) {
+        if (sampleMillis <= 0 || windowMillis < sampleMillis) {
+            throw new IllegalArgumentException("Invalid sampling: every " + sampleMillis + " ms over " + windowMillis + " ms");
+        }
+        this.interfaceName = interfaceName != null ? interfaceName : defaultRouteInterface();
+        this.interfaceBytes = this.interfaceName != null ? this.interfaceName.getBytes(StandardCharsets.US_ASCII) : null;
+        this.sampleMillis = sampleMillis;
+        int capacity = (int) (windowMillis / sampleMillis) + 1;
+        this.sampleNanos = new long[capacity];
+        this.rxBytes = new long[capacity];
+        this.txBytes = new long[capacity];
+    }
+
+    /**
+     * Opens the counters and starts sampling on a daemon thread. Returns false, and stays idle, when
+     * there are no readable counters for the interface, e.g. on anything but Linux.
+     */
+    public synchronized boolean start() {
+        if (sampler != null) {
+            return true;
+        }
+        try {
+            openCounters();
+            if (!readCounters(counters)) {
+                logger.warning("Network interface " + interfaceName + " not found. Passive traffic monitoring is off.");
+                closeCounters();
+                return false;
+            }
+        } catch (IOException e) {
+            logger.info("Interface counters are not readable (" + e.getMessage() + "). Passive traffic monitoring is off.");
+            closeCounters();
+            return false;
+        }
+        lastNanos = System.nanoTime();
+        lastRx = counters[0];
+        lastTx = counters[1];
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "speedio-traffic");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sample, sampleMillis, sampleMillis, TimeUnit.MILLISECONDS);
+        logger.info("Monitoring traffic on " + getInterfaceDescription() + " every " + sampleMillis + " ms");
+        return true;
+    }
+
+    /**
+     * Average traffic over the window, or null while fewer than two samples have been taken since
+     * start-up or the last test.
+     */
+    public synchronized TrafficLoad getBackgroundLoad() {
+        if (count < 2) {
+            return null;
+        }
+        int oldest = Math.floorMod(newest - count + 1, sampleNanos.length);
+        double seconds = (sampleNanos[newest] - sampleNanos[oldest]) / 1e9;
+        return new TrafficLoad(
+                (rxBytes[newest] - rxBytes[oldest]) * 8 / seconds / BITS_PER_MEGABIT,
+                (txBytes[newest] - txBytes[oldest]) * 8 / seconds / BITS_PER_MEGABIT,
+                Math.round(seconds * 1000));
+    }
+
+    // Brackets an active test on this interface; the window starts over once the test is done
+    public void testStarted() {
+        activeTests.incrementAndGet();
+        clearWindow();
+    }
+
+    public void testEnded() {
+        activeTests.decrementAndGet();
+        clearWindow();
+    }
+
+    public String getInterfaceDescription() {
+        return interfaceName != null ? interfaceName : "all interfaces";
+    }
+
+    @Override
+    public void close() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = sampler;
+            sampler = null;
+        }
+        if (running == null) {
+            return;
+        }
+        running.shutdownNow();
+        try {
+            running.awaitTermination(1, TimeUnit.SECONDS); // The files are still in use until the last sample is done
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeCounters();
+    }
+
+    private void sample() {
+        try {
+            if (!readCounters(counters)) {
+                clearWindow(); // Interface went away; start over if it comes back
+                return;
+            }
+            readFailed = false;
+        } catch (IOException | RuntimeException e) {
+            if (!readFailed) {
+                readFailed = true; // Warn once per outage, not four times a second
+                logger.log(Level.WARNING, "Could not read interface counters", e);
+            }
+            return;
+        }
+        long now = System.nanoTime();
+        long rx = counters[0];
+        long tx = counters[1];
+        double seconds = (now - lastNanos) / 1e9;
+        if (rx >= lastRx && tx >= lastTx && seconds > 0) {
+            SpeedioMetrics.INTERFACE_RX_BITS.set(Math.round((rx - lastRx) * 8 / seconds));
+            SpeedioMetrics.INTERFACE_TX_BITS.set(Math.round((tx - lastTx) * 8 / seconds));
+        }
+        lastNanos = now;
+        lastRx = rx;
+        lastTx = tx;
+        if (activeTests.get() == 0) {
+            addSample(now, rx, tx);
+        }
+    }
+
+    private synchronized void addSample(long nanos, long rx, long tx) {
+        if (count > 0 && (rx < rxBytes[newest] || tx < txBytes[newest])) {
+            count = 0; // Counters were reset, e.g. the interface was re-created
+        }
+        newest = (newest + 1) % sampleNanos.length;
+        sampleNanos[newest] = nanos;
+        rxBytes[newest] = rx;
+        txBytes[newest] = tx;
+        count = Math.min(count + 1, sampleNanos.length);
+    }
+
+    private synchronized void clearWindow() {
+        count = 0;
+    }
+
+    private void openCounters() throws IOException {
+        try {
+            procFile = new RandomAccessFile(PROC_NET_DEV.toFile(), "r");
+            return;
+        } catch (IOException e) {
+            logger.fine("Cannot open " + PROC_NET_DEV + ", trying " + SYS_CLASS_NET);
+        }
+        List<String> names = new ArrayList<>();
+        if (interfaceName != null) {
+            names.add(interfaceName);
+        } else {
+            try (DirectoryStream<Path> interfaces = Files.newDirectoryStream(SYS_CLASS_NET)) {
+                for (Path path : interfaces) {
+                    String name = path.getFileName().toString();
+                    if (!LOOPBACK.equals(name)) {
+                        names.add(name);
+                    }
+                }
+            }
+        }
+        for (String name : names) {
+            Path statistics = SYS_CLASS_NET.resolve(name).resolve("statistics");
+            sysRxFiles.add(new RandomAccessFile(statistics.resolve("rx_bytes").toFile(), "r"));
+            sysTxFiles.add(new RandomAccessFile(statistics.resolve("tx_bytes").toFile(), "r"));
+        }
+    }
+
+    private void closeCounters() {
+        List<RandomAccessFile> files = new ArrayList<>(sysRxFiles);
+        files.addAll(sysTxFiles);
+        if (procFile != null) {
+            files.add(procFile);
+        }
+        for (RandomAccessFile file : files) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Could not close interface counters", e);
+            }
+        }
+        procFile = null;
+        sysRxFiles.clear();
+        sysTxFiles.clear();
+    }
+
+    // Fills {rx bytes, tx bytes}; false when the interface is not listed
+    private boolean readCounters(long[] result) throws IOException {
+        if (procFile == null) {
+            result[0] = sumSysCounters(sysRxFiles);
+            result[1] = sumSysCounters(sysTxFiles);
+            return true;
+        }
+        int length = readFile(procFile);
+        boolean found = false;
+        long rx = 0;
+        long tx = 0;
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = indexOf('\n', lineStart, length);
+            int colon = indexOf(':', lineStart, lineEnd); // The two header lines have none
+            if (colon < lineEnd) {
+                int nameStart = lineStart;
+                while (nameStart < colon && readBuffer[nameStart] == ' ') {
+                    nameStart++;
+                }
+                if (isMonitored(nameStart, colon)) {
+                    cursor = colon + 1;
+                    rx += nextNumber(lineEnd);
+                    for (int field = 1; field < TX_BYTES_FIELD; field++) {
+                        nextNumber(lineEnd);
+                    }
+                    tx += nextNumber(lineEnd);
+                    found = true;
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        result[0] = rx;
+        result[1] = tx;
+        return found;
+    }
+
+    private boolean isMonitored(int nameStart, int nameEnd) {
+        int length = nameEnd - nameStart;
+        if (interfaceBytes == null) {
+            return !(length == 2 && readBuffer[nameStart] == 'l' && readBuffer[nameStart + 1] == 'o');
+        }
+        if (length != interfaceBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (readBuffer[nameStart + i] != interfaceBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long sumSysCounters(List<RandomAccessFile> files) throws IOException {
+        long total = 0;
+        for (RandomAccessFile file : files) {
+            int length = readFile(file);
+            cursor = 0;
+            total += nextNumber(length);
+        }
+        return total;
+    }
+
+    // procfs and sysfs regenerate the contents on every read from offset 0
+    private int readFile(RandomAccessFile file) throws IOException {
+        file.seek(0);
+        int length = 0;
+        int read;
+        while ((read = file.read(readBuffer, length, readBuffer.length - length)) > 0) {
+            length += read;
+            if (length == readBuffer.length) {
+                readBuffer = Arrays.copyOf(readBuffer, readBuffer.length * 2); // Hosts with many interfaces
+            }
+        }
+        return length;
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (readBuffer[i] == c) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    // Parses the next whitespace-separated decimal number at the cursor
+    private long nextNumber(int end) {
+        while (cursor < end && (readBuffer[cursor] < '0' || readBuffer[cursor] > '9')) {
+            cursor++;
+        }
+        long value = 0;
+        while (cursor < end && readBuffer[cursor] >= '0' && readBuffer[cursor] <= '9') {
+            value = value * 10 + (readBuffer[cursor++] - '0');
+        }
+        return value;
+    }
+
+    // The interface of the IPv4 default route, or null without one
+    private static String defaultRouteInterface() {
+        try {
+            for (String line : Files.readAllLines(PROC_NET_ROUTE, StandardCharsets.US_ASCII)) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length > 1 && DEFAULT_ROUTE.equals(fields[1])) {
+                    return fields[0];
+                }
+            }
+        } catch (IOException e) {
+            logger.fine("No routing table at " + PROC_NET_ROUTE);
+        }
+        return null;
+    }
+}
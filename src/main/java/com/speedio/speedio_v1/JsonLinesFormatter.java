@@ -0,0 +1,81 @@
+package com.speedio.speedio_v1;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+/**
+ * Formats each log record as one JSON object per line:
+ * {@code {"time":"...","level":"INFO","logger":"...","thread":"speedio-monitor-1","run":3,"message":"..."}}.
+ * {@code run} is the id of the {@link TestRun} the logging thread was bound to, so the lines of
+ * one test can be picked out with {@code jq 'select(.run == 3)'}; it is omitted outside tests.
+ * Exceptions go into {@code thrown} as the full stack trace.
+ */
+public class JsonLinesFormatter extends Formatter {
+
+    @Override
+    public String format(LogRecord record) {
+        TestRun run = TestRun.current();
+        return format(record, run != null ? run.getId() : 0, Thread.currentThread().getName());
+    }
+
+    // For handlers that format on another thread than the one that logged, which pass what they
+    // captured when the record was published; runId 0 means none
+    public String format(LogRecord record, long runId, String threadName) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"time\":\"").append(record.getInstant()).append('"');
+        json.append(",\"level\":\"").append(record.getLevel().getName()).append('"');
+        json.append(",\"logger\":");
+        appendString(json, record.getLoggerName());
+        json.append(",\"thread\":");
+        appendString(json, threadName);
+        if (runId != 0) {
+            json.append(",\"run\":").append(runId);
+        }
+        json.append(",\"message\":");
+        appendString(json, formatMessage(record));
+        if (record.getThrown() != null) {
+            StringWriter trace = new StringWriter();
+            record.getThrown().printStackTrace(new PrintWriter(trace));
+            json.append(",\"thrown\":");
+            appendString(json, trace.toString());
+        }
+        return json.append("}\n").toString();
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,101 @@
+package com.speedio.speedio_v1;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Runs {@link LatencyProbe} rounds and feeds them into the same statistics, threshold rules and
+ * alert emails as the throughput tests. RTT is the UDP echo time when an echo server is configured
+ * and the TCP connect time otherwise. Rules need several bad rounds out of the last few, so a
+ * single lost packet or slow handshake does not send an email.
+ */
+public class LatencyMonitor {
+
+    private static final Logger logger = Logger.getLogger(LatencyMonitor.class.getName());
+
+    private static final int ALERT_SAMPLES_ABOVE = 5; // 5 of the last 10 rounds
+    private static final int ALERT_SAMPLE_WINDOW = 10;
+
+    private final LatencyProbe probe;
+    private final Consumer<LatencySample> listener;
+    private final String alertEmail;
+    private final SpeedStatistics rttStatistics = new SpeedStatistics();
+    private final SpeedStatistics jitterStatistics = new SpeedStatistics();
+    private final SpeedStatistics lossStatistics = new SpeedStatistics(); // Percent
+    private final SpeedStatistics ttfbStatistics = new SpeedStatistics();
+    private final ThresholdRule rttRule;
+    private final ThresholdRule jitterRule;
+    private final ThresholdRule lossRule;
+    private final AtomicBoolean rttAlertSent = new AtomicBoolean(false);
+    private final AtomicBoolean jitterAlertSent = new AtomicBoolean(false);
+    private final AtomicBoolean lossAlertSent = new AtomicBoolean(false);
+
+    public LatencyMonitor(LatencyProbe probe, Consumer<LatencySample> listener, String alertEmail,
+                          double rttThresholdMillis, double jitterThresholdMillis, double lossThresholdPercent) {
+        this.probe = probe;
+        this.listener = listener;
+        this.alertEmail = alertEmail;
+        this.rttRule = ThresholdRule.kOfLastMAbove(ALERT_SAMPLES_ABOVE, ALERT_SAMPLE_WINDOW, rttThresholdMillis, "ms");
+        this.jitterRule = ThresholdRule.kOfLastMAbove(ALERT_SAMPLES_ABOVE, ALERT_SAMPLE_WINDOW, jitterThresholdMillis, "ms");
+        this.lossRule = ThresholdRule.kOfLastMAbove(ALERT_SAMPLES_ABOVE, ALERT_SAMPLE_WINDOW, lossThresholdPercent, "%");
+    }
+
+    public void runOnce() {
+        LatencySample sample = probe.probe();
+        long timestamp = sample.getTimestampMillis();
+        double rtt = !Double.isNaN(sample.getUdpRttMillis()) ? sample.getUdpRttMillis() : sample.getConnectMillis();
+
+        // A round that reached nothing at all counts as a timeout rather than being ignored
+        rttStatistics.record(timestamp, Double.isNaN(rtt) ? probe.getTimeoutMillis() : rtt);
+        if (!Double.isNaN(sample.getUdpJitterMillis())) {
+            jitterStatistics.record(timestamp, sample.getUdpJitterMillis());
+        }
+        if (!Double.isNaN(sample.getUdpLoss())) {
+            lossStatistics.record(timestamp, sample.getUdpLoss() * 100);
+        }
+        if (!Double.isNaN(sample.getTtfbMillis())) {
+            ttfbStatistics.record(timestamp, sample.getTtfbMillis());
+        }
+
+        listener.accept(sample);
+        check(rttRule, rttStatistics, rttAlertSent, "latency", sample);
+        check(jitterRule, jitterStatistics, jitterAlertSent, "jitter", sample);
+        check(lossRule, lossStatistics, lossAlertSent, "packet loss", sample);
+    }
+
+    public SpeedStatistics getRttStatistics() {
+        return rttStatistics;
+    }
+
+    public SpeedStatistics getJitterStatistics() {
+        return jitterStatistics;
+    }
+
+    public SpeedStatistics getLossStatistics() {
+        return lossStatistics;
+    }
+
+    public SpeedStatistics getTtfbStatistics() {
+        return ttfbStatistics;
+    }
+
+    public void close() {
+        probe.close();
+    }
+
+    private void check(ThresholdRule rule, SpeedStatistics statistics, AtomicBoolean alertSent, String metric, LatencySample sample) {
+        if (!rule.isBreached(statistics)) {
+            alertSent.set(false);
+            return;
+        }
+        if (!alertSent.compareAndSet(false, true)) {
+            return; // Only alert once until the metric recovers
+        }
+        logger.warning("High " + metric + " to " + probe.getTarget() + " (" + rule + "): " + sample);
+        if (alertEmail != null && !alertEmail.isEmpty()) {
+            EmailAlertSender.sendEmailAlert(alertEmail, "Sysmonitor.io - High " + metric + " alert",
+                    "Rule: " + rule + "\nTarget: " + probe.getTarget() + "\nLatest probe: " + sample);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.speedio.speedio_v1;
+
+import javax.net.ssl.SSLSocketFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures DNS resolution, TCP connect and HTTP time-to-first-byte against a server, plus UDP echo
+ * round-trip time, jitter and loss against an RFC 862 style echo service. Each {@link #probe()} is
+ * one short round; request bytes, UDP packets and buffers are reused between rounds.
+ *
+ * <p>DNS times are usually near zero because the JVM caches lookups (networkaddress.cache.ttl).
+ * For https targets the TLS handshake is part of the TTFB.
+ */
+public class LatencyProbe implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(LatencyProbe.class.getName());
+
+    private static final int UDP_PACKET_BYTES = 32;
+    private static final long UDP_MAGIC = 0x5350454544494F4CL; // "SPEEDIOL", tells our echoes from stray datagrams
+
+    private final String target;
+    private final String host;
+    private final int port;
+    private final boolean https;
+    private final byte[] request;
+    private final InetSocketAddress udpEcho;
+    private final int timeoutMillis;
+    private final int udpPackets;
+    private final byte[] udpSendBytes = new byte[UDP_PACKET_BYTES];
+    private final byte[] udpReceiveBytes = new byte[256];
+    private final ByteBuffer udpSend = ByteBuffer.wrap(udpSendBytes);
+    private final ByteBuffer udpReceive = ByteBuffer.wrap(udpReceiveBytes);
+    private final DatagramPacket sendPacket = new DatagramPacket(udpSendBytes, UDP_PACKET_BYTES);
+    private final DatagramPacket receivePacket = new DatagramPacket(udpReceiveBytes, udpReceiveBytes.length);
+    private DatagramSocket udpSocket;
+    private long sequence;
+
+    // udpEcho may be null to skip the UDP part
+    public LatencyProbe(String url, InetSocketAddress udpEcho, int timeoutMillis, int udpPackets) {
+        URI uri = URI.create(url);
+        if (uri.getHost() == null) {
+            throw new IllegalArgumentException("Latency target needs a host: " + url);
+        }
+        this.target = url;
+        this.host = uri.getHost();
+        this.https = "https".equalsIgnoreCase(uri.getScheme());
+        this.port = uri.getPort() > 0 ? uri.getPort() : (https ? 443 : 80);
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+        // HEAD keeps the probe from downloading the test file
+        this.request = ("HEAD " + path + " HTTP/1.1\r\nHost: " + host + "\r\nConnection: close\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        this.udpEcho = udpEcho;
+        this.timeoutMillis = timeoutMillis;
+        this.udpPackets = udpPackets;
+    }
+
+    public synchronized LatencySample probe() {
+        long timestampMillis = System.currentTimeMillis();
+        double dnsMillis = Double.NaN;
+        double connectMillis = Double.NaN;
+        double ttfbMillis = Double.NaN;
+
+        InetAddress address = null;
+        long start = System.nanoTime();
+        try {
+            address = InetAddress.getByName(host);
+            dnsMillis = millisSince(start);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "DNS lookup of " + host + " failed", e);
+            SpeedioMetrics.recordError("LATENCY_DNS");
+        }
+
+        if (address != null) {
+            try (Socket socket = new Socket()) {
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(timeoutMillis);
+                start = System.nanoTime();
+                socket.connect(new InetSocketAddress(address, port), timeoutMillis);
+                connectMillis = millisSince(start);
+                SpeedioMetrics.CONNECT.observe(connectMillis / 1000.0);
+
+                start = System.nanoTime();
+                try (Socket exchange = https
+                        ? ((SSLSocketFactory) SSLSocketFactory.getDefault()).createSocket(socket, host, port, true)
+                        : socket) {
+                    OutputStream out = exchange.getOutputStream();
+                    out.write(request);
+                    out.flush();
+                    InputStream in = exchange.getInputStream();
+                    if (in.read() >= 0) {
+                        ttfbMillis = millisSince(start);
+                    }
+                }
+            } catch (IOException e) {
+                logger.log(Level.FINE, "TCP probe of " + host + ":" + port + " failed", e);
+                SpeedioMetrics.recordError("LATENCY_TCP");
+            }
+        }
+
+        double udpRttMillis = Double.NaN;
+        double udpJitterMillis = Double.NaN;
+        double udpLoss = Double.NaN;
+        if (udpEcho != null) {
+            int received = 0;
+            int jitterCount = 0;
+            double rttSum = 0.0;
+            double jitterSum = 0.0;
+            double previousRtt = Double.NaN;
+            try {
+                for (int i = 0; i < udpPackets; i++) {
+                    double rtt = echo();
+                    if (Double.isNaN(rtt)) {
+                        continue;
+                    }
+                    received++;
+                    rttSum += rtt;
+                    if (!Double.isNaN(previousRtt)) {
+                        jitterSum += Math.abs(rtt - previousRtt); // Mean delay variation between consecutive packets
+                        jitterCount++;
+                    }
+                    previousRtt = rtt;
+                }
+            } catch (IOException e) {
+                logger.log(Level.FINE, "UDP echo to " + udpEcho + " failed", e);
+                closeUdpSocket();
+            }
+            udpLoss = 1.0 - (double) received / udpPackets;
+            udpRttMillis = received > 0 ? rttSum / received : Double.NaN;
+            udpJitterMillis = jitterCount > 0 ? jitterSum / jitterCount : Double.NaN;
+        }
+
+        return new LatencySample(timestampMillis, target, dnsMillis, connectMillis, ttfbMillis, udpRttMillis, udpJitterMillis, udpLoss);
+    }
+
+    public int getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    @Override
+    public synchronized void close() {
+        closeUdpSocket();
+    }
+
+    // Sends one numbered packet and waits for its echo; returns NaN when it is lost or too late
+    private double echo() throws IOException {
+        if (udpSocket == null) {
+            udpSocket = new DatagramSocket();
+            udpSocket.connect(udpEcho);
+        }
+
+        long seq = ++sequence;
+        long sentNanos = System.nanoTime();
+        udpSend.putLong(0, UDP_MAGIC).putLong(8, seq).putLong(16, sentNanos);
+        udpSocket.send(sendPacket);
+
+        long deadline = sentNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis <= 0) {
+                return Double.NaN;
+            }
+            udpSocket.setSoTimeout((int) remainingMillis);
+            receivePacket.setLength(udpReceiveBytes.length);
+            try {
+                udpSocket.receive(receivePacket);
+            } catch (SocketTimeoutException | PortUnreachableException e) {
+                return Double.NaN;
+            }
+            // Late echoes of earlier packets are skipped rather than counted twice
+            if (receivePacket.getLength() >= UDP_PACKET_BYTES && udpReceive.getLong(0) == UDP_MAGIC && udpReceive.getLong(8) == seq) {
+                return millisSince(sentNanos);
+            }
+        }
+    }
+
+    private void closeUdpSocket() {
+        if (udpSocket != null) {
+            udpSocket.close();
+            udpSocket = null;
+        }
+    }
+
+    private static double millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000.0;
+    }
+}
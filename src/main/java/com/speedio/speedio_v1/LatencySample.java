@@ -0,0 +1,67 @@
+package com.speedio.speedio_v1;
+
+/**
+ * One round of latency probes against a server. Times are in milliseconds and loss is a ratio
+ * (0..1); anything that was not measured or failed is NaN.
+ */
+public class LatencySample {
+
+    private final long timestampMillis;
+    private final String target;
+    private final double dnsMillis;
+    private final double connectMillis;
+    private final double ttfbMillis;
+    private final double udpRttMillis;
+    private final double udpJitterMillis;
+    private final double udpLoss;
+
+    public LatencySample(long timestampMillis, String target, double dnsMillis, double connectMillis, double ttfbMillis,
+                         double udpRttMillis, double udpJitterMillis, double udpLoss) {
+        this.timestampMillis = timestampMillis;
+        this.target = target;
+        this.dnsMillis = dnsMillis;
+        this.connectMillis = connectMillis;
+        this.ttfbMillis = ttfbMillis;
+        this.udpRttMillis = udpRttMillis;
+        this.udpJitterMillis = udpJitterMillis;
+        this.udpLoss = udpLoss;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public double getDnsMillis() {
+        return dnsMillis;
+    }
+
+    public double getConnectMillis() {
+        return connectMillis;
+    }
+
+    public double getTtfbMillis() {
+        return ttfbMillis;
+    }
+
+    public double getUdpRttMillis() {
+        return udpRttMillis;
+    }
+
+    public double getUdpJitterMillis() {
+        return udpJitterMillis;
+    }
+
+    public double getUdpLoss() {
+        return udpLoss;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d %s dns=%.1f ms connect=%.1f ms ttfb=%.1f ms udp rtt=%.2f ms jitter=%.2f ms loss=%.0f%%",
+                timestampMillis, target, dnsMillis, connectMillis, ttfbMillis, udpRttMillis, udpJitterMillis, udpLoss * 100);
+    }
+}
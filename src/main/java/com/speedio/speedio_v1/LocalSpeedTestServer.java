@@ -0,0 +1,676 @@
+package com.speedio.speedio_v1;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Built-in speed-test server for LAN baselines and offline runs. {@code GET /download?bytes=N}
+ * sends N pseudo-random bytes from a small page-cached file with {@link FileChannel#transferTo}
+ * (sendfile on Linux, no copy through the JVM), and {@code POST /upload} accepts the same chunked
+ * multipart protocol as the remote upload server ({@code fileId}, {@code chunkNumber},
+ * {@code totalChunks}) while discarding the body through one reused direct buffer per thread.
+ * A handful of selector threads serve every connection, with HTTP/1.1 keep-alive. The same port
+ * also echoes UDP datagrams back to their sender for {@link LatencyProbe}.
+ */
+public class LocalSpeedTestServer {
+
+    private static final Logger logger = Logger.getLogger(LocalSpeedTestServer.class.getName());
+
+    public static final String CHUNK_RECEIVED_REPLY = "Chunk received, waiting for more chunks";
+    public static final long DEFAULT_DOWNLOAD_BYTES = 10L * 1024 * 1024; // Same size as the remote test file
+    private static final long MAX_DOWNLOAD_BYTES = 64L * 1024 * 1024 * 1024;
+    private static final int PATTERN_FILE_BYTES = 8 * 1024 * 1024; // Small enough to stay in the page cache
+    private static final int READ_BUFFER_BYTES = 256 * 1024;
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+    private static final int FIELD_CAPTURE_BYTES = 4096; // Form fields must sit in the first or last 4 KB of a chunk
+    private static final int UDP_BUFFER_BYTES = 2048; // Echo packets are tiny; anything longer is truncated
+    private static final int MAX_IO_PER_TURN = 16; // Keeps one fast connection from starving the others
+    private static final Pattern FORM_FIELD = Pattern.compile(
+            "name=\"(fileId|chunkNumber|totalChunks)\"\r\n(?:[^\r\n]+\r\n)*\r\n([^\r\n]*)\r\n");
+
+    private enum State { HEADERS, UPLOAD_BODY, RESPONSE }
+
+    private final InetSocketAddress bindAddress;
+    private final int workerCount;
+    private final LongAdder bytesServed = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private ServerSocketChannel serverChannel;
+    private DatagramChannel echoChannel; // Null if the UDP port could not be bound
+    private Path patternPath;
+    private FileChannel pattern;
+    private Worker[] workers;
+    private volatile boolean running;
+
+    public LocalSpeedTestServer(InetSocketAddress bindAddress) {
+        this(bindAddress, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public LocalSpeedTestServer(InetSocketAddress bindAddress, int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("At least one worker thread is required: " + workerCount);
+        }
+        this.bindAddress = bindAddress;
+        this.workerCount = workerCount;
+    }
+
+    // Loopback server on a free port, the usual target for offline runs and integration tests
+    public static LocalSpeedTestServer loopback() {
+        return new LocalSpeedTestServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        patternPath = Files.createTempFile("speedio-pattern", ".bin");
+        writePatternFile(patternPath);
+        pattern = FileChannel.open(patternPath, StandardOpenOption.READ);
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(bindAddress, 1024);
+        serverChannel.configureBlocking(false);
+
+        running = true;
+        workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker(i);
+        }
+        serverChannel.register(workers[0].selector, SelectionKey.OP_ACCEPT);
+        openEchoChannel();
+        for (Worker worker : workers) {
+            worker.thread.start();
+        }
+        logger.info("Local speed-test server listening on " + serverChannel.getLocalAddress() + " with " + workerCount + " threads");
+    }
+
+    public synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Worker worker : workers) {
+            worker.selector.wakeup();
+        }
+        for (Worker worker : workers) {
+            try {
+                worker.thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            serverChannel.close();
+            if (echoChannel != null) {
+                echoChannel.close();
+            }
+            pattern.close();
+            Files.deleteIfExists(patternPath);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error while stopping the local speed-test server", e);
+        }
+        logger.info("Local speed-test server stopped. Served " + bytesServed.sum() + " bytes, received " + bytesReceived.sum() + " bytes");
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public synchronized int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    // Wildcard binds are advertised as loopback; LAN clients use this machine's own address instead
+    public String getBaseUrl() {
+        InetAddress address = bindAddress.getAddress();
+        String host = address == null || address.isAnyLocalAddress()
+                ? InetAddress.getLoopbackAddress().getHostAddress()
+                : address.getHostAddress();
+        if (host.indexOf(':') >= 0) {
+            host = "[" + host + "]";
+        }
+        return "http://" + host + ":" + getPort();
+    }
+
+    // Null when UDP echo is unavailable; wildcard binds are advertised as loopback like getBaseUrl()
+    public synchronized InetSocketAddress getUdpEchoAddress() {
+        if (echoChannel == null) {
+            return null;
+        }
+        InetAddress address = bindAddress.getAddress();
+        if (address == null || address.isAnyLocalAddress()) {
+            address = InetAddress.getLoopbackAddress();
+        }
+        return new InetSocketAddress(address, getPort());
+    }
+
+    public String getDownloadUrl(long bytes) {
+        return getBaseUrl() + "/download?bytes=" + bytes;
+    }
+
+    public String getUploadUrl() {
+        return getBaseUrl() + "/upload";
+    }
+
+    public long getBytesServed() {
+        return bytesServed.sum();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    // Latency probing is optional, so a UDP port taken by someone else only costs a warning
+    private void openEchoChannel() {
+        DatagramChannel channel = null;
+        try {
+            channel = DatagramChannel.open();
+            channel.bind(new InetSocketAddress(bindAddress.getAddress(), getPort()));
+            channel.configureBlocking(false);
+            channel.register(workers[0].selector, SelectionKey.OP_READ, ByteBuffer.allocateDirect(UDP_BUFFER_BYTES));
+            echoChannel = channel;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not bind UDP echo on port " + getPort() + ". Latency probes will use TCP only.", e);
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException closeError) {
+                    logger.log(Level.FINE, "Error while closing UDP channel", closeError);
+                }
+            }
+        }
+    }
+
+    private static void writePatternFile(Path path) throws IOException {
+        byte[] block = new byte[64 * 1024];
+        long state = System.nanoTime() | 1L;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            for (int written = 0; written < PATTERN_FILE_BYTES; written += block.length) {
+                state = SyntheticChunkEntity.fillRandom(block, block.length, state);
+                ByteBuffer buffer = ByteBuffer.wrap(block);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+        path.toFile().deleteOnExit();
+    }
+
+    private final class Worker implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES); // Upload bodies land here and are dropped
+        private int nextWorker;
+
+        Worker(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "speedio-local-server-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        // Called from the accepting worker; registration must happen on this worker's own thread
+        void adopt(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select(1000);
+                    registerPending();
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        process(key);
+                    }
+                    selector.selectedKeys().clear();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Local speed-test server selector failed", e);
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Error while closing selector", e);
+            }
+        }
+
+        private void registerPending() throws IOException {
+            SocketChannel channel;
+            while ((channel = pending.poll()) != null) {
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new Connection(channel, key, this));
+            }
+        }
+
+        private void process(SelectionKey key) {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                accept();
+                return;
+            }
+            if (key.channel() instanceof DatagramChannel) {
+                echo((DatagramChannel) key.channel(), (ByteBuffer) key.attachment());
+                return;
+            }
+            Connection connection = (Connection) key.attachment();
+            try {
+                connection.handle();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Local speed-test connection closed", e);
+                connection.close();
+            }
+        }
+
+        private void echo(DatagramChannel channel, ByteBuffer buffer) {
+            try {
+                for (int i = 0; i < MAX_IO_PER_TURN; i++) {
+                    buffer.clear();
+                    SocketAddress sender = channel.receive(buffer);
+                    if (sender == null) {
+                        return;
+                    }
+                    buffer.flip();
+                    channel.send(buffer, sender); // Dropped if the socket buffer is full, like any lost datagram
+                }
+            } catch (IOException e) {
+                logger.log(Level.FINE, "UDP echo failed", e);
+            }
+        }
+
+        private void accept() {
+            try {
+                SocketChannel channel;
+                while ((channel = serverChannel.accept()) != null) {
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    workers[nextWorker++ % workers.length].adopt(channel);
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not accept connection", e);
+            }
+        }
+    }
+
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final Worker worker;
+        private final ByteBuffer requestBuffer = ByteBuffer.allocate(MAX_HEADER_BYTES); // Write mode; unread bytes at the front
+        private final byte[] head = new byte[FIELD_CAPTURE_BYTES];
+        private final byte[] tail = new byte[FIELD_CAPTURE_BYTES]; // Ring holding the last bytes of the body
+        private State state = State.HEADERS;
+        private boolean keepAlive;
+        private long bodyRemaining;
+        private int headLength;
+        private int tailEnd;
+        private int tailLength;
+        private ByteBuffer responseHead;
+        private long downloadPosition;
+        private long downloadRemaining;
+
+        Connection(SocketChannel channel, SelectionKey key, Worker worker) {
+            this.channel = channel;
+            this.key = key;
+            this.worker = worker;
+        }
+
+        void handle() throws IOException {
+            boolean progress = true;
+            while (progress && channel.isOpen()) {
+                switch (state) {
+                    case HEADERS:
+                        progress = readHeaders();
+                        break;
+                    case UPLOAD_BODY:
+                        progress = readUploadBody();
+                        break;
+                    default:
+                        progress = writeResponse();
+                        break;
+                }
+            }
+        }
+
+        private boolean readHeaders() throws IOException {
+            int end = headerEnd();
+            if (end < 0) {
+                if (!requestBuffer.hasRemaining()) {
+                    keepAlive = false;
+                    respond(431, "Request header too large");
+                    return true;
+                }
+                int read = channel.read(requestBuffer);
+                if (read < 0) {
+                    close();
+                    return false;
+                }
+                if (read == 0) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    return false;
+                }
+                return true;
+            }
+
+            String headerText = new String(requestBuffer.array(), 0, end, StandardCharsets.ISO_8859_1);
+            requestBuffer.flip();
+            requestBuffer.position(end + 4);
+            requestBuffer.compact(); // Anything after the headers is body or the next request
+            handleRequest(headerText);
+            return true;
+        }
+
+        private int headerEnd() {
+            byte[] bytes = requestBuffer.array();
+            for (int i = 3; i < requestBuffer.position(); i++) {
+                if (bytes[i] == '\n' && bytes[i - 1] == '\r' && bytes[i - 2] == '\n' && bytes[i - 3] == '\r') {
+                    return i - 3;
+                }
+            }
+            return -1;
+        }
+
+        private void handleRequest(String headerText) {
+            String[] lines = headerText.split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3) {
+                keepAlive = false;
+                respond(400, "Bad request line");
+                return;
+            }
+
+            long contentLength = -1;
+            boolean chunked = false;
+            String connectionHeader = "";
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon <= 0) {
+                    continue;
+                }
+                String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                String value = lines[i].substring(colon + 1).trim();
+                if (name.equals("content-length")) {
+                    try {
+                        contentLength = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        keepAlive = false;
+                        respond(400, "Invalid Content-Length");
+                        return;
+                    }
+                } else if (name.equals("transfer-encoding")) {
+                    chunked = value.toLowerCase(Locale.ROOT).contains("chunked");
+                } else if (name.equals("connection")) {
+                    connectionHeader = value.toLowerCase(Locale.ROOT);
+                }
+            }
+            keepAlive = "HTTP/1.1".equals(requestLine[2]) ? !connectionHeader.equals("close") : connectionHeader.equals("keep-alive");
+
+            String method = requestLine[0];
+            String target = requestLine[1];
+            if (target.startsWith("http://") || target.startsWith("https://")) {
+                // jspeedtest sends absolute-form targets (GET http://host:port/path HTTP/1.1)
+                int pathStart = target.indexOf('/', target.indexOf("//") + 2);
+                target = pathStart >= 0 ? target.substring(pathStart) : "/";
+            }
+            int query = target.indexOf('?');
+            String path = query >= 0 ? target.substring(0, query) : target;
+            String queryString = query >= 0 ? target.substring(query + 1) : "";
+
+            if (path.equals("/download") && method.equals("GET")) {
+                startDownload(queryString);
+            } else if (path.equals("/upload") && method.equals("POST")) {
+                if (chunked || contentLength < 0) {
+                    keepAlive = false; // The unread body would be taken for the next request
+                    respond(411, "Content-Length required");
+                } else {
+                    bodyRemaining = contentLength;
+                    headLength = 0;
+                    tailEnd = 0;
+                    tailLength = 0;
+                    state = State.UPLOAD_BODY;
+                }
+            } else {
+                keepAlive = keepAlive && contentLength <= 0 && !chunked;
+                boolean known = path.equals("/download") || path.equals("/upload");
+                respond(known ? 405 : 404, known ? "Method not allowed" : "Not found");
+            }
+        }
+
+        private void startDownload(String queryString) {
+            long bytes = DEFAULT_DOWNLOAD_BYTES;
+            for (String parameter : queryString.split("&")) {
+                if (parameter.startsWith("bytes=")) {
+                    try {
+                        bytes = Long.parseLong(parameter.substring("bytes=".length()));
+                    } catch (NumberFormatException e) {
+                        bytes = -1;
+                    }
+                }
+            }
+            if (bytes < 0 || bytes > MAX_DOWNLOAD_BYTES) {
+                respond(400, "bytes must be between 0 and " + MAX_DOWNLOAD_BYTES);
+                return;
+            }
+
+            String header = "HTTP/1.1 200 OK\r\n"
+                    + "Content-Type: application/octet-stream\r\n"
+                    + "Cache-Control: no-store\r\n"
+                    + "Content-Length: " + bytes + "\r\n"
+                    + (keepAlive ? "" : "Connection: close\r\n")
+                    + "\r\n";
+            responseHead = ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII));
+            downloadPosition = 0;
+            downloadRemaining = bytes;
+            state = State.RESPONSE;
+        }
+
+        private boolean readUploadBody() throws IOException {
+            if (requestBuffer.position() > 0 && bodyRemaining > 0) {
+                requestBuffer.flip();
+                int buffered = (int) Math.min(bodyRemaining, requestBuffer.remaining());
+                ByteBuffer body = requestBuffer.duplicate();
+                body.limit(body.position() + buffered);
+                capture(body);
+                requestBuffer.position(requestBuffer.position() + buffered);
+                requestBuffer.compact();
+                bodyRemaining -= buffered;
+                bytesReceived.add(buffered);
+            }
+
+            ByteBuffer buffer = worker.readBuffer;
+            for (int reads = 0; bodyRemaining > 0; reads++) {
+                if (reads == MAX_IO_PER_TURN) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    return false;
+                }
+                buffer.clear();
+                if (bodyRemaining < buffer.capacity()) {
+                    buffer.limit((int) bodyRemaining);
+                }
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    close();
+                    return false;
+                }
+                if (read == 0) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    return false;
+                }
+                buffer.flip();
+                capture(buffer);
+                bodyRemaining -= read;
+                bytesReceived.add(read);
+            }
+
+            finishUpload();
+            return true;
+        }
+
+        // Keeps the first and last few KB of the body, where the multipart text fields are
+        private void capture(ByteBuffer body) {
+            int length = body.remaining();
+            if (headLength < head.length) {
+                int count = Math.min(length, head.length - headLength);
+                body.duplicate().get(head, headLength, count);
+                headLength += count;
+            }
+
+            int count = Math.min(length, tail.length);
+            ByteBuffer last = body.duplicate();
+            last.position(body.limit() - count);
+            int first = Math.min(count, tail.length - tailEnd);
+            last.get(tail, tailEnd, first);
+            last.get(tail, 0, count - first);
+            tailEnd = (tailEnd + count) % tail.length;
+            tailLength = Math.min(tail.length, tailLength + count);
+        }
+
+        private void finishUpload() {
+            Map<String, String> fields = new HashMap<>();
+            collectFields(new String(head, 0, headLength, StandardCharsets.ISO_8859_1), fields);
+            collectFields(tailText(), fields);
+
+            int chunkNumber;
+            int totalChunks;
+            try {
+                chunkNumber = Integer.parseInt(fields.getOrDefault("chunkNumber", ""));
+                totalChunks = Integer.parseInt(fields.getOrDefault("totalChunks", ""));
+            } catch (NumberFormatException e) {
+                respond(400, "Missing fileId, chunkNumber or totalChunks");
+                return;
+            }
+            String fileId = fields.get("fileId");
+            if (fileId == null || fileId.isEmpty() || chunkNumber < 1 || chunkNumber > totalChunks) {
+                respond(400, "Missing fileId, chunkNumber or totalChunks");
+                return;
+            }
+
+            if (chunkNumber == totalChunks) {
+                logger.fine(() -> "Received all " + totalChunks + " chunks of upload " + fileId);
+            }
+            respond(200, CHUNK_RECEIVED_REPLY); // The upload client expects this reply for every chunk, the last one included
+        }
+
+        private String tailText() {
+            if (tailLength < tail.length) {
+                return new String(tail, 0, tailLength, StandardCharsets.ISO_8859_1);
+            }
+            return new String(tail, tailEnd, tail.length - tailEnd, StandardCharsets.ISO_8859_1)
+                    + new String(tail, 0, tailEnd, StandardCharsets.ISO_8859_1);
+        }
+
+        private void collectFields(String text, Map<String, String> fields) {
+            Matcher matcher = FORM_FIELD.matcher(text);
+            while (matcher.find()) {
+                fields.putIfAbsent(matcher.group(1), matcher.group(2));
+            }
+        }
+
+        private void respond(int status, String body) {
+            byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+            String header = "HTTP/1.1 " + status + " " + reasonPhrase(status) + "\r\n"
+                    + "Content-Type: text/plain; charset=utf-8\r\n"
+                    + "Content-Length: " + bodyBytes.length + "\r\n"
+                    + (keepAlive ? "" : "Connection: close\r\n")
+                    + "\r\n";
+            byte[] headerBytes = header.getBytes(StandardCharsets.US_ASCII);
+            responseHead = ByteBuffer.allocate(headerBytes.length + bodyBytes.length).put(headerBytes).put(bodyBytes);
+            responseHead.flip();
+            downloadRemaining = 0;
+            state = State.RESPONSE;
+        }
+
+        private boolean writeResponse() throws IOException {
+            while (responseHead.hasRemaining()) {
+                if (channel.write(responseHead) == 0) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return false;
+                }
+            }
+
+            for (int writes = 0; downloadRemaining > 0; writes++) {
+                if (writes == MAX_IO_PER_TURN) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return false;
+                }
+                long offset = downloadPosition % PATTERN_FILE_BYTES;
+                long count = Math.min(downloadRemaining, PATTERN_FILE_BYTES - offset);
+                long sent = pattern.transferTo(offset, count, channel);
+                if (sent == 0) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return false;
+                }
+                downloadPosition += sent;
+                downloadRemaining -= sent;
+                bytesServed.add(sent);
+            }
+
+            if (!keepAlive) {
+                close();
+                return false;
+            }
+            state = State.HEADERS;
+            key.interestOps(SelectionKey.OP_READ);
+            return true; // A pipelined request may already be buffered
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Error while closing connection", e);
+            }
+        }
+    }
+
+    private static String reasonPhrase(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 400:
+                return "Bad Request";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 411:
+                return "Length Required";
+            case 431:
+                return "Request Header Fields Too Large";
+            default:
+                return "Error";
+        }
+    }
+}
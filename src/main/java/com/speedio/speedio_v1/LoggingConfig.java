@@ -1,15 +1,32 @@
 package com.speedio.speedio_v1;
 
-import java.util.logging.ConsoleHandler;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
 
+/**
+ * Replaces whatever handlers the root logger has, including the JDK's default console handler,
+ * with a single {@link AsyncLogHandler} on stderr, so each record is written once and logging
+ * never blocks a measurement thread. Output is JSON lines; start with
+ * {@code -Dspeedio.log.format=text} for the JDK's plain two-line format instead.
+ */
 public class LoggingConfig {
-    public static void configureLogging() {
+
+    public static final String FORMAT_PROPERTY = "speedio.log.format";
+
+    public static synchronized void configureLogging() {
         Logger rootLogger = Logger.getLogger("");
-        ConsoleHandler consoleHandler = new ConsoleHandler();
-        consoleHandler.setLevel(Level.ALL);
-        rootLogger.addHandler(consoleHandler);
+        for (Handler handler : rootLogger.getHandlers()) {
+            rootLogger.removeHandler(handler);
+            handler.close(); // Flushes; neither handler closes stderr itself
+        }
+        AsyncLogHandler asyncHandler = new AsyncLogHandler(System.err);
+        if ("text".equalsIgnoreCase(System.getProperty(FORMAT_PROPERTY))) {
+            asyncHandler.setFormatter(new SimpleFormatter());
+        }
+        asyncHandler.setLevel(Level.ALL);
+        rootLogger.addHandler(asyncHandler);
         rootLogger.setLevel(Level.INFO);
     }
 }
@@ -0,0 +1,132 @@
+package com.speedio.speedio_v1;
+
+import fr.bmartel.speedtest.model.SpeedTestError;
+
+/**
+ * One stored speed test result. Error codes are 0 for success, 1..n for the jspeedtest
+ * {@link SpeedTestError} values and {@link #ERROR_UPLOAD_FAILED} for failed chunk uploads. Tests
+ * stopped by a {@link TestRun} are stored as {@link #ERROR_CANCELLED} or {@link #ERROR_TIMED_OUT}.
+ * Adaptive tests also record how confident the estimate was (0..1); fixed-size tests leave it NaN.
+ * Where the interface is monitored, results carry the other traffic seen in the test's direction just
+ * before it started; it is NaN where nothing was monitored.
+ */
+public class Measurement {
+
+    public static final short ERROR_NONE = 0;
+    public static final short ERROR_UPLOAD_FAILED = 100;
+    public static final short ERROR_CANCELLED = 101;
+    public static final short ERROR_TIMED_OUT = 102;
+
+    private final long timestampMillis;
+    private final Direction direction;
+    private final String target;
+    private final double mbps;
+    private final long bytes;
+    private final long durationMillis;
+    private final short errorCode;
+    private final double confidence;
+    private final double backgroundMbps;
+
+    public Measurement(long timestampMillis, Direction direction, String target, double mbps, long bytes,
+                       long durationMillis, short errorCode) {
+        this(timestampMillis, direction, target, mbps, bytes, durationMillis, errorCode, Double.NaN);
+    }
+
+    public Measurement(long timestampMillis, Direction direction, String target, double mbps, long bytes,
+                       long durationMillis, short errorCode, double confidence) {
+        this(timestampMillis, direction, target, mbps, bytes, durationMillis, errorCode, confidence, Double.NaN);
+    }
+
+    // Every field at once, for decoders that would otherwise build the result twice
+    Measurement(long timestampMillis, Direction direction, String target, double mbps, long bytes,
+                        long durationMillis, short errorCode, double confidence, double backgroundMbps) {
+        this.timestampMillis = timestampMillis;
+        this.direction = direction;
+        this.target = target;
+        this.mbps = mbps;
+        this.bytes = bytes;
+        this.durationMillis = durationMillis;
+        this.errorCode = errorCode;
+        this.confidence = confidence;
+        this.backgroundMbps = backgroundMbps;
+    }
+
+    // Same result attributed to a different target, e.g. a fleet target id instead of the test URL
+    public Measurement withTarget(String newTarget) {
+        return new Measurement(timestampMillis, direction, newTarget, mbps, bytes, durationMillis, errorCode, confidence,
+                backgroundMbps);
+    }
+
+    public Measurement withBackgroundMbps(double newBackgroundMbps) {
+        return new Measurement(timestampMillis, direction, target, mbps, bytes, durationMillis, errorCode, confidence,
+                newBackgroundMbps);
+    }
+
+    public static short errorCodeOf(SpeedTestError error) {
+        return error == null ? ERROR_NONE : (short) (error.ordinal() + 1);
+    }
+
+    // ERROR_NONE for runs that were not aborted; their own error, if any, wins
+    public static short errorCodeOf(TestOutcome outcome) {
+        if (outcome == TestOutcome.CANCELLED) {
+            return ERROR_CANCELLED;
+        }
+        return outcome == TestOutcome.TIMED_OUT ? ERROR_TIMED_OUT : ERROR_NONE;
+    }
+
+    // Aborted tests measured only part of a transfer and must not count towards thresholds
+    public boolean isAborted() {
+        return errorCode == ERROR_CANCELLED || errorCode == ERROR_TIMED_OUT;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public double getMbps() {
+        return mbps;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public short getErrorCode() {
+        return errorCode;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    // NaN when the interface was not monitored
+    public double getBackgroundMbps() {
+        return backgroundMbps;
+    }
+
+    public boolean isSuccessful() {
+        return errorCode == ERROR_NONE;
+    }
+
+    @Override
+    public String toString() {
+        String text = String.format("%d %s %s %.2f Mbps %d bytes %d ms error=%d",
+                timestampMillis, direction, target, mbps, bytes, durationMillis, errorCode);
+        if (!Double.isNaN(confidence)) {
+            text += String.format(" confidence=%.0f%%", confidence * 100);
+        }
+        return Double.isNaN(backgroundMbps) ? text : text + String.format(" background=%.2f Mbps", backgroundMbps);
+    }
+}
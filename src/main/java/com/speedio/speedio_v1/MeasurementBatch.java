@@ -0,0 +1,41 @@
+package com.speedio.speedio_v1;
+
+import java.util.List;
+
+/**
+ * Measurements shipped together from one agent to the collector. The batch id is random per batch
+ * and travels with every retry, so the collector can drop a batch it already ingested.
+ */
+public final class MeasurementBatch {
+
+    private final String agentId;
+    private final long batchId;
+    private final List<Measurement> measurements;
+
+    public MeasurementBatch(String agentId, long batchId, List<Measurement> measurements) {
+        this.agentId = agentId;
+        this.batchId = batchId;
+        this.measurements = List.copyOf(measurements);
+    }
+
+    public String getAgentId() {
+        return agentId;
+    }
+
+    public long getBatchId() {
+        return batchId;
+    }
+
+    public List<Measurement> getMeasurements() {
+        return measurements;
+    }
+
+    public int size() {
+        return measurements.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("batch %016x from %s with %d measurements", batchId, agentId, measurements.size());
+    }
+}
@@ -0,0 +1,406 @@
+package com.speedio.speedio_v1;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only measurement history kept in fixed-size, memory-mapped segment files.
+ *
+ * <p>Every record is {@value #RECORD_SIZE} bytes and ends with a CRC32 of its contents, which is
+ * written last. On start-up each segment is scanned up to the first record whose checksum does not
+ * match, so a record torn by a crash is dropped and overwritten by the next append. Target names are
+ * stored as 64-bit hashes; the names themselves live in a small append-only dictionary file.
+ * Byte 41 holds the confidence of adaptive tests as percent + 1, so 0 (older records) means unknown.
+ * Bytes 24-27 hold the duration as an unsigned int and bytes 28-31 the background load seen before
+ * the test as a float, NaN when it is unknown.
+ */
+public class MeasurementStore implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(MeasurementStore.class.getName());
+
+    static final int RECORD_SIZE = 48;
+    private static final int CHECKSUM_OFFSET = 44;
+    private static final long MAX_DURATION_MILLIS = 0xFFFFFFFFL; // About 49 days as an unsigned int
+    private static final int DEFAULT_RECORDS_PER_SEGMENT = 65536; // 3 MB per segment
+    private static final long DEFAULT_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(400);
+    private static final int FORCE_INTERVAL_RECORDS = 64; // Flush to disk at least every 64 appends
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final String TARGETS_FILE = "targets.txt";
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final long retentionMillis;
+    private final List<Segment> segments = new ArrayList<>(); // Oldest first, guarded by this
+    private final Map<Long, String> targetNames = new ConcurrentHashMap<>();
+    private final byte[] recordScratch = new byte[RECORD_SIZE];
+    private final ByteBuffer recordBuffer = ByteBuffer.wrap(recordScratch);
+    private final CRC32 crc = new CRC32();
+    private Segment active;
+    private int unforcedRecords;
+    private boolean closed;
+
+    public MeasurementStore(Path directory) throws IOException {
+        this(directory, DEFAULT_RECORDS_PER_SEGMENT, DEFAULT_RETENTION_MILLIS);
+    }
+
+    public MeasurementStore(Path directory, int recordsPerSegment, long retentionMillis) throws IOException {
+        if (recordsPerSegment <= 0) {
+            throw new IllegalArgumentException("Records per segment must be positive: " + recordsPerSegment);
+        }
+        this.directory = directory;
+        this.recordsPerSegment = recordsPerSegment;
+        this.retentionMillis = retentionMillis;
+
+        Files.createDirectories(directory);
+        loadTargetNames();
+        openSegments();
+        applyRetention();
+    }
+
+    public static MeasurementStore openDefault() throws IOException {
+        return new MeasurementStore(Paths.get(System.getProperty("user.home"), ".speedio", "history"));
+    }
+
+    public synchronized void append(Measurement measurement) throws IOException {
+        if (closed) {
+            throw new IOException("Measurement store is closed");
+        }
+        if (active.count >= recordsPerSegment) {
+            rollOver();
+        }
+
+        long targetHash = registerTarget(measurement.getTarget());
+        recordBuffer.clear();
+        recordBuffer.putLong(measurement.getTimestampMillis())
+                .putDouble(measurement.getMbps())
+                .putLong(measurement.getBytes())
+                .putInt((int) Math.min(measurement.getDurationMillis(), MAX_DURATION_MILLIS))
+                .putFloat((float) measurement.getBackgroundMbps())
+                .putLong(targetHash)
+                .put((byte) measurement.getDirection().ordinal())
+                .put(encodeConfidence(measurement.getConfidence()))
+                .putShort(measurement.getErrorCode());
+        crc.reset();
+        crc.update(recordScratch, 0, CHECKSUM_OFFSET);
+        recordBuffer.putInt((int) crc.getValue());
+
+        MappedByteBuffer buffer = active.buffer;
+        buffer.position(active.count * RECORD_SIZE);
+        buffer.put(recordScratch);
+        active.include(measurement.getTimestampMillis());
+        active.count++; // Published only after the full record, checksum included, is in place
+
+        if (++unforcedRecords >= FORCE_INTERVAL_RECORDS) {
+            buffer.force();
+            unforcedRecords = 0;
+        }
+    }
+
+    /**
+     * Streams every record with {@code fromMillis <= timestamp < toMillis} to the visitor in storage
+     * order. A null direction or target matches everything. Segments outside the range are skipped
+     * without being mapped.
+     */
+    public void scan(long fromMillis, long toMillis, Direction direction, String target, Consumer<Measurement> visitor)
+            throws IOException {
+        List<Segment> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(segments);
+        }
+        Long targetHash = target == null ? null : hash(target);
+        byte[] scratch = new byte[RECORD_SIZE];
+        CRC32 scanCrc = new CRC32();
+
+        for (Segment segment : snapshot) {
+            int count = segment.count;
+            if (count == 0 || segment.maxTimestamp < fromMillis || segment.minTimestamp >= toMillis) {
+                continue;
+            }
+            ByteBuffer buffer = segment.readView();
+            for (int i = 0; i < count; i++) {
+                int offset = i * RECORD_SIZE;
+                long timestamp = buffer.getLong(offset);
+                if (timestamp < fromMillis || timestamp >= toMillis) {
+                    continue;
+                }
+                if (direction != null && buffer.get(offset + 40) != direction.ordinal()) {
+                    continue;
+                }
+                long recordTarget = buffer.getLong(offset + 32);
+                if (targetHash != null && recordTarget != targetHash) {
+                    continue;
+                }
+                if (!isValid(buffer, offset, scratch, scanCrc)) {
+                    continue;
+                }
+                visitor.accept(decode(buffer, offset, recordTarget));
+            }
+        }
+    }
+
+    public List<Measurement> query(long fromMillis, long toMillis, Direction direction, String target) throws IOException {
+        List<Measurement> results = new ArrayList<>();
+        scan(fromMillis, toMillis, direction, target, results::add);
+        return results;
+    }
+
+    public synchronized long size() {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.count;
+        }
+        return total;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (active != null) {
+            active.buffer.force();
+        }
+    }
+
+    private Measurement decode(ByteBuffer buffer, int offset, long targetHash) {
+        String target = targetNames.get(targetHash);
+        return new Measurement(
+                buffer.getLong(offset),
+                Direction.values()[buffer.get(offset + 40)],
+                target != null ? target : Long.toHexString(targetHash),
+                buffer.getDouble(offset + 8),
+                buffer.getLong(offset + 16),
+                buffer.getInt(offset + 24) & 0xFFFFFFFFL,
+                buffer.getShort(offset + 42),
+                decodeConfidence(buffer.get(offset + 41)),
+                buffer.getFloat(offset + 28));
+    }
+
+    static byte encodeConfidence(double confidence) {
+        if (Double.isNaN(confidence)) {
+            return 0;
+        }
+        return (byte) (1 + Math.round(Math.max(0.0, Math.min(1.0, confidence)) * 100));
+    }
+
+    static double decodeConfidence(byte stored) {
+        return stored == 0 ? Double.NaN : ((stored & 0xFF) - 1) / 100.0;
+    }
+
+    private static boolean isValid(ByteBuffer buffer, int offset, byte[] scratch, CRC32 checksum) {
+        for (int i = 0; i < CHECKSUM_OFFSET; i++) {
+            scratch[i] = buffer.get(offset + i);
+        }
+        checksum.reset();
+        checksum.update(scratch, 0, CHECKSUM_OFFSET);
+        int stored = buffer.getInt(offset + CHECKSUM_OFFSET);
+        // An all-zero slot has never been written; its stored checksum of 0 never matches CRC32 of zeros
+        return stored == (int) checksum.getValue() && buffer.get(offset + 40) < Direction.values().length;
+    }
+
+    private void openSegments() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(directory)) {
+            stream.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().forEach(files::add);
+        }
+
+        for (int i = 0; i < files.size(); i++) {
+            boolean last = i == files.size() - 1;
+            segments.add(Segment.recover(files.get(i), sequenceOf(files.get(i)), recordsPerSegment, last));
+        }
+
+        if (segments.isEmpty()) {
+            active = Segment.create(segmentPath(0), 0, recordsPerSegment);
+            segments.add(active);
+        } else {
+            active = segments.get(segments.size() - 1);
+        }
+        logger.info("Opened measurement store at " + directory + " with " + size() + " records in "
+                + segments.size() + " segments");
+    }
+
+    private void rollOver() throws IOException {
+        active.seal();
+        long nextSequence = active.sequence + 1;
+        active = Segment.create(segmentPath(nextSequence), nextSequence, recordsPerSegment);
+        segments.add(active);
+        unforcedRecords = 0;
+        applyRetention();
+    }
+
+    private void applyRetention() {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        while (segments.size() > 1 && segments.get(0).maxTimestamp < cutoff) {
+            Segment expired = segments.remove(0);
+            try {
+                Files.deleteIfExists(expired.path);
+                logger.info("Deleted expired measurement segment " + expired.path.getFileName());
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not delete expired segment " + expired.path, e);
+            }
+        }
+    }
+
+    private long registerTarget(String target) throws IOException {
+        long targetHash = hash(target);
+        if (!targetNames.containsKey(targetHash)) {
+            // Written before the record that refers to it, so a crash never leaves a dangling hash
+            try (BufferedWriter writer = Files.newBufferedWriter(directory.resolve(TARGETS_FILE), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(Long.toHexString(targetHash) + "\t" + target);
+                writer.newLine();
+            }
+            targetNames.put(targetHash, target);
+        }
+        return targetHash;
+    }
+
+    private void loadTargetNames() throws IOException {
+        Path file = directory.resolve(TARGETS_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int tab = line.indexOf('\t');
+            if (tab <= 0) {
+                continue; // Torn last line after a crash
+            }
+            try {
+                targetNames.put(Long.parseUnsignedLong(line.substring(0, tab), 16), line.substring(tab + 1));
+            } catch (NumberFormatException e) {
+                logger.warning("Skipping malformed target entry: " + line);
+            }
+        }
+    }
+
+    // 64-bit FNV-1a over the UTF-8 bytes of the target
+    static long hash(String target) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : target.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+
+    private static long sequenceOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static final class Segment {
+        final Path path;
+        final long sequence;
+        final int capacity;
+        MappedByteBuffer buffer; // Read-write mapping, only kept for the active segment
+        volatile int count;
+        volatile long minTimestamp = Long.MAX_VALUE;
+        volatile long maxTimestamp = Long.MIN_VALUE;
+
+        private Segment(Path path, long sequence, int capacity) {
+            this.path = path;
+            this.sequence = sequence;
+            this.capacity = capacity;
+        }
+
+        static Segment create(Path path, long sequence, int capacity) throws IOException {
+            Segment segment = new Segment(path, sequence, capacity);
+            segment.buffer = map(path, FileChannel.MapMode.READ_WRITE, (long) capacity * RECORD_SIZE);
+            return segment;
+        }
+
+        static Segment recover(Path path, long sequence, int capacity, boolean writable) throws IOException {
+            Segment segment = new Segment(path, sequence, capacity);
+            long fileSize = Files.size(path);
+            ByteBuffer view = writable
+                    ? (segment.buffer = map(path, FileChannel.MapMode.READ_WRITE, (long) capacity * RECORD_SIZE))
+                    : map(path, FileChannel.MapMode.READ_ONLY, fileSize);
+
+            int records = Math.min(capacity, view.capacity() / RECORD_SIZE);
+            byte[] scratch = new byte[RECORD_SIZE];
+            CRC32 checksum = new CRC32();
+            int valid = 0;
+            while (valid < records && isValid(view, valid * RECORD_SIZE, scratch, checksum)) {
+                segment.include(view.getLong(valid * RECORD_SIZE));
+                valid++;
+            }
+            segment.count = valid;
+
+            if (valid < records && view.getLong(valid * RECORD_SIZE) != 0) {
+                logger.warning("Discarding torn records after #" + valid + " in " + path.getFileName());
+                if (writable) {
+                    // Clear the tail so stale records can never resurface after a later crash
+                    for (int offset = valid * RECORD_SIZE; offset < view.capacity(); offset += 8) {
+                        view.putLong(offset, 0L);
+                    }
+                    segment.buffer.force();
+                }
+            }
+            return segment;
+        }
+
+        void include(long timestamp) {
+            if (timestamp < minTimestamp) {
+                minTimestamp = timestamp;
+            }
+            if (timestamp > maxTimestamp) {
+                maxTimestamp = timestamp;
+            }
+        }
+
+        ByteBuffer readView() throws IOException {
+            MappedByteBuffer writable = buffer;
+            if (writable != null) {
+                return writable.duplicate();
+            }
+            return map(path, FileChannel.MapMode.READ_ONLY, Files.size(path));
+        }
+
+        void seal() {
+            buffer.force();
+            buffer = null; // Unmapped by the GC; later scans map the file read-only
+        }
+
+        private static MappedByteBuffer map(Path path, FileChannel.MapMode mode, long size) throws IOException {
+            StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                    ? new StandardOpenOption[]{StandardOpenOption.READ}
+                    : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE};
+            // The mapping stays valid after the channel is closed
+            try (FileChannel channel = FileChannel.open(path, options)) {
+                return channel.map(mode, 0, size);
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.speedio.speedio_v1;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters, gauges and histograms rendered in the Prometheus text format. Updates are lock-free
+ * (LongAdder/DoubleAdder per series), so they are safe on progress callbacks and transfer threads.
+ * Looking a series up by its labels goes through a concurrent map; hot paths should keep the
+ * returned series in a field instead of looking it up on every event.
+ */
+public class MetricsRegistry {
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    // labels are name/value pairs, e.g. counter("speedio_alerts_total", "...", "result", "queued")
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, "counter", null).series(labels);
+    }
+
+    public Gauge gauge(String name, String help, String... labels) {
+        return (Gauge) family(name, help, "gauge", null).series(labels);
+    }
+
+    // Bucket upper bounds must be ascending; +Inf is added automatically
+    public Histogram histogram(String name, String help, double[] bounds, String... labels) {
+        return (Histogram) family(name, help, "histogram", bounds).series(labels);
+    }
+
+    public void writeTo(Writer out) throws IOException {
+        for (Family family : families.values()) {
+            family.writeTo(out);
+        }
+    }
+
+    private Family family(String name, String help, String type, double[] bounds) {
+        Family family = families.computeIfAbsent(name, key -> new Family(name, help, type, bounds));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    private static String labelText(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            text.append(i == 0 ? "" : ",").append(labels[i]).append("=\"");
+            for (char c : labels[i + 1].toCharArray()) {
+                if (c == '\\' || c == '"') {
+                    text.append('\\').append(c);
+                } else if (c == '\n') {
+                    text.append("\\n");
+                } else {
+                    text.append(c);
+                }
+            }
+            text.append('"');
+        }
+        return text.toString();
+    }
+
+    private static String number(double value) {
+        if (value == Double.POSITIVE_INFINITY) {
+            return "+Inf";
+        }
+        if (value == (long) value) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static final class Family {
+        final String name;
+        final String help;
+        final String type;
+        final double[] bounds;
+        final Map<String, Object> series = new ConcurrentSkipListMap<>();
+
+        Family(String name, String help, String type, double[] bounds) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.bounds = bounds;
+        }
+
+        Object series(String[] labels) {
+            return series.computeIfAbsent(labelText(labels), key -> {
+                switch (type) {
+                    case "counter":
+                        return new Counter();
+                    case "gauge":
+                        return new Gauge();
+                    default:
+                        return new Histogram(bounds);
+                }
+            });
+        }
+
+        void writeTo(Writer out) throws IOException {
+            out.write("# HELP " + name + " " + help + "\n");
+            out.write("# TYPE " + name + " " + type + "\n");
+            for (Map.Entry<String, Object> entry : series.entrySet()) {
+                String labels = entry.getKey();
+                Object metric = entry.getValue();
+                if (metric instanceof Counter) {
+                    out.write(name + braces(labels) + " " + ((Counter) metric).get() + "\n");
+                } else if (metric instanceof Gauge) {
+                    out.write(name + braces(labels) + " " + ((Gauge) metric).get() + "\n");
+                } else {
+                    ((Histogram) metric).writeTo(out, name, labels);
+                }
+            }
+        }
+
+        private static String braces(String labels) {
+            return labels.isEmpty() ? "" : "{" + labels + "}";
+        }
+    }
+
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    public static final class Gauge {
+        private final AtomicLong value = new AtomicLong();
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void decrement() {
+            value.decrementAndGet();
+        }
+
+        public void set(long newValue) {
+            value.set(newValue);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    public static final class Histogram {
+        private final double[] bounds;
+        private final LongAdder[] counts; // Per bucket, not cumulative; the last one is +Inf
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Histogram(double[] bounds) {
+            this.bounds = bounds.clone();
+            this.counts = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        public void observe(double value) {
+            int bucket = 0;
+            while (bucket < bounds.length && value > bounds[bucket]) {
+                bucket++;
+            }
+            counts[bucket].increment();
+            sum.add(value);
+        }
+
+        public void observeNanos(long nanos) {
+            observe(nanos / 1e9);
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (LongAdder bucket : counts) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        public double getSum() {
+            return sum.sum();
+        }
+
+        // Buckets are read one by one while other threads observe, so a scrape can be off by a few in-flight samples
+        void writeTo(Writer out, String name, String labels) throws IOException {
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i].sum();
+                double bound = i < bounds.length ? bounds[i] : Double.POSITIVE_INFINITY;
+                out.write(name + "_bucket{" + prefix + "le=\"" + number(bound) + "\"} " + cumulative + "\n");
+            }
+            String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+            out.write(name + "_sum" + braces + " " + sum.sum() + "\n");
+            out.write(name + "_count" + braces + " " + cumulative + "\n");
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.speedio.speedio_v1;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Serves {@link SpeedioMetrics} at {@code GET /metrics} in the Prometheus text format, using the
+ * JDK's built-in HTTP server on one daemon thread. Scrapes are rare and small, so the page is
+ * rendered into a string first and sent with a known length.
+ */
+public class MetricsServer {
+
+    private static final Logger logger = Logger.getLogger(MetricsServer.class.getName());
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final InetSocketAddress bindAddress;
+    private final MetricsRegistry registry;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public MetricsServer(InetSocketAddress bindAddress, MetricsRegistry registry) {
+        this.bindAddress = bindAddress;
+        this.registry = registry;
+    }
+
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "speedio-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(bindAddress, 16);
+        server.createContext("/metrics", this::handle);
+        server.setExecutor(executor);
+        server.start();
+        logger.info("Metrics available at http://" + server.getAddress().getHostString() + ":" + getPort() + "/metrics");
+    }
+
+    public synchronized void shutdown() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+    }
+
+    public synchronized int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringWriter page = new StringWriter(8192);
+            registry.writeTo(page);
+            byte[] body = page.toString().getBytes(StandardCharsets.UTF_8);
+
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
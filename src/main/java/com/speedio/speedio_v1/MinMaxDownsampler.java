@@ -0,0 +1,85 @@
+package com.speedio.speedio_v1;
+
+import java.util.Arrays;
+
+/**
+ * Reduces a time series to at most two points per time bucket: its minimum and its maximum, in the
+ * order they occurred. With one bucket per pixel column a line through these points covers the
+ * same pixels as a line through every sample, so dips and spikes survive while a month of
+ * per-minute results shrinks to a few thousand chart points. Samples are streamed in one at a
+ * time and may arrive in any order; memory depends only on the bucket count.
+ */
+public class MinMaxDownsampler {
+
+    private final long fromMillis;
+    private final long toMillis;
+    private final int buckets;
+    private final long[] minTime;
+    private final long[] maxTime;
+    private final double[] min;
+    private final double[] max;
+    private long sampleCount;
+
+    public MinMaxDownsampler(long fromMillis, long toMillis, int buckets) {
+        if (toMillis <= fromMillis || buckets < 1) {
+            throw new IllegalArgumentException("Need a non-empty time range and at least one bucket");
+        }
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        this.buckets = buckets;
+        this.minTime = new long[buckets];
+        this.maxTime = new long[buckets];
+        this.min = new double[buckets];
+        this.max = new double[buckets];
+        Arrays.fill(min, Double.NaN); // NaN marks an empty bucket
+        Arrays.fill(max, Double.NaN);
+    }
+
+    // Samples outside [fromMillis, toMillis) and NaN values are ignored
+    public void add(long timestampMillis, double value) {
+        if (timestampMillis < fromMillis || timestampMillis >= toMillis || Double.isNaN(value)) {
+            return;
+        }
+        int bucket = (int) ((timestampMillis - fromMillis) * buckets / (toMillis - fromMillis));
+        sampleCount++;
+        if (Double.isNaN(min[bucket])) {
+            min[bucket] = value;
+            max[bucket] = value;
+            minTime[bucket] = timestampMillis;
+            maxTime[bucket] = timestampMillis;
+            return;
+        }
+        if (value < min[bucket]) {
+            min[bucket] = value;
+            minTime[bucket] = timestampMillis;
+        }
+        if (value > max[bucket]) {
+            max[bucket] = value;
+            maxTime[bucket] = timestampMillis;
+        }
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    // Points in time order; a bucket with a single sample contributes one point
+    public TrendSeries finish() {
+        long[] times = new long[buckets * 2];
+        double[] values = new double[buckets * 2];
+        int size = 0;
+        for (int i = 0; i < buckets; i++) {
+            if (Double.isNaN(min[i])) {
+                continue;
+            }
+            boolean minFirst = minTime[i] <= maxTime[i];
+            times[size] = minFirst ? minTime[i] : maxTime[i];
+            values[size++] = minFirst ? min[i] : max[i];
+            if (minTime[i] != maxTime[i]) {
+                times[size] = minFirst ? maxTime[i] : minTime[i];
+                values[size++] = minFirst ? max[i] : min[i];
+            }
+        }
+        return new TrendSeries(Arrays.copyOf(times, size), Arrays.copyOf(values, size));
+    }
+}
@@ -0,0 +1,531 @@
+package com.speedio.speedio_v1;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Monitoring settings shared by the JavaFX app and the headless daemon. Values come from a
+ * properties file and/or {@code --key=value} arguments, e.g.
+ * {@code --config=speedio.properties --email=ops@example.com --threshold=50 --interval.minutes=5}.
+ */
+public class MonitorConfig {
+
+    private static final Logger logger = Logger.getLogger(MonitorConfig.class.getName());
+
+    public static final String EMAIL = "email";
+    public static final String THRESHOLD = "threshold";
+    public static final String INTERVAL_MINUTES = "interval.minutes";
+    public static final String DOWNLOAD_STREAMS = "download.streams";
+    public static final String DOWNLOAD_URLS = "download.urls";
+    public static final String DOWNLOAD_ENGINE = "download.engine";
+    public static final String UPLOAD_ENABLED = "upload.enabled";
+    public static final String UPLOAD_THRESHOLD = "upload.threshold";
+    public static final String HISTORY_DIR = "history.dir";
+    public static final String UPLOAD_URL = "upload.url";
+    public static final String UPLOAD_MODE = "upload.mode";
+    public static final String UPLOAD_IN_FLIGHT = "upload.in.flight";
+    public static final String LOCAL_SERVER_PORT = "local.server.port";
+    public static final String LOCAL_TARGET = "local.target";
+    public static final String FLEET_MAX_CONCURRENT = "fleet.max.concurrent";
+    public static final String ADAPTIVE = "adaptive";
+    public static final String ADAPTIVE_MAX_MB = "adaptive.max.mb";
+    public static final String ADAPTIVE_MAX_SECONDS = "adaptive.max.seconds";
+    public static final String ADAPTIVE_TOLERANCE = "adaptive.tolerance";
+    public static final String LATENCY_ENABLED = "latency.enabled";
+    public static final String LATENCY_INTERVAL_MS = "latency.interval.ms";
+    public static final String LATENCY_URL = "latency.url";
+    public static final String LATENCY_UDP_ECHO = "latency.udp.echo";
+    public static final String LATENCY_THRESHOLD_MS = "latency.threshold.ms";
+    public static final String LATENCY_JITTER_MS = "latency.jitter.ms";
+    public static final String LATENCY_LOSS_PERCENT = "latency.loss.percent";
+    public static final String LATENCY_TIMEOUT_MS = "latency.timeout.ms";
+    public static final String METRICS_PORT = "metrics.port";
+    public static final String TEST_TIMEOUT_SECONDS = "test.timeout.seconds";
+    public static final String TRAFFIC_ENABLED = "traffic.enabled";
+    public static final String TRAFFIC_INTERFACE = "traffic.interface";
+    public static final String TRAFFIC_SAMPLE_MS = "traffic.sample.ms";
+    public static final String TRAFFIC_WINDOW_SECONDS = "traffic.window.seconds";
+    public static final String TRAFFIC_DEFER_MBPS = "traffic.defer.mbps";
+    public static final String TRAFFIC_MAX_DEFER_MINUTES = "traffic.max.defer.minutes";
+    public static final String SHIP_URL = "ship.url";
+    public static final String SHIP_AGENT_ID = "ship.agent.id";
+    public static final String SHIP_BATCH_SIZE = "ship.batch.size";
+    public static final String SHIP_BATCH_MS = "ship.batch.ms";
+    public static final String SHIP_FORMAT = "ship.format";
+    public static final String SHIP_SPOOL_DIR = "ship.spool.dir";
+    public static final String SHIP_SPOOL_MAX_MB = "ship.spool.max.mb";
+    public static final String COLLECTOR_PORT = "collector.port";
+    public static final String COLLECTOR_THREADS = "collector.threads";
+    public static final String COLLECTOR_ONLY = "collector.only";
+    private static final String CONFIG_FILE = "config";
+
+    private static final long DEFAULT_INTERVAL_MINUTES = 15;
+    private static final int DEFAULT_DOWNLOAD_STREAMS = 4; // One TCP stream cannot fill a gigabit link
+    private static final int DEFAULT_FLEET_MAX_CONCURRENT = 64;
+    private static final long DEFAULT_LATENCY_INTERVAL_MS = 1000;
+    private static final double DEFAULT_LATENCY_THRESHOLD_MS = 100;
+    private static final double DEFAULT_LATENCY_JITTER_MS = 30;
+    private static final double DEFAULT_LATENCY_LOSS_PERCENT = 2;
+    private static final int DEFAULT_LATENCY_TIMEOUT_MS = 1000;
+    private static final long DEFAULT_TRAFFIC_SAMPLE_MS = 250;
+    private static final long DEFAULT_TRAFFIC_WINDOW_SECONDS = 5;
+    private static final long DEFAULT_TRAFFIC_MAX_DEFER_MINUTES = 60;
+    private static final int DEFAULT_SHIP_BATCH_SIZE = 500;
+    private static final long DEFAULT_SHIP_BATCH_MS = 10_000;
+    private static final long DEFAULT_SHIP_SPOOL_MAX_MB = 100;
+    private static final String DEFAULT_DOWNLOAD_URL = "https://sample-videos.com/video321/mp4/720/big_buck_bunny_720p_10mb.mp4";
+
+    private final String email;
+    private final double threshold;
+    private final long intervalMillis;
+    private final int downloadStreams;
+    private final List<String> downloadUrls;
+    private final DownloadEngine downloadEngine;
+    private final boolean uploadEnabled;
+    private final double uploadThreshold;
+    private final Path historyDir;
+    private final String uploadUrl;
+    private final UploadMode uploadMode;
+    private final int uploadChunksInFlight;
+    private final int localServerPort;
+    private final boolean localTarget;
+    private final AdaptiveTestPolicy adaptivePolicy;
+    private final int fleetMaxConcurrent;
+    private final List<MonitorTarget> targets;
+    private final boolean latencyEnabled;
+    private final long latencyIntervalMillis;
+    private final String latencyUrl;
+    private final InetSocketAddress latencyUdpEcho;
+    private final double latencyThresholdMillis;
+    private final double latencyJitterMillis;
+    private final double latencyLossPercent;
+    private final int latencyTimeoutMillis;
+    private final int metricsPort;
+    private final long testTimeoutMillis;
+    private final boolean trafficEnabled;
+    private final String trafficInterface;
+    private final long trafficSampleMillis;
+    private final long trafficWindowMillis;
+    private final double trafficDeferMbps;
+    private final long trafficMaxDeferMillis;
+    private final String shipUrl;
+    private final String shipAgentId;
+    private final int shipBatchSize;
+    private final long shipBatchMillis;
+    private final boolean shipJson;
+    private final Path shipSpoolDir;
+    private final long shipSpoolMaxBytes;
+    private final int collectorPort;
+    private final int collectorThreads;
+    private final boolean collectorOnly;
+
+    public MonitorConfig(Properties properties) {
+        this.email = properties.getProperty(EMAIL, "").trim();
+        this.threshold = parseDouble(properties, THRESHOLD, 0.0);
+        long minutes = parseLong(properties, INTERVAL_MINUTES, DEFAULT_INTERVAL_MINUTES);
+        if (minutes <= 0) {
+            logger.warning("Interval must be positive. Using default interval of " + DEFAULT_INTERVAL_MINUTES + " minutes.");
+            minutes = DEFAULT_INTERVAL_MINUTES;
+        }
+        this.intervalMillis = TimeUnit.MINUTES.toMillis(minutes);
+        this.downloadStreams = (int) Math.max(1, parseLong(properties, DOWNLOAD_STREAMS, DEFAULT_DOWNLOAD_STREAMS));
+        this.downloadUrls = parseList(properties.getProperty(DOWNLOAD_URLS, DEFAULT_DOWNLOAD_URL));
+        this.downloadEngine = parseDownloadEngine(properties.getProperty(DOWNLOAD_ENGINE));
+        this.uploadEnabled = Boolean.parseBoolean(properties.getProperty(UPLOAD_ENABLED, "false").trim());
+        this.uploadThreshold = parseDouble(properties, UPLOAD_THRESHOLD, threshold);
+        String history = properties.getProperty(HISTORY_DIR);
+        this.historyDir = history != null && !history.isBlank()
+                ? Paths.get(history.trim())
+                : Paths.get(System.getProperty("user.home"), ".speedio", "history");
+        String upload = properties.getProperty(UPLOAD_URL);
+        this.uploadUrl = upload != null && !upload.isBlank() ? upload.trim() : UploadSpeedCheckHandler.LIBRESPEED_URL;
+        this.uploadMode = parseUploadMode(properties.getProperty(UPLOAD_MODE));
+        this.uploadChunksInFlight = (int) Math.max(1, parseLong(properties, UPLOAD_IN_FLIGHT, UploadSpeedCheckHandler.DEFAULT_CHUNKS_IN_FLIGHT));
+        // -1 disables the built-in server, 0 picks a free port
+        this.localServerPort = (int) parseLong(properties, LOCAL_SERVER_PORT, -1);
+        this.localTarget = Boolean.parseBoolean(properties.getProperty(LOCAL_TARGET, "false").trim());
+        this.adaptivePolicy = parseAdaptivePolicy(properties);
+        this.fleetMaxConcurrent = (int) Math.max(1, parseLong(properties, FLEET_MAX_CONCURRENT, DEFAULT_FLEET_MAX_CONCURRENT));
+        this.targets = List.copyOf(TargetRegistry.parseTargets(properties, intervalMillis, threshold, email, downloadStreams));
+        this.latencyEnabled = Boolean.parseBoolean(properties.getProperty(LATENCY_ENABLED, "false").trim());
+        this.latencyIntervalMillis = Math.max(100, parseLong(properties, LATENCY_INTERVAL_MS, DEFAULT_LATENCY_INTERVAL_MS));
+        String latency = properties.getProperty(LATENCY_URL);
+        this.latencyUrl = latency != null && !latency.isBlank() ? latency.trim() : downloadUrls.get(0);
+        this.latencyUdpEcho = parseHostPort(properties, LATENCY_UDP_ECHO);
+        this.latencyThresholdMillis = parseDouble(properties, LATENCY_THRESHOLD_MS, DEFAULT_LATENCY_THRESHOLD_MS);
+        this.latencyJitterMillis = parseDouble(properties, LATENCY_JITTER_MS, DEFAULT_LATENCY_JITTER_MS);
+        this.latencyLossPercent = parseDouble(properties, LATENCY_LOSS_PERCENT, DEFAULT_LATENCY_LOSS_PERCENT);
+        this.latencyTimeoutMillis = (int) Math.max(1, parseLong(properties, LATENCY_TIMEOUT_MS, DEFAULT_LATENCY_TIMEOUT_MS));
+        this.metricsPort = (int) parseLong(properties, METRICS_PORT, -1); // -1 disables the /metrics endpoint
+        long timeoutSeconds = parseLong(properties, TEST_TIMEOUT_SECONDS, TimeUnit.MILLISECONDS.toSeconds(TestRun.DEFAULT_TIMEOUT_MILLIS));
+        this.testTimeoutMillis = TimeUnit.SECONDS.toMillis(Math.max(1, timeoutSeconds));
+        this.trafficDeferMbps = parseDouble(properties, TRAFFIC_DEFER_MBPS, 0.0); // 0 never defers
+        // Off unless asked for, or needed to defer tests; the sampler is a thread that wakes every few hundred ms
+        this.trafficEnabled = Boolean.parseBoolean(properties.getProperty(TRAFFIC_ENABLED,
+                String.valueOf(trafficDeferMbps > 0)).trim());
+        String trafficInterface = properties.getProperty(TRAFFIC_INTERFACE);
+        this.trafficInterface = trafficInterface != null && !trafficInterface.isBlank() ? trafficInterface.trim() : null;
+        this.trafficSampleMillis = Math.max(50, parseLong(properties, TRAFFIC_SAMPLE_MS, DEFAULT_TRAFFIC_SAMPLE_MS));
+        long windowSeconds = parseLong(properties, TRAFFIC_WINDOW_SECONDS, DEFAULT_TRAFFIC_WINDOW_SECONDS);
+        this.trafficWindowMillis = Math.max(trafficSampleMillis, TimeUnit.SECONDS.toMillis(windowSeconds));
+        this.trafficMaxDeferMillis = TimeUnit.MINUTES.toMillis(Math.max(0,
+                parseLong(properties, TRAFFIC_MAX_DEFER_MINUTES, DEFAULT_TRAFFIC_MAX_DEFER_MINUTES)));
+        String ship = properties.getProperty(SHIP_URL);
+        this.shipUrl = ship != null && !ship.isBlank() ? ship.trim() : null;
+        String agentId = properties.getProperty(SHIP_AGENT_ID);
+        if (agentId != null && !agentId.isBlank()) {
+            this.shipAgentId = agentId.trim();
+        } else {
+            this.shipAgentId = shipUrl != null ? ResultShipper.defaultAgentId() : null; // Skips the lookup when not shipping
+        }
+        this.shipBatchSize = parseShipBatchSize(properties);
+        this.shipBatchMillis = Math.max(1, parseLong(properties, SHIP_BATCH_MS, DEFAULT_SHIP_BATCH_MS));
+        this.shipJson = "json".equalsIgnoreCase(properties.getProperty(SHIP_FORMAT, "binary").trim());
+        String spool = properties.getProperty(SHIP_SPOOL_DIR);
+        this.shipSpoolDir = spool != null && !spool.isBlank()
+                ? Paths.get(spool.trim())
+                : Paths.get(System.getProperty("user.home"), ".speedio", "spool");
+        this.shipSpoolMaxBytes = Math.max(1, parseLong(properties, SHIP_SPOOL_MAX_MB, DEFAULT_SHIP_SPOOL_MAX_MB)) * 1024 * 1024;
+        this.collectorPort = (int) parseLong(properties, COLLECTOR_PORT, -1); // -1 disables collector mode
+        this.collectorThreads = (int) Math.max(1, parseLong(properties, COLLECTOR_THREADS,
+                Runtime.getRuntime().availableProcessors() * 2L));
+        this.collectorOnly = Boolean.parseBoolean(properties.getProperty(COLLECTOR_ONLY, "false").trim());
+    }
+
+    // The collector rejects batches over BatchCodec.MAX_RECORDS, so larger sizes are capped to it
+    private static int parseShipBatchSize(Properties properties) {
+        long size = Math.max(1, parseLong(properties, SHIP_BATCH_SIZE, DEFAULT_SHIP_BATCH_SIZE));
+        if (size > BatchCodec.MAX_RECORDS) {
+            logger.warning(SHIP_BATCH_SIZE + " " + size + " exceeds the collector limit. Using " + BatchCodec.MAX_RECORDS + ".");
+            return BatchCodec.MAX_RECORDS;
+        }
+        return (int) size;
+    }
+
+    private static DownloadEngine parseDownloadEngine(String value) {
+        if (value == null || value.isBlank()) {
+            return DownloadEngine.JSPEEDTEST;
+        }
+        try {
+            return DownloadEngine.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid " + DOWNLOAD_ENGINE + " value '" + value + "'. Using jspeedtest.");
+            return DownloadEngine.JSPEEDTEST;
+        }
+    }
+
+    private static UploadMode parseUploadMode(String value) {
+        if (value == null || value.isBlank()) {
+            return UploadMode.SEQUENTIAL;
+        }
+        try {
+            return UploadMode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid " + UPLOAD_MODE + " value '" + value + "'. Using sequential.");
+            return UploadMode.SEQUENTIAL;
+        }
+    }
+
+    // host:port, or [v6-address]:port; null when unset or invalid
+    private static InetSocketAddress parseHostPort(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        value = value.trim();
+        int colon = value.lastIndexOf(':');
+        try {
+            if (colon <= 0) {
+                throw new NumberFormatException("missing port");
+            }
+            String host = value.substring(0, colon);
+            if (host.startsWith("[") && host.endsWith("]")) {
+                host = host.substring(1, host.length() - 1);
+            }
+            return new InetSocketAddress(host, Integer.parseInt(value.substring(colon + 1)));
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid " + key + " value '" + value + "'. Expected host:port. UDP probing is disabled.");
+            return null;
+        }
+    }
+
+    private static AdaptiveTestPolicy parseAdaptivePolicy(Properties properties) {
+        if (!Boolean.parseBoolean(properties.getProperty(ADAPTIVE, "false").trim())) {
+            return null;
+        }
+        AdaptiveTestPolicy defaults = AdaptiveTestPolicy.defaults();
+        long maxMb = parseLong(properties, ADAPTIVE_MAX_MB, defaults.getMaxBytes() / (1024 * 1024));
+        long maxSeconds = parseLong(properties, ADAPTIVE_MAX_SECONDS, TimeUnit.MILLISECONDS.toSeconds(defaults.getMaxMillis()));
+        double tolerance = parseDouble(properties, ADAPTIVE_TOLERANCE, defaults.getTolerance());
+        try {
+            return new AdaptiveTestPolicy(maxMb * 1024 * 1024, TimeUnit.SECONDS.toMillis(maxSeconds), tolerance);
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid adaptive test settings (" + e.getMessage() + "). Using " + defaults + ".");
+            return defaults;
+        }
+    }
+
+    // Reads --config=<file> first, then lets the other --key=value arguments override it
+    public static MonitorConfig fromArgs(String[] args) throws IOException {
+        Properties overrides = new Properties();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                continue;
+            }
+            int equals = arg.indexOf('=');
+            if (equals > 2) {
+                overrides.setProperty(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+
+        Properties properties = new Properties();
+        String configFile = overrides.getProperty(CONFIG_FILE);
+        if (configFile != null) {
+            try (Reader reader = Files.newBufferedReader(Paths.get(configFile), StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            logger.info("Loaded configuration from " + configFile);
+        }
+        properties.putAll(overrides);
+        return new MonitorConfig(properties);
+    }
+
+    private static double parseDouble(Properties properties, String key, double defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warning("Invalid " + key + " value '" + value + "'. Using default " + defaultValue + ".");
+            return defaultValue;
+        }
+    }
+
+    private static long parseLong(Properties properties, String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warning("Invalid " + key + " value '" + value + "'. Using default " + defaultValue + ".");
+            return defaultValue;
+        }
+    }
+
+    private static List<String> parseList(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.isBlank()) {
+                items.add(item.trim());
+            }
+        }
+        return items.isEmpty() ? List.of(DEFAULT_DOWNLOAD_URL) : List.copyOf(items);
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public int getDownloadStreams() {
+        return downloadStreams;
+    }
+
+    public List<String> getDownloadUrls() {
+        return downloadUrls;
+    }
+
+    public DownloadEngine getDownloadEngine() {
+        return downloadEngine;
+    }
+
+    public boolean isUploadEnabled() {
+        return uploadEnabled;
+    }
+
+    public double getUploadThreshold() {
+        return uploadThreshold;
+    }
+
+    public Path getHistoryDir() {
+        return historyDir;
+    }
+
+    public String getUploadUrl() {
+        return uploadUrl;
+    }
+
+    public UploadMode getUploadMode() {
+        return uploadMode;
+    }
+
+    // Chunks kept in flight per connection in concurrent upload mode
+    public int getUploadChunksInFlight() {
+        return uploadChunksInFlight;
+    }
+
+    public int getLocalServerPort() {
+        return localServerPort;
+    }
+
+    // Probe runs across the whole fleet that may be in flight at once
+    public int getFleetMaxConcurrent() {
+        return fleetMaxConcurrent;
+    }
+
+    // Empty unless target.<id>.url entries are configured
+    public List<MonitorTarget> getTargets() {
+        return targets;
+    }
+
+    // Null when tests should use the fixed download file and upload size
+    public AdaptiveTestPolicy getAdaptivePolicy() {
+        return adaptivePolicy;
+    }
+
+    public boolean isLatencyEnabled() {
+        return latencyEnabled;
+    }
+
+    public long getLatencyIntervalMillis() {
+        return latencyIntervalMillis;
+    }
+
+    // Defaults to the first download URL, so connect and TTFB are measured against the test server
+    public String getLatencyUrl() {
+        return latencyUrl;
+    }
+
+    // Null when no UDP echo server is configured; RTT then falls back to the TCP connect time
+    public InetSocketAddress getLatencyUdpEcho() {
+        return latencyUdpEcho;
+    }
+
+    public double getLatencyThresholdMillis() {
+        return latencyThresholdMillis;
+    }
+
+    public double getLatencyJitterMillis() {
+        return latencyJitterMillis;
+    }
+
+    public double getLatencyLossPercent() {
+        return latencyLossPercent;
+    }
+
+    public int getLatencyTimeoutMillis() {
+        return latencyTimeoutMillis;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    // Hard limit for one download or upload test, warm-up included
+    public long getTestTimeoutMillis() {
+        return testTimeoutMillis;
+    }
+
+    // Passive sampling of the interface counters; only does anything on Linux. Defaults to on only
+    // when traffic.defer.mbps is set
+    public boolean isTrafficEnabled() {
+        return trafficEnabled;
+    }
+
+    // Null monitors the interface of the default route
+    public String getTrafficInterface() {
+        return trafficInterface;
+    }
+
+    public long getTrafficSampleMillis() {
+        return trafficSampleMillis;
+    }
+
+    // Background load is averaged over this window before a test
+    public long getTrafficWindowMillis() {
+        return trafficWindowMillis;
+    }
+
+    // Scheduled tests wait while other traffic in either direction is above this; 0 disables deferral
+    public double getTrafficDeferMbps() {
+        return trafficDeferMbps;
+    }
+
+    public long getTrafficMaxDeferMillis() {
+        return trafficMaxDeferMillis;
+    }
+
+    // Collector ingest URL, e.g. http://collector:9300/ingest; null when results are not shipped
+    public String getShipUrl() {
+        return shipUrl;
+    }
+
+    // Defaults to the host name; the collector stores results as <agent id>/<target>
+    public String getShipAgentId() {
+        return shipAgentId;
+    }
+
+    // A batch is sent when it holds this many measurements...
+    public int getShipBatchSize() {
+        return shipBatchSize;
+    }
+
+    // ...or this long after its first one
+    public long getShipBatchMillis() {
+        return shipBatchMillis;
+    }
+
+    // JSON instead of the compact binary encoding
+    public boolean isShipJson() {
+        return shipJson;
+    }
+
+    public Path getShipSpoolDir() {
+        return shipSpoolDir;
+    }
+
+    public long getShipSpoolMaxBytes() {
+        return shipSpoolMaxBytes;
+    }
+
+    // -1 unless this instance also collects results from agents
+    public int getCollectorPort() {
+        return collectorPort;
+    }
+
+    public int getCollectorThreads() {
+        return collectorThreads;
+    }
+
+    // A central collector that runs no tests of its own
+    public boolean isCollectorOnly() {
+        return collectorOnly;
+    }
+
+    // Test against the built-in server instead of the remote endpoints, e.g. when offline
+    public boolean isLocalTarget() {
+        return localTarget;
+    }
+}
@@ -0,0 +1,76 @@
+package com.speedio.speedio_v1;
+
+/**
+ * One monitored endpoint in a fleet: what to test, how often, and who to tell. Targets that share
+ * a {@code link} (e.g. the download and upload probe of one branch uplink) never run at the same
+ * time, so they cannot skew each other's results.
+ */
+public class MonitorTarget {
+
+    private final String id;
+    private final String link;
+    private final Direction direction;
+    private final String url;
+    private final long intervalMillis;
+    private final double threshold;
+    private final String alertEmail;
+    private final int streams;
+
+    public MonitorTarget(String id, String link, Direction direction, String url, long intervalMillis,
+                         double threshold, String alertEmail, int streams) {
+        if (id == null || id.isBlank()) {
+            throw new IllegalArgumentException("Target id is required");
+        }
+        if (url == null || url.isBlank()) {
+            throw new IllegalArgumentException("Target " + id + " has no URL");
+        }
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Target " + id + " interval must be positive: " + intervalMillis);
+        }
+        this.id = id;
+        this.link = link == null || link.isBlank() ? id : link;
+        this.direction = direction;
+        this.url = url;
+        this.intervalMillis = intervalMillis;
+        this.threshold = threshold;
+        this.alertEmail = alertEmail == null ? "" : alertEmail;
+        this.streams = Math.max(1, streams);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getLink() {
+        return link;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public String getAlertEmail() {
+        return alertEmail;
+    }
+
+    public int getStreams() {
+        return streams;
+    }
+
+    @Override
+    public String toString() {
+        return id + " (" + direction + " " + url + ", link " + link + ", every " + intervalMillis + " ms, threshold " + threshold + " Mbps)";
+    }
+}
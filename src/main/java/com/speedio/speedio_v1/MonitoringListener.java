@@ -0,0 +1,24 @@
+package com.speedio.speedio_v1;
+
+/**
+ * Callbacks from {@link MonitoringService}. They run on measurement threads, so UI implementations
+ * must hand off to their own thread; progress can fire thousands of times per test.
+ */
+public interface MonitoringListener {
+
+    default void onTestStarted(Direction direction) {
+    }
+
+    default void onProgress(Direction direction, double mbps) {
+    }
+
+    default void onResult(Direction direction, String formattedSpeed) {
+    }
+
+    default void onMeasurement(Measurement measurement) {
+    }
+
+    // Can fire several times a second when latency probing is enabled
+    default void onLatency(LatencySample sample) {
+    }
+}
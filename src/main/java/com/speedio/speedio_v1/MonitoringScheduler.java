@@ -0,0 +1,360 @@
+package com.speedio.speedio_v1;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs speed probes on a shared pool of daemon threads at a fixed interval with random jitter.
+ * Probes registered for the same link never run at the same time: a run that finds its link busy
+ * waits in a per-link queue and starts as soon as the link is free, and a run that takes longer
+ * than its interval pushes the next one further out.
+ *
+ * <p>For large fleets the timer threads only fire probes; the probes themselves run on a bounded
+ * pool, so thousands of scheduled targets share a fixed number of blocking test threads and
+ * excess runs wait in a queue instead of each holding a thread.
+ *
+ * <p>A one-off run started by hand from {@link #runNext} waits for the link the same way, ahead of
+ * every scheduled run.
+ *
+ * <p>A link can also hold back its scheduled runs while a condition holds, e.g. while the line is
+ * busy with other traffic that would make the test read low; see {@link #deferWhile}.
+ */
+public class MonitoringScheduler {
+
+    private static final Logger logger = Logger.getLogger(MonitoringScheduler.class.getName());
+
+    static final double DEFAULT_JITTER = 0.1; // +/- 10% of the interval
+    private static final int MAX_BACKOFF_FACTOR = 8; // Never wait more than 8x the interval after overruns
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final ExecutorService probeExecutor; // Null runs probes on the timer threads
+    private final Map<String, ScheduledProbe> probes = new ConcurrentHashMap<>();
+    private final Map<String, AtomicBoolean> busyLinks = new ConcurrentHashMap<>();
+    private final Map<String, Queue<ScheduledProbe>> waitingProbes = new ConcurrentHashMap<>(); // Runs held up by a busy link
+    private final Map<String, Runnable> pendingRuns = new ConcurrentHashMap<>(); // One-off runs waiting for their link
+    private final Map<String, Deferral> deferrals = new ConcurrentHashMap<>();
+
+    public MonitoringScheduler(int workerThreads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(workerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "speedio-monitor-" + threadCount.incrementAndGet());
+            thread.setDaemon(true); // Never keep the JVM alive just for monitoring
+            return thread;
+        });
+        this.executor.setRemoveOnCancelPolicy(true);
+        this.probeExecutor = null;
+    }
+
+    public MonitoringScheduler(int timerThreads, int maxConcurrentProbes) {
+        AtomicInteger timerCount = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(timerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "speedio-timer-" + timerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.setRemoveOnCancelPolicy(true);
+
+        AtomicInteger probeCount = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrentProbes, maxConcurrentProbes,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "speedio-probe-" + probeCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true); // Idle fleets give their threads back
+        this.probeExecutor = pool;
+    }
+
+    public void schedule(String probeName, String link, Runnable probe, long intervalMillis) {
+        schedule(probeName, link, probe, intervalMillis, DEFAULT_JITTER);
+    }
+
+    public void schedule(String probeName, String link, Runnable probe, long intervalMillis, double jitter) {
+        schedule(probeName, link, probe, intervalMillis, jitter, 0);
+    }
+
+    // A random initialDelayMillis spreads many targets over their first interval instead of starting them all at once
+    public void schedule(String probeName, String link, Runnable probe, long intervalMillis, double jitter, long initialDelayMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Interval must be positive: " + intervalMillis);
+        }
+        cancel(probeName);
+
+        ScheduledProbe scheduledProbe = new ScheduledProbe(probeName, link, probe, intervalMillis, jitter);
+        probes.put(probeName, scheduledProbe);
+        scheduledProbe.scheduleNext(initialDelayMillis);
+        logger.info("Scheduled probe " + probeName + " on link " + link + " every " + intervalMillis + " ms");
+    }
+
+    /**
+     * Runs a one-off probe immediately on the shared pool. Returns false if the link is already
+     * being measured, in which case nothing is submitted.
+     */
+    public boolean runNow(String link, Runnable probe) {
+        if (isLinkBusy(link)) {
+            logger.info("A test is already running on link " + link + ". Ignoring request.");
+            return false;
+        }
+        dispatch(() -> runExclusive(link, probe));
+        return true;
+    }
+
+    /**
+     * Runs a one-off probe as soon as the link is free: right away if it is idle, otherwise next,
+     * ahead of any scheduled run waiting for the link. Never blocks the caller. A newer request for
+     * the same link replaces one that is still waiting. Returns false once the scheduler is shut down.
+     */
+    public boolean runNext(String link, Runnable probe) {
+        if (executor.isShutdown()) {
+            return false;
+        }
+        if (pendingRuns.put(link, probe) != null) {
+            logger.info("Replacing a one-off run still waiting for link " + link);
+        }
+        if (!isLinkBusy(link)) {
+            dispatchWaiting(link);
+        }
+        return true;
+    }
+
+    public boolean isLinkBusy(String link) {
+        AtomicBoolean busy = busyLinks.get(link);
+        return busy != null && busy.get();
+    }
+
+    /**
+     * Puts off scheduled runs on the link while the condition is true, checking again every
+     * retryMillis. After maxDeferMillis the run goes ahead anyway, so a line that is never idle
+     * still gets measured. One-off runs from {@link #runNow} and {@link #runNext} are never deferred.
+     */
+    public void deferWhile(String link, BooleanSupplier condition, long retryMillis, long maxDeferMillis) {
+        if (retryMillis <= 0) {
+            throw new IllegalArgumentException("Retry interval must be positive: " + retryMillis);
+        }
+        deferrals.put(link, new Deferral(condition, retryMillis, maxDeferMillis));
+    }
+
+    public void clearDeferral(String link) {
+        deferrals.remove(link);
+    }
+
+    public boolean isScheduled(String probeName) {
+        return probes.containsKey(probeName);
+    }
+
+    public void cancel(String probeName) {
+        ScheduledProbe previous = probes.remove(probeName);
+        if (previous != null) {
+            previous.cancel();
+            logger.info("Cancelled probe " + probeName);
+        }
+    }
+
+    public void shutdown() {
+        probes.values().forEach(ScheduledProbe::cancel);
+        probes.clear();
+        waitingProbes.clear();
+        pendingRuns.clear();
+        executor.shutdownNow();
+        if (probeExecutor != null) {
+            probeExecutor.shutdownNow();
+        }
+    }
+
+    // Number of probe runs waiting for a free thread; always 0 without a probe pool
+    public int getQueuedProbes() {
+        return probeExecutor != null ? ((ThreadPoolExecutor) probeExecutor).getQueue().size() : 0;
+    }
+
+    private void dispatch(Runnable task) {
+        try {
+            if (probeExecutor != null) {
+                probeExecutor.execute(task);
+            } else {
+                executor.execute(task);
+            }
+        } catch (RejectedExecutionException e) {
+            logger.fine("Scheduler is shut down, dropping probe run");
+        }
+    }
+
+    // Returns false without running the probe when another probe holds the link
+    private boolean runExclusive(String link, Runnable probe) {
+        AtomicBoolean busy = busyLinks.computeIfAbsent(link, key -> new AtomicBoolean(false));
+        if (!busy.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            probe.run();
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Probe on link " + link + " failed", e);
+        } finally {
+            busy.set(false);
+            dispatchWaiting(link);
+        }
+        return true;
+    }
+
+    // A one-off run that loses the link to a scheduled run waits again, unless a newer one took its place
+    private void runPending(String link, Runnable probe) {
+        if (!runExclusive(link, probe) && pendingRuns.putIfAbsent(link, probe) == null && !isLinkBusy(link)) {
+            dispatchWaiting(link);
+        }
+    }
+
+    /**
+     * Hands the link to a waiting one-off run, else to the scheduled run that has waited longest.
+     * Either queues itself again if it loses a race for the link.
+     */
+    private void dispatchWaiting(String link) {
+        Runnable pending = pendingRuns.remove(link);
+        if (pending != null) {
+            dispatch(() -> runPending(link, pending));
+            return;
+        }
+        Queue<ScheduledProbe> waiting = waitingProbes.get(link);
+        if (waiting == null) {
+            return;
+        }
+        ScheduledProbe next;
+        while ((next = waiting.poll()) != null) {
+            next.queued = false;
+            if (!next.cancelled) {
+                dispatch(next::runOnce);
+                return;
+            }
+        }
+    }
+
+    private static final class Deferral {
+        final BooleanSupplier condition;
+        final long retryMillis;
+        final long maxDeferNanos;
+
+        Deferral(BooleanSupplier condition, long retryMillis, long maxDeferMillis) {
+            this.condition = condition;
+            this.retryMillis = retryMillis;
+            this.maxDeferNanos = TimeUnit.MILLISECONDS.toNanos(maxDeferMillis);
+        }
+    }
+
+    private final class ScheduledProbe {
+        private final String name;
+        private final String link;
+        private final Runnable probe;
+        private final long intervalMillis;
+        private final double jitter;
+        private volatile int backoffFactor = 1;
+        private volatile boolean cancelled;
+        private volatile ScheduledFuture<?> nextRun;
+        private volatile long deferredSince; // nanoTime of the first deferral, only valid while deferring
+        private volatile boolean deferring;
+        private volatile boolean queued; // Waiting in waitingProbes for its link
+
+        ScheduledProbe(String name, String link, Runnable probe, long intervalMillis, double jitter) {
+            this.name = name;
+            this.link = link;
+            this.probe = probe;
+            this.intervalMillis = intervalMillis;
+            this.jitter = jitter;
+        }
+
+        void scheduleNext(long delayMillis) {
+            if (cancelled || executor.isShutdown()) {
+                return;
+            }
+            nextRun = executor.schedule(() -> dispatch(this::runOnce), delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        void runOnce() {
+            Deferral deferral = deferrals.get(link);
+            if (deferral != null && shouldDefer(deferral)) {
+                SpeedioMetrics.TESTS_DEFERRED.increment();
+                scheduleNext(deferral.retryMillis);
+                return;
+            }
+            long startTime = System.nanoTime();
+            boolean ran = runExclusive(link, probe);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+            if (!ran) {
+                waitForLink();
+                return; // Rescheduled after the queued run
+            }
+            if (elapsedMillis > intervalMillis) {
+                backoffFactor = Math.min(backoffFactor * 2, MAX_BACKOFF_FACTOR);
+                logger.warning("Probe " + name + " overran its interval (" + elapsedMillis + " ms). Backing off "
+                        + backoffFactor + "x.");
+            } else {
+                backoffFactor = 1;
+            }
+            scheduleNext(jitteredDelay(intervalMillis * backoffFactor));
+        }
+
+        // Queued behind the probe holding the link instead of being skipped until the next interval
+        void waitForLink() {
+            if (queued) {
+                return;
+            }
+            queued = true;
+            waitingProbes.computeIfAbsent(link, key -> new ConcurrentLinkedQueue<>()).add(this);
+            SpeedioMetrics.PROBES_QUEUED.increment();
+            logger.info("Link " + link + " busy, queueing run of probe " + name);
+            if (!isLinkBusy(link)) {
+                dispatchWaiting(link); // The link was released before we were queued
+            }
+        }
+
+        // A busy link is left to the queue; our own test is not other traffic
+        boolean shouldDefer(Deferral deferral) {
+            if (isLinkBusy(link) || !deferral.condition.getAsBoolean()) {
+                deferring = false;
+                return false;
+            }
+            long now = System.nanoTime();
+            if (!deferring) {
+                deferring = true;
+                deferredSince = now;
+            } else if (now - deferredSince >= deferral.maxDeferNanos) {
+                logger.warning("Link " + link + " still busy with other traffic after "
+                        + TimeUnit.NANOSECONDS.toMinutes(now - deferredSince) + " min. Running probe " + name + " anyway.");
+                deferring = false;
+                return false;
+            }
+            logger.info("Link " + link + " busy with other traffic, deferring probe " + name + " by "
+                    + deferral.retryMillis + " ms");
+            return true;
+        }
+
+        long jitteredDelay(long baseMillis) {
+            if (jitter <= 0) {
+                return baseMillis;
+            }
+            double offset = ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+            return Math.max(0, Math.round(baseMillis * (1.0 + offset)));
+        }
+
+        void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> future = nextRun;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
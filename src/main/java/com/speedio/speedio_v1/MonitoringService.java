@@ -0,0 +1,425 @@
+package com.speedio.speedio_v1;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The measurement and alerting core, free of any JavaFX dependency. It owns the scheduler, the
+ * measurement history and the rolling statistics, builds the download/upload handlers from a
+ * {@link MonitorConfig}, and sends alert emails. Latency probes, when enabled, run on their own
+ * schedule next to the throughput tests. Each throughput test runs as a {@link TestRun} with the
+ * configured deadline; starting a test by hand cancels the one in flight and runs as soon as it has
+ * stopped, so a retry never competes with the test it replaces. With {@code traffic.enabled}, on
+ * Linux, the interface counters are sampled passively; scheduled tests wait while other traffic is
+ * above {@code traffic.defer.mbps}, and every result is annotated with the load seen just before it
+ * started. The GUI controller and the headless daemon are both thin front ends over this class.
+ */
+public class MonitoringService {
+
+    private static final Logger logger = Logger.getLogger(MonitoringService.class.getName());
+
+    private static final String DOWNLOAD_PROBE = "download";
+    private static final String UPLOAD_PROBE = "upload";
+    private static final String LATENCY_PROBE = "latency";
+    private static final String PRIMARY_LINK = "primary"; // Download and upload probes share one uplink
+    private static final String LATENCY_LINK = "latency"; // Latency rounds are tiny and must keep going during throughput tests
+    private static final int LATENCY_UDP_PACKETS = 5;
+    private static final int ALERT_SAMPLES_BELOW = 2; // Alert when 2 of the last 3 tests are slow
+    private static final int ALERT_SAMPLE_WINDOW = 3;
+    private static final long LOCAL_WARMUP_BYTES = 1024 * 1024;
+    private static final long DEFER_RETRY_MILLIS = 30_000;
+
+    private final MonitoringListener listener;
+    private final MonitoringScheduler monitoringScheduler = new MonitoringScheduler(2);
+    private final SpeedStatistics downloadStatistics = new SpeedStatistics();
+    private final SpeedStatistics uploadStatistics = new SpeedStatistics();
+    private MeasurementStore measurementStore;
+    private LocalSpeedTestServer localServer;
+    private InterfaceTrafficMonitor trafficMonitor;
+    private ResultShipper resultShipper;
+    private volatile MonitorConfig config;
+    private volatile DownloadSpeedCheckHandler downloadSpeedCheckHandler;
+    private volatile UploadSpeedCheckHandler uploadSpeedCheckHandler;
+    private LatencyMonitor latencyMonitor;
+    private volatile ThresholdRule uploadThresholdRule;
+    private volatile boolean uploadAlertSent;
+    private final AtomicReference<TestRun> activeRun = new AtomicReference<>(); // Throughput test on the primary link
+    private volatile TrafficLoad runBackground; // Other traffic before the active run started, null if unknown
+
+    public MonitoringService(MonitorConfig config, MonitoringListener listener) {
+        this.listener = listener;
+        openMeasurementStore(config);
+        startLocalServer(config);
+        startTrafficMonitor(config);
+        startShipper(config);
+        configure(config);
+    }
+
+    private void startShipper(MonitorConfig config) {
+        if (config.getShipUrl() == null) {
+            return;
+        }
+        try {
+            ResultShipper shipper = ResultShipper.fromConfig(config);
+            shipper.start();
+            resultShipper = shipper;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Could not start shipping results to " + config.getShipUrl(), e);
+        }
+    }
+
+    private void startTrafficMonitor(MonitorConfig config) {
+        if (!config.isTrafficEnabled()) {
+            return;
+        }
+        InterfaceTrafficMonitor monitor = new InterfaceTrafficMonitor(config.getTrafficInterface(),
+                config.getTrafficSampleMillis(), config.getTrafficWindowMillis());
+        if (monitor.start()) {
+            trafficMonitor = monitor;
+        }
+    }
+
+    // Serves LAN clients on the configured port, or just this process on loopback when only local.target is set
+    private void startLocalServer(MonitorConfig config) {
+        if (config.getLocalServerPort() < 0 && !config.isLocalTarget()) {
+            return;
+        }
+        LocalSpeedTestServer server = config.getLocalServerPort() >= 0
+                ? new LocalSpeedTestServer(new InetSocketAddress(config.getLocalServerPort()))
+                : LocalSpeedTestServer.loopback();
+        try {
+            server.start();
+            localServer = server;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not start the local speed-test server", e);
+        }
+    }
+
+    private void openMeasurementStore(MonitorConfig config) {
+        try {
+            measurementStore = new MeasurementStore(config.getHistoryDir());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not open measurement history. Results will not be stored.", e);
+        }
+    }
+
+    // Rebuilds the handlers from new settings; statistics and history carry over
+    public synchronized void configure(MonitorConfig config) {
+        MonitorConfig previous = this.config;
+        this.config = config;
+        logger.info("Threshold: " + config.getThreshold() + " Mbps, interval: " + config.getIntervalMillis() + " ms");
+
+        boolean local = config.isLocalTarget() && localServer != null;
+        if (config.isLocalTarget() && !local) {
+            logger.warning("Local speed-test server is not running. Testing against the remote servers.");
+        }
+        AdaptiveTestPolicy adaptivePolicy = config.getAdaptivePolicy();
+        long localDownloadBytes = adaptivePolicy != null ? adaptivePolicy.getMaxBytes() : LocalSpeedTestServer.DEFAULT_DOWNLOAD_BYTES;
+        List<String> downloadUrls = local
+                ? List.of(localServer.getDownloadUrl(localDownloadBytes))
+                : config.getDownloadUrls();
+        String uploadUrl = local ? localServer.getUploadUrl() : config.getUploadUrl();
+
+        DownloadSpeedCheckHandler downloadHandler = new DownloadSpeedCheckHandler(
+                speed -> listener.onResult(Direction.DOWNLOAD, speed),
+                config.getThreshold(),
+                // The handler only calls back once per slowdown, so every call becomes an email
+                () -> sendDownloadAlert(config),
+                config.getDownloadStreams(), downloadUrls);
+        if (local) {
+            downloadHandler.setWarmUpUrl(localServer.getDownloadUrl(LOCAL_WARMUP_BYTES));
+        }
+        downloadHandler.setProgressListener(speed -> listener.onProgress(Direction.DOWNLOAD, speed));
+        downloadHandler.setStatistics(downloadStatistics);
+        downloadHandler.setThresholdRule(ThresholdRule.kOfLastM(ALERT_SAMPLES_BELOW, ALERT_SAMPLE_WINDOW, config.getThreshold()));
+        downloadHandler.setMeasurementListener(this::onMeasurement);
+        downloadHandler.setAdaptivePolicy(adaptivePolicy);
+        downloadHandler.setEngine(config.getDownloadEngine());
+        downloadHandler.setTestTimeoutMillis(config.getTestTimeoutMillis());
+        downloadSpeedCheckHandler = downloadHandler;
+
+        // No alert address here: upload alerts go through the threshold rule in onMeasurement
+        UploadSpeedCheckHandler uploadHandler = new UploadSpeedCheckHandler(speed -> { }, null, uploadUrl);
+        uploadHandler.setMeasurementListener(this::onMeasurement);
+        uploadHandler.setAdaptivePolicy(adaptivePolicy);
+        uploadHandler.setUploadMode(config.getUploadMode(), config.getUploadChunksInFlight());
+        uploadHandler.setTestTimeoutMillis(config.getTestTimeoutMillis());
+        uploadSpeedCheckHandler = uploadHandler;
+        uploadThresholdRule = ThresholdRule.kOfLastM(ALERT_SAMPLES_BELOW, ALERT_SAMPLE_WINDOW, config.getUploadThreshold());
+
+        configureLatency(config, local);
+        configureDeferral(config);
+        // Scheduled probes pick up the new handlers when they run; only new timings need new timers
+        if (previous != null && monitoringScheduler.isScheduled(DOWNLOAD_PROBE)
+                && (previous.getIntervalMillis() != config.getIntervalMillis()
+                || previous.isUploadEnabled() != config.isUploadEnabled())) {
+            scheduleThroughputProbes(config, config.getIntervalMillis());
+        }
+    }
+
+    private void configureDeferral(MonitorConfig config) {
+        if (trafficMonitor == null || config.getTrafficDeferMbps() <= 0) {
+            monitoringScheduler.clearDeferral(PRIMARY_LINK);
+            return;
+        }
+        monitoringScheduler.deferWhile(PRIMARY_LINK, this::isLineBusy, DEFER_RETRY_MILLIS, config.getTrafficMaxDeferMillis());
+    }
+
+    // Other traffic in either direction skews a test: downloads also need the uplink for their ACKs
+    private boolean isLineBusy() {
+        TrafficLoad load = trafficMonitor.getBackgroundLoad();
+        return load != null && load.getMaxMbps() > config.getTrafficDeferMbps();
+    }
+
+    // Replaces the latency monitor; unlike the throughput statistics, latency history starts over
+    private void configureLatency(MonitorConfig config, boolean local) {
+        boolean running = monitoringScheduler.isScheduled(LATENCY_PROBE);
+        if (latencyMonitor != null) {
+            monitoringScheduler.cancel(LATENCY_PROBE);
+            latencyMonitor.close();
+            latencyMonitor = null;
+        }
+        if (!config.isLatencyEnabled()) {
+            return;
+        }
+        String url = local ? localServer.getBaseUrl() + "/" : config.getLatencyUrl();
+        InetSocketAddress udpEcho = local ? localServer.getUdpEchoAddress() : config.getLatencyUdpEcho();
+        try {
+            LatencyProbe probe = new LatencyProbe(url, udpEcho, config.getLatencyTimeoutMillis(), LATENCY_UDP_PACKETS);
+            latencyMonitor = new LatencyMonitor(probe, listener::onLatency, config.getEmail(),
+                    config.getLatencyThresholdMillis(), config.getLatencyJitterMillis(), config.getLatencyLossPercent());
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid latency target " + url + ". Latency probing is disabled.");
+            return;
+        }
+        if (running) { // Settings changed while monitoring; keep probing with the new ones
+            monitoringScheduler.schedule(LATENCY_PROBE, LATENCY_LINK, latencyMonitor::runOnce, config.getLatencyIntervalMillis());
+        }
+    }
+
+    /**
+     * Cancels a test still running on the primary link and starts this one as soon as the
+     * cancelled test has closed its sockets, ahead of any scheduled run. Returns without waiting,
+     * so it is safe on the UI thread; false if the service is shut down and the test will not run.
+     */
+    public boolean runDownloadNow() {
+        cancelActiveTest();
+        return monitoringScheduler.runNext(PRIMARY_LINK, this::runDownloadTest);
+    }
+
+    public boolean runUploadNow() {
+        cancelActiveTest();
+        return monitoringScheduler.runNext(PRIMARY_LINK, this::runUploadTest);
+    }
+
+    // Returns false when no test was running; does not wait for the test to stop
+    public boolean cancelActiveTest() {
+        TestRun run = activeRun.get();
+        return run != null && run.cancel();
+    }
+
+    public synchronized void start() {
+        MonitorConfig current = config;
+        scheduleThroughputProbes(current, 0);
+        if (latencyMonitor != null) {
+            monitoringScheduler.schedule(LATENCY_PROBE, LATENCY_LINK, latencyMonitor::runOnce, current.getLatencyIntervalMillis());
+        }
+    }
+
+    private void scheduleThroughputProbes(MonitorConfig config, long initialDelayMillis) {
+        long interval = config.getIntervalMillis();
+        monitoringScheduler.schedule(DOWNLOAD_PROBE, PRIMARY_LINK, this::runDownloadTest, interval,
+                MonitoringScheduler.DEFAULT_JITTER, initialDelayMillis);
+        if (config.isUploadEnabled()) {
+            monitoringScheduler.schedule(UPLOAD_PROBE, PRIMARY_LINK, this::runUploadTest, interval,
+                    MonitoringScheduler.DEFAULT_JITTER, initialDelayMillis);
+        } else {
+            monitoringScheduler.cancel(UPLOAD_PROBE);
+        }
+    }
+
+    public void shutdown() {
+        logger.info("Stopping speed monitoring...");
+        TestRun run = activeRun.get();
+        if (run != null) {
+            run.cancel(); // Closes the test's sockets; the scheduler's threads are daemons and need no wait
+        }
+        monitoringScheduler.shutdown();
+        EmailAlertSender.shutdown();
+        HttpClientPool.shutdown();
+        synchronized (this) {
+            if (latencyMonitor != null) {
+                latencyMonitor.close();
+            }
+            if (localServer != null) {
+                localServer.shutdown();
+            }
+            if (trafficMonitor != null) {
+                trafficMonitor.close();
+            }
+            if (resultShipper != null) {
+                resultShipper.close();
+            }
+            if (measurementStore != null) {
+                measurementStore.close();
+            }
+        }
+    }
+
+    public SpeedStatistics getDownloadStatistics() {
+        return downloadStatistics;
+    }
+
+    public SpeedStatistics getUploadStatistics() {
+        return uploadStatistics;
+    }
+
+    // Null unless latency.enabled is set
+    public synchronized LatencyMonitor getLatencyMonitor() {
+        return latencyMonitor;
+    }
+
+    public MeasurementStore getMeasurementStore() {
+        return measurementStore;
+    }
+
+    // Null unless local.server.port or local.target is configured
+    public LocalSpeedTestServer getLocalServer() {
+        return localServer;
+    }
+
+    // Null when traffic.enabled is off or the interface counters are not readable
+    public InterfaceTrafficMonitor getTrafficMonitor() {
+        return trafficMonitor;
+    }
+
+    public MonitorConfig getConfig() {
+        return config;
+    }
+
+    // Reads the handler when the test starts, so runs scheduled before a configure() use the new settings
+    private void runDownloadTest() {
+        DownloadSpeedCheckHandler handler = downloadSpeedCheckHandler;
+        TestRun run = startRun();
+        try {
+            listener.onTestStarted(Direction.DOWNLOAD);
+            handler.runSpeedTest(run);
+        } finally {
+            endRun(run);
+        }
+    }
+
+    private void runUploadTest() {
+        UploadSpeedCheckHandler handler = uploadSpeedCheckHandler;
+        TestRun run = startRun();
+        try {
+            listener.onTestStarted(Direction.UPLOAD);
+            handler.startSpeedTest(run);
+        } finally {
+            endRun(run);
+        }
+    }
+
+    // Only called while holding the primary link, so at most one run is active
+    private TestRun startRun() {
+        TestRun run = new TestRun(config.getTestTimeoutMillis());
+        activeRun.set(run);
+        InterfaceTrafficMonitor monitor = trafficMonitor;
+        if (monitor != null) {
+            runBackground = monitor.getBackgroundLoad(); // Before our own traffic starts
+            monitor.testStarted();
+        }
+        return run;
+    }
+
+    private void endRun(TestRun run) {
+        run.complete();
+        activeRun.compareAndSet(run, null);
+        InterfaceTrafficMonitor monitor = trafficMonitor;
+        if (monitor != null) {
+            monitor.testEnded();
+            runBackground = null;
+        }
+    }
+
+    private void onMeasurement(Measurement measurement) {
+        TrafficLoad background = runBackground;
+        if (background != null) {
+            measurement = measurement.withBackgroundMbps(background.getMbps(measurement.getDirection()));
+        }
+        if (measurement.getDirection() == Direction.UPLOAD && measurement.isAborted()) {
+            // Download results reach the listener through the handler's own callback
+            listener.onResult(Direction.UPLOAD, measurement.getErrorCode() == Measurement.ERROR_CANCELLED ? "Cancelled" : "Timed out");
+        } else if (measurement.getDirection() == Direction.UPLOAD) {
+            uploadStatistics.record(measurement.getTimestampMillis(), measurement.getMbps());
+            listener.onResult(Direction.UPLOAD, String.format("%.2f Mbps", measurement.getMbps()));
+            checkUploadThreshold(measurement);
+        }
+        recordMeasurement(measurement);
+        if (resultShipper != null) {
+            resultShipper.ship(measurement);
+        }
+        listener.onMeasurement(measurement);
+    }
+
+    private void checkUploadThreshold(Measurement measurement) {
+        if (!uploadThresholdRule.isBreached(uploadStatistics)) {
+            uploadAlertSent = false;
+            return;
+        }
+        if (!uploadAlertSent) { // Only alert once until the speed recovers
+            uploadAlertSent = true;
+            String email = config.getEmail();
+            if (!email.isEmpty()) {
+                EmailAlertSender.sendEmailAlert(email, "Upload Speed Alert",
+                        "The upload speed has fallen below the threshold. Current speed: " + measurement.getMbps() + " Mbps.");
+            }
+        }
+    }
+
+    private void recordMeasurement(Measurement measurement) {
+        if (measurementStore == null) {
+            return;
+        }
+        try {
+            measurementStore.append(measurement);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not store measurement " + measurement, e);
+        }
+    }
+
+    private void sendDownloadAlert(MonitorConfig config) {
+        String email = config.getEmail();
+        String currentSpeed = String.format("%.2f Mbps", downloadStatistics.getLastSample());
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+
+        if (email != null && !email.isEmpty()) {
+            String subject = "Sysmonitor.io - Internet download Speed Alert";
+            String body = String.format(
+                    "Dear User,%n%n" +
+                            "We have detected that your internet download speed has fallen below the specified threshold.%n%n" +
+                            "Details:%n" +
+                            "------------------------------------%n" +
+                            "Timestamp: %s%n" +
+                            "Threshold: %s Mbps%n" +
+                            "Current Speed: %s %n%n" +
+                            "This may affect your online experience, including streaming, downloading, and other activities that rely on a stable internet connection.%n%n" +
+                            "We recommend checking your network or contacting your internet service provider if the issue persists.%n%n" +
+                            "Best regards,%n" +
+                            "The Sysmonitor.io Team"
+                    , timestamp, config.getThreshold(), currentSpeed);
+
+            if (EmailAlertSender.sendEmailAlert(email, subject, body)) {
+                logger.info("Alert email queued for " + email);
+            }
+        } else {
+            logger.warning("Email address is empty. Cannot send alert email.");
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.speedio.speedio_v1;
+
+import fr.bmartel.speedtest.model.SpeedTestError;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.DoubleConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Download engine that reads the response body straight off a {@link SocketChannel} into one
+ * reused direct buffer per stream and throws it away, with no per-read callbacks or allocations.
+ * The calling thread samples the combined byte count on a fixed {@code System.nanoTime} grid
+ * (100 ms by default) and reports each interval's rate in decimal Mbps. An alternative to
+ * jspeedtest's {@code SpeedTestSocket}, selected with {@code download.engine=nio}.
+ *
+ * <p>Plain http URLs use a raw HTTP/1.1 GET; https goes through the JDK's TLS stream, still read
+ * into the same direct buffer. Redirects are not followed.
+ */
+public class NioDownloadEngine {
+
+    private static final Logger logger = Logger.getLogger(NioDownloadEngine.class.getName());
+
+    public static final long DEFAULT_SAMPLE_INTERVAL_MILLIS = 100;
+    private static final int BUFFER_BYTES = 256 * 1024;
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+    private static final int INITIAL_SAMPLES = 256;
+
+    private final int timeoutMillis;
+    private final long sampleIntervalNanos;
+
+    public NioDownloadEngine(int timeoutMillis) {
+        this(timeoutMillis, DEFAULT_SAMPLE_INTERVAL_MILLIS);
+    }
+
+    public NioDownloadEngine(int timeoutMillis, long sampleIntervalMillis) {
+        if (timeoutMillis <= 0 || sampleIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Timeout and sample interval must be positive");
+        }
+        this.timeoutMillis = timeoutMillis;
+        this.sampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(sampleIntervalMillis);
+    }
+
+    /**
+     * Downloads with the given number of streams, spread round-robin over the URLs, until every
+     * stream reaches the end of its response, one fails, or the estimator (may be null) says the
+     * result has converged. With an estimator a stream fetches its URL again whenever the response
+     * ends first, so a small test file never cuts the run short of the estimator's budget.
+     * progress receives the aggregate Mbps of every sample interval.
+     */
+    public DownloadTimeSeries run(List<String> urls, int streams, DoubleConsumer progress, ThroughputEstimator estimator) {
+        return run(urls, streams, progress, estimator, null);
+    }
+
+    // Same, but also stops at the test run's deadline or when it is cancelled (testRun may be null)
+    public DownloadTimeSeries run(List<String> urls, int streams, DoubleConsumer progress, ThroughputEstimator estimator,
+                                  TestRun testRun) {
+        AtomicLongArray streamBytes = new AtomicLongArray(streams);
+        AtomicLongArray firstByteNanos = new AtomicLongArray(streams);
+        AtomicLongArray lastByteNanos = new AtomicLongArray(streams);
+        Closeable[] connections = new Closeable[streams];
+        AtomicReference<SpeedTestError> error = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(streams);
+        AtomicBoolean stopping = new AtomicBoolean(false); // Streams closed by the sampler end with an error on purpose
+        Thread[] threads = new Thread[streams];
+        Runnable closeAll = () -> {
+            stopping.set(true);
+            for (int i = 0; i < streams; i++) {
+                closeQuietly(connections, i);
+            }
+        };
+        if (testRun != null) {
+            testRun.onAbort(closeAll); // Unblocks the stream threads right away instead of at the next sample
+        }
+
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < streams; i++) {
+            final int stream = i;
+            final String url = urls.get(i % urls.size());
+            threads[i] = new Thread(() -> {
+                if (testRun != null) {
+                    testRun.bind(); // A fresh thread per run, so there is nothing to restore
+                }
+                try {
+                    long fetched = 0;
+                    do {
+                        fetched += transfer(url, stream, fetched, streamBytes, firstByteNanos, lastByteNanos, connections, stopping);
+                    } while (estimator != null && !stopping.get());
+                } catch (IOException | IllegalArgumentException e) {
+                    if (!stopping.get()) {
+                        logger.log(Level.SEVERE, "Error on NIO download stream " + stream + " from " + url, e);
+                        error.compareAndSet(null, errorOf(e));
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "speedio-nio-download-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+
+        long[] sampleNanos = new long[INITIAL_SAMPLES];
+        long[] sampleBytes = new long[INITIAL_SAMPLES];
+        int samples = 0;
+        long previousNanos = startNanos;
+        long previousBytes = 0;
+        long lastProgressNanos = startNanos;
+        long nextSample = startNanos + sampleIntervalNanos;
+        try {
+            while (true) {
+                boolean finished = done.await(Math.max(0, nextSample - System.nanoTime()), TimeUnit.NANOSECONDS);
+                long now = System.nanoTime();
+                long bytes = sum(streamBytes);
+                if (samples == sampleNanos.length) {
+                    sampleNanos = Arrays.copyOf(sampleNanos, samples * 2);
+                    sampleBytes = Arrays.copyOf(sampleBytes, samples * 2);
+                }
+                sampleNanos[samples] = now - startNanos;
+                sampleBytes[samples] = bytes;
+                samples++;
+                progress.accept(DownloadTimeSeries.mbps(bytes - previousBytes, now - previousNanos));
+
+                if (bytes > previousBytes) {
+                    lastProgressNanos = now;
+                }
+                previousNanos = now;
+                previousBytes = bytes;
+                if (finished || error.get() != null) {
+                    break;
+                }
+                if (testRun != null && testRun.checkDeadline()) {
+                    break;
+                }
+                if (estimator != null && estimator.update(now, bytes)) {
+                    break;
+                }
+                if (now - lastProgressNanos > TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) {
+                    logger.warning("NIO download stalled for " + timeoutMillis + " ms. Stopping.");
+                    error.compareAndSet(null, SpeedTestError.SOCKET_TIMEOUT);
+                    break;
+                }
+                // Stay on the fixed grid; a late wake-up skips ticks instead of drifting
+                do {
+                    nextSample += sampleIntervalNanos;
+                } while (nextSample <= now);
+            }
+        } catch (InterruptedException e) {
+            logger.log(Level.SEVERE, "NIO download interrupted", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            if (testRun != null) {
+                testRun.removeOnAbort(closeAll);
+            }
+            closeAll.run();
+            awaitQuietly(done);
+        }
+
+        long totalBytes = sum(streamBytes);
+        if (estimator != null) {
+            estimator.finish(System.nanoTime(), totalBytes);
+        }
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (int i = 0; i < streams; i++) {
+            if (firstByteNanos.get(i) != 0) {
+                first = Math.min(first, firstByteNanos.get(i));
+                last = Math.max(last, lastByteNanos.get(i));
+            }
+        }
+        long transferNanos = first < last ? last - first : 0;
+        return new DownloadTimeSeries(sampleIntervalNanos, Arrays.copyOf(sampleNanos, samples),
+                Arrays.copyOf(sampleBytes, samples), totalBytes, transferNanos, streams, error.get());
+    }
+
+    // Reads one response to its end and returns its length; earlierBytes are the stream's previous fetches
+    private long transfer(String url, int stream, long earlierBytes, AtomicLongArray streamBytes, AtomicLongArray firstByteNanos,
+                          AtomicLongArray lastByteNanos, Closeable[] connections, AtomicBoolean stopping) throws IOException {
+        URI uri = URI.create(url);
+        String scheme = uri.getScheme();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        ReadableByteChannel channel;
+        long bodyBytes;
+        if ("http".equalsIgnoreCase(scheme)) {
+            SocketChannel socket = SocketChannel.open();
+            setConnection(connections, stream, socket, stopping);
+            long connectNanos = System.nanoTime();
+            socket.socket().connect(new InetSocketAddress(uri.getHost(), uri.getPort() > 0 ? uri.getPort() : 80), timeoutMillis);
+            SpeedioMetrics.DOWNLOAD_CONNECT.observeNanos(System.nanoTime() - connectNanos);
+            writeRequest(socket, uri);
+            channel = socket;
+            bodyBytes = readResponseHead(socket, buffer);
+        } else if ("https".equalsIgnoreCase(scheme)) {
+            HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            connection.setInstanceFollowRedirects(false);
+            setConnection(connections, stream, connection::disconnect, stopping);
+            int status = connection.getResponseCode();
+            if (status / 100 != 2) {
+                throw new HttpStatusException(status);
+            }
+            channel = Channels.newChannel(connection.getInputStream());
+            setConnection(connections, stream, channel, stopping);
+            bodyBytes = 0;
+        } else {
+            throw new MalformedURLException("Unsupported protocol: " + url);
+        }
+
+        long total = 0;
+        try (ReadableByteChannel body = channel) {
+            if (bodyBytes > 0) {
+                total = bodyBytes;
+                countBytes(stream, earlierBytes + total, streamBytes, firstByteNanos, lastByteNanos);
+            }
+            while (true) {
+                buffer.clear();
+                int read = body.read(buffer);
+                if (read < 0) {
+                    return total;
+                }
+                total += read;
+                countBytes(stream, earlierBytes + total, streamBytes, firstByteNanos, lastByteNanos);
+            }
+        }
+    }
+
+    private static void countBytes(int stream, long total, AtomicLongArray streamBytes, AtomicLongArray firstByteNanos,
+                                   AtomicLongArray lastByteNanos) {
+        long now = System.nanoTime();
+        if (firstByteNanos.get(stream) == 0) {
+            firstByteNanos.set(stream, now);
+        }
+        lastByteNanos.lazySet(stream, now);
+        streamBytes.lazySet(stream, total); // Only this stream's thread writes its slot
+    }
+
+    // Connection: close lets the body end at EOF without parsing Content-Length or chunk sizes
+    private static void writeRequest(SocketChannel socket, URI uri) throws IOException {
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+        String host = uri.getPort() > 0 ? uri.getHost() + ":" + uri.getPort() : uri.getHost();
+        ByteBuffer request = ByteBuffer.wrap(("GET " + path + " HTTP/1.1\r\nHost: " + host
+                + "\r\nUser-Agent: speedio\r\nAccept-Encoding: identity\r\nConnection: close\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        while (request.hasRemaining()) {
+            socket.write(request);
+        }
+    }
+
+    // Reads up to the end of the response headers and returns how many body bytes came with them
+    private static long readResponseHead(SocketChannel socket, ByteBuffer buffer) throws IOException {
+        byte[] head = new byte[MAX_HEADER_BYTES];
+        int headLength = 0;
+        while (true) {
+            buffer.clear();
+            int read = socket.read(buffer);
+            if (read < 0) {
+                throw new EOFException("Connection closed before the response headers");
+            }
+            buffer.flip();
+            int copied = Math.min(read, head.length - headLength);
+            buffer.get(head, headLength, copied);
+            int searchFrom = Math.max(0, headLength - 3);
+            headLength += copied;
+            int end = headerEnd(head, searchFrom, headLength);
+            if (end >= 0) {
+                checkStatus(head, end);
+                return (headLength - end) + (read - copied);
+            }
+            if (headLength == head.length) {
+                throw new IOException("Response headers longer than " + MAX_HEADER_BYTES + " bytes");
+            }
+        }
+    }
+
+    private static int headerEnd(byte[] head, int from, int to) {
+        for (int i = from; i + 3 < to; i++) {
+            if (head[i] == '\r' && head[i + 1] == '\n' && head[i + 2] == '\r' && head[i + 3] == '\n') {
+                return i + 4;
+            }
+        }
+        return -1;
+    }
+
+    private static void checkStatus(byte[] head, int length) throws IOException {
+        String statusLine = new String(head, 0, length, StandardCharsets.US_ASCII).split("\r\n", 2)[0];
+        String[] parts = statusLine.split(" ", 3);
+        if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+            throw new IOException("Invalid HTTP response: " + statusLine);
+        }
+        int status;
+        try {
+            status = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid HTTP response: " + statusLine, e);
+        }
+        if (status / 100 != 2) {
+            throw new HttpStatusException(status);
+        }
+    }
+
+    private static SpeedTestError errorOf(Exception e) {
+        if (e instanceof SocketTimeoutException) {
+            return SpeedTestError.SOCKET_TIMEOUT;
+        }
+        if (e instanceof HttpStatusException) {
+            return SpeedTestError.INVALID_HTTP_RESPONSE;
+        }
+        if (e instanceof UnknownHostException || e instanceof ConnectException) {
+            return SpeedTestError.CONNECTION_ERROR;
+        }
+        if (e instanceof MalformedURLException) {
+            return SpeedTestError.UNSUPPORTED_PROTOCOL;
+        }
+        if (e instanceof IllegalArgumentException) {
+            return SpeedTestError.MALFORMED_URI;
+        }
+        return SpeedTestError.SOCKET_ERROR;
+    }
+
+    // A stream that connects after the run was stopped closes its own connection
+    private static void setConnection(Closeable[] connections, int stream, Closeable connection, AtomicBoolean stopping) {
+        synchronized (connections) {
+            connections[stream] = connection;
+        }
+        if (stopping.get()) {
+            closeQuietly(connections, stream);
+        }
+    }
+
+    private static void closeQuietly(Closeable[] connections, int stream) {
+        Closeable connection;
+        synchronized (connections) {
+            connection = connections[stream];
+        }
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Error while closing download stream " + stream, e);
+        }
+    }
+
+    private void awaitQuietly(CountDownLatch done) {
+        try {
+            if (!done.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.warning("NIO download streams did not stop within " + timeoutMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long sum(AtomicLongArray values) {
+        long total = 0;
+        for (int i = 0; i < values.length(); i++) {
+            total += values.get(i);
+        }
+        return total;
+    }
+
+    private static final class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        HttpStatusException(int status) {
+            super("HTTP status " + status);
+        }
+    }
+}
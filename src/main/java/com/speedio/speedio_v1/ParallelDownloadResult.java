@@ -0,0 +1,42 @@
+package com.speedio.speedio_v1;
+
+import java.util.Arrays;
+
+/**
+ * Outcome of a multi-stream download test: the throughput of all streams summed over the
+ * window in which every stream was transferring, plus the rate each stream reported on its own.
+ */
+public class ParallelDownloadResult {
+
+    private final double aggregateMbps;
+    private final double[] perStreamMbps;
+    private final double windowSeconds;
+
+    public ParallelDownloadResult(double aggregateMbps, double[] perStreamMbps, double windowSeconds) {
+        this.aggregateMbps = aggregateMbps;
+        this.perStreamMbps = perStreamMbps.clone();
+        this.windowSeconds = windowSeconds;
+    }
+
+    public double getAggregateMbps() {
+        return aggregateMbps;
+    }
+
+    public double[] getPerStreamMbps() {
+        return perStreamMbps.clone();
+    }
+
+    public int getStreamCount() {
+        return perStreamMbps.length;
+    }
+
+    public double getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.2f Mbps over %d streams %s (window %.2f s)",
+                aggregateMbps, perStreamMbps.length, Arrays.toString(perStreamMbps), windowSeconds);
+    }
+}
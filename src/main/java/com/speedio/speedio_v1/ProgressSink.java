@@ -0,0 +1,114 @@
+package com.speedio.speedio_v1;
+
+import javafx.animation.AnimationTimer;
+import javafx.collections.ObservableList;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.Label;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bridges high-rate progress callbacks to the JavaFX thread. Measurement threads only overwrite an
+ * atomic slot holding the latest Mbps value; an {@link AnimationTimer} picks it up once per frame,
+ * updates the label, and appends at most one point every {@value #CHART_SAMPLE_NANOS} ns to a
+ * fixed-size ring that backs the chart. The FX thread does the same amount of work per frame no
+ * matter how many progress events arrive.
+ */
+public class ProgressSink extends AnimationTimer {
+
+    private static final long EMPTY = Double.doubleToRawLongBits(Double.NaN);
+    private static final long CHART_SAMPLE_NANOS = 100_000_000L; // One chart point per 100 ms
+
+    private final Label speedLabel;
+    private final XYChart.Series<Number, Number> series = new XYChart.Series<>();
+    private final ThroughputRingBuffer samples;
+    private final AtomicLong latest = new AtomicLong(EMPTY);
+    private final AtomicReference<String> result = new AtomicReference<>();
+    private final AtomicBoolean resetRequested = new AtomicBoolean(false);
+    private final AtomicBoolean finished = new AtomicBoolean(false); // A result is up; progress waits for reset()
+    private long testStartNanos = -1;
+    private long lastSampleNanos;
+    private boolean chartDirty;
+
+    public ProgressSink(Label speedLabel, LineChart<Number, Number> chart, int chartCapacity) {
+        this.speedLabel = speedLabel;
+        this.samples = new ThroughputRingBuffer(chartCapacity);
+        chart.getData().add(series);
+    }
+
+    // Called from any thread; never blocks and never allocates. Ignored once a result is published
+    public void publish(double mbps) {
+        if (!finished.get()) {
+            latest.set(Double.doubleToRawLongBits(mbps));
+        }
+    }
+
+    // Final text for the label; a late progress value cannot replace it until the next reset()
+    public void publishResult(String text) {
+        finished.set(true);
+        latest.set(EMPTY);
+        result.set(text);
+    }
+
+    // Clears the chart before the next test; called from any thread
+    public void reset() {
+        finished.set(false);
+        resetRequested.set(true);
+    }
+
+    @Override
+    public void handle(long now) {
+        if (resetRequested.getAndSet(false)) {
+            samples.clear();
+            testStartNanos = -1;
+            chartDirty = true;
+        }
+
+        long bits = latest.getAndSet(EMPTY);
+        if (bits != EMPTY && !finished.get()) { // Drops a value that raced past publishResult
+            double mbps = Double.longBitsToDouble(bits);
+            speedLabel.setText(String.format("%.2f Mbps", mbps));
+            if (testStartNanos < 0) {
+                testStartNanos = now;
+                lastSampleNanos = now - CHART_SAMPLE_NANOS;
+            }
+            if (now - lastSampleNanos >= CHART_SAMPLE_NANOS) {
+                samples.add(now, mbps);
+                lastSampleNanos = now;
+                chartDirty = true;
+            }
+        }
+
+        String text = result.getAndSet(null);
+        if (text != null) {
+            speedLabel.setText(text);
+        }
+
+        if (chartDirty) {
+            renderChart();
+            chartDirty = false;
+        }
+    }
+
+    // Reuses the existing data points, so the chart never holds more than the ring capacity
+    private void renderChart() {
+        ObservableList<XYChart.Data<Number, Number>> data = series.getData();
+        int size = samples.size();
+        if (data.size() > size) {
+            data.remove(size, data.size());
+        }
+        for (int i = 0; i < size; i++) {
+            double seconds = (samples.timeAt(i) - testStartNanos) / 1_000_000_000.0;
+            if (i < data.size()) {
+                XYChart.Data<Number, Number> point = data.get(i);
+                point.setXValue(seconds);
+                point.setYValue(samples.valueAt(i));
+            } else {
+                data.add(new XYChart.Data<>(seconds, samples.valueAt(i)));
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.speedio.speedio_v1;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Central end of {@link ResultShipper}: accepts measurement batches at {@code POST /ingest} on the
+ * JDK's HTTP server, in the binary or the JSON format of {@link BatchCodec}, and hands each batch
+ * to a {@link BatchSink}. A batch is only acknowledged after the sink took it, so an agent
+ * re-sends anything that was lost on the way. Retried batches the collector already ingested are
+ * recognized by their id and acknowledged without being passed on again.
+ *
+ * <p>Requests are handled on a fixed pool of daemon threads with keep-alive connections; decoding a
+ * batch is a single pass over a byte array, so one collector keeps up with thousands of agents.
+ */
+public class ResultCollector {
+
+    private static final Logger logger = Logger.getLogger(ResultCollector.class.getName());
+
+    public static final String PATH = "/ingest";
+    private static final int BACKLOG = 1024;
+    private static final int MAX_BODY_BYTES = 16 * 1024 * 1024;
+    private static final int RECENT_BATCHES_PER_AGENT = 1024; // Covers a long outage's worth of spooled batches
+
+    /**
+     * Receives every ingested batch once. Throwing makes the collector answer 500, so the agent
+     * keeps the batch and sends it again.
+     */
+    public interface BatchSink {
+        void accept(MeasurementBatch batch) throws IOException;
+    }
+
+    private final InetSocketAddress bindAddress;
+    private final int threads;
+    private final BatchSink sink;
+    private final Map<String, RecentBatches> recentBatches = new ConcurrentHashMap<>();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public ResultCollector(InetSocketAddress bindAddress, int threads, BatchSink sink) {
+        this.bindAddress = bindAddress;
+        this.threads = threads;
+        this.sink = sink;
+    }
+
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "speedio-collector-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(bindAddress, BACKLOG);
+        server.createContext(PATH, this::handle);
+        server.setExecutor(executor);
+        server.start();
+        logger.info("Collecting measurements at " + getIngestUrl() + " with " + threads + " threads");
+    }
+
+    public synchronized void shutdown() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+    }
+
+    public synchronized int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public synchronized String getIngestUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + getPort() + PATH;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                exchange.sendResponseHeaders(413, -1);
+                return;
+            }
+            MeasurementBatch batch;
+            try {
+                batch = BatchCodec.decode(body, exchange.getRequestHeaders().getFirst("Content-Type"));
+            } catch (IOException e) {
+                logger.fine(() -> "Rejected batch from " + exchange.getRemoteAddress() + ": " + e.getMessage());
+                SpeedioMetrics.recordError("COLLECTOR_BAD_BATCH");
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            RecentBatches recent = recentBatches.computeIfAbsent(batch.getAgentId(), agent -> new RecentBatches());
+            if (recent.contains(batch.getBatchId())) {
+                SpeedioMetrics.COLLECTED_DUPLICATES.increment();
+                exchange.sendResponseHeaders(204, -1);
+                return;
+            }
+            try {
+                sink.accept(batch);
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.WARNING, "Could not ingest " + batch, e);
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            recent.add(batch.getBatchId());
+            SpeedioMetrics.COLLECTED_BATCHES.increment();
+            SpeedioMetrics.COLLECTED_MEASUREMENTS.add(batch.size());
+            exchange.sendResponseHeaders(204, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Null when the body reaches MAX_BODY_BYTES
+    private static byte[] readBody(InputStream in) throws IOException {
+        byte[] body = new byte[8192];
+        int length = 0;
+        int read;
+        while ((read = in.read(body, length, body.length - length)) > 0) {
+            length += read;
+            if (length == body.length) {
+                if (length >= MAX_BODY_BYTES) {
+                    return null;
+                }
+                body = Arrays.copyOf(body, Math.min(body.length * 2, MAX_BODY_BYTES + 1));
+            }
+        }
+        return Arrays.copyOf(body, length);
+    }
+
+    // The last batch ids seen from one agent, oldest evicted first
+    private static final class RecentBatches {
+        private final Map<Long, Boolean> ids = new LinkedHashMap<>(64, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                return size() > RECENT_BATCHES_PER_AGENT;
+            }
+        };
+
+        synchronized boolean contains(long batchId) {
+            return ids.containsKey(batchId);
+        }
+
+        synchronized void add(long batchId) {
+            ids.put(batchId, Boolean.TRUE);
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.speedio.speedio_v1;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pushes this agent's measurements to a central {@link ResultCollector}. {@link #ship} only puts
+ * the measurement into a bounded queue; one daemon thread sends a batch once it holds
+ * {@code batchSize} measurements or {@code batchMillis} after its first one.
+ *
+ * <p>Delivery is at-least-once. A batch the collector did not acknowledge is written to the spool
+ * directory and retried, oldest first, with exponential backoff; while anything is spooled new
+ * batches queue up behind it, so the collector sees them in order. Batches still queued at shutdown
+ * are spooled and sent by the next start. The spool is capped at {@code maxSpoolBytes}; beyond
+ * that the oldest batches are dropped.
+ */
+public class ResultShipper implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ResultShipper.class.getName());
+
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final long POLL_MILLIS = 1000;
+    private static final long MIN_RETRY_MILLIS = 5000;
+    private static final long MAX_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final String BINARY_SUFFIX = ".bin";
+    private static final String JSON_SUFFIX = ".json";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final URI collectorUri;
+    private final String agentId;
+    private final Path spoolDir;
+    private final int batchSize;
+    private final long batchMillis;
+    private final boolean json;
+    private final long maxSpoolBytes;
+    private final BlockingQueue<Measurement> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicInteger spooledBatches = new AtomicInteger();
+    private Thread shipperThread;
+    private volatile boolean closed;
+
+    // Only touched by the shipper thread
+    private long retryAtNanos;
+    private long retryMillis = MIN_RETRY_MILLIS;
+    private boolean collectorDown;
+
+    public ResultShipper(URI collectorUri, String agentId, Path spoolDir, int batchSize, long batchMillis, boolean json,
+                         long maxSpoolBytes) {
+        if (batchSize <= 0 || batchSize > BatchCodec.MAX_RECORDS || batchMillis <= 0) {
+            throw new IllegalArgumentException("Invalid batching: " + batchSize + " measurements or " + batchMillis + " ms");
+        }
+        this.collectorUri = collectorUri;
+        this.agentId = agentId;
+        this.spoolDir = spoolDir;
+        this.batchSize = batchSize;
+        this.batchMillis = batchMillis;
+        this.json = json;
+        this.maxSpoolBytes = maxSpoolBytes;
+    }
+
+    public static ResultShipper fromConfig(MonitorConfig config) {
+        return new ResultShipper(URI.create(config.getShipUrl()), config.getShipAgentId(), config.getShipSpoolDir(),
+                config.getShipBatchSize(), config.getShipBatchMillis(), config.isShipJson(), config.getShipSpoolMaxBytes());
+    }
+
+    // The host name, or "agent" when it cannot be resolved
+    public static String defaultAgentId() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            return "agent";
+        }
+    }
+
+    public synchronized void start() throws IOException {
+        if (shipperThread != null) {
+            return;
+        }
+        Files.createDirectories(spoolDir);
+        List<Path> spooled = listSpool();
+        spooledBatches.set(spooled.size());
+        SpeedioMetrics.SHIP_SPOOLED_BATCHES.set(spooled.size());
+        if (!spooled.isEmpty()) {
+            logger.info(spooled.size() + " spooled measurement batches will be sent to " + collectorUri);
+        }
+        shipperThread = new Thread(this::shipLoop, "speedio-shipper");
+        shipperThread.setDaemon(true);
+        shipperThread.start();
+        logger.info("Shipping measurements as " + agentId + " to " + collectorUri);
+    }
+
+    /**
+     * Queues a measurement and returns immediately. If the queue is full, e.g. because the
+     * collector is hanging, the measurement is spooled on the calling thread instead.
+     */
+    public void ship(Measurement measurement) {
+        if (closed) {
+            return;
+        }
+        if (!queue.offer(measurement)) {
+            logger.warning("Shipping queue is full. Spooling measurement directly.");
+            spool(newBatch(List.of(measurement)));
+        }
+    }
+
+    // Spools whatever has not been sent yet
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            closed = true;
+            thread = shipperThread;
+            shipperThread = null;
+        }
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public URI getCollectorUri() {
+        return collectorUri;
+    }
+
+    private void shipLoop() {
+        List<Measurement> pending = new ArrayList<>(batchSize);
+        MeasurementBatch unsent = null;
+        try {
+            while (!closed) {
+                collect(pending);
+                if (!pending.isEmpty()) {
+                    unsent = newBatch(pending);
+                    pending.clear();
+                    // Behind spooled batches or during backoff, the new one waits its turn on disk
+                    if (spooledBatches.get() > 0 || isBackingOff()
+                            || !deliver(encode(unsent), contentType(json), unsent.size())) {
+                        spool(unsent);
+                    }
+                    unsent = null;
+                }
+                sendSpooled();
+            }
+        } catch (InterruptedException e) {
+            // Closing; fall through and keep what is left
+        }
+        if (unsent != null) {
+            spool(unsent); // Same batch id, in case the collector got it after all
+        }
+        queue.drainTo(pending);
+        if (!pending.isEmpty()) {
+            spool(newBatch(pending));
+        }
+        logger.info("Measurement shipper stopped with " + spooledBatches.get() + " batches spooled");
+    }
+
+    // Waits for a first measurement, then gathers more until the batch is full or batchMillis have passed
+    private void collect(List<Measurement> pending) throws InterruptedException {
+        Measurement first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        pending.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchMillis);
+        while (pending.size() < batchSize) {
+            queue.drainTo(pending, batchSize - pending.size());
+            long remaining = deadline - System.nanoTime();
+            if (pending.size() >= batchSize || remaining <= 0) {
+                return;
+            }
+            Measurement next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            pending.add(next);
+        }
+    }
+
+    private void sendSpooled() throws InterruptedException {
+        if (spooledBatches.get() == 0 || isBackingOff()) {
+            return;
+        }
+        for (Path file : listSpool()) {
+            byte[] body;
+            try (InputStream in = new FileInputStream(file.toFile())) {
+                body = in.readAllBytes();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not read spooled batch " + file + ". Dropping it.", e);
+                deleteSpooled(file);
+                continue;
+            }
+            String contentType = contentType(file.getFileName().toString().endsWith(JSON_SUFFIX));
+            int measurements;
+            try {
+                measurements = BatchCodec.decode(body, contentType).size(); // Counted once acknowledged
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Spooled batch " + file + " is corrupt. Dropping it.", e);
+                deleteSpooled(file);
+                continue;
+            }
+            if (!deliver(body, contentType, measurements)) {
+                return; // Still down; keep the rest in order for the next attempt
+            }
+            deleteSpooled(file);
+            if (closed) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sends one encoded batch. Returns true once the batch is done with: acknowledged, or rejected
+     * as malformed, which no retry can fix. Returns false when it should be tried again later.
+     */
+    private boolean deliver(byte[] body, String contentType, int measurements) throws InterruptedException {
+        if (body == null) {
+            return true;
+        }
+        HttpRequest request = HttpRequest.newBuilder(collectorUri)
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        String failure;
+        try {
+            HttpResponse<Void> response = HttpClientPool.send(request, HttpResponse.BodyHandlers.discarding());
+            int status = response.statusCode();
+            if (status / 100 == 2) {
+                if (collectorDown) {
+                    logger.info("Collector " + collectorUri + " is reachable again");
+                }
+                collectorDown = false;
+                retryAtNanos = 0;
+                retryMillis = MIN_RETRY_MILLIS;
+                if (measurements > 0) {
+                    SpeedioMetrics.SHIPPED_MEASUREMENTS.add(measurements);
+                }
+                return true;
+            }
+            if (status >= 400 && status < 500 && status != 408 && status != 429) {
+                logger.severe("Collector " + collectorUri + " rejected a batch with status " + status + ". Dropping it.");
+                SpeedioMetrics.recordError("SHIP_REJECTED");
+                return true;
+            }
+            failure = "status " + status;
+        } catch (IOException e) {
+            failure = e.toString();
+        }
+        SpeedioMetrics.recordError("SHIP_FAILED");
+        if (!collectorDown) {
+            logger.warning("Could not ship measurements to " + collectorUri + " (" + failure + "). Spooling until it is back.");
+        }
+        collectorDown = true;
+        retryAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryMillis);
+        retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+        return false;
+    }
+
+    private boolean isBackingOff() {
+        return retryAtNanos != 0 && System.nanoTime() < retryAtNanos;
+    }
+
+    private MeasurementBatch newBatch(List<Measurement> measurements) {
+        return new MeasurementBatch(agentId, ThreadLocalRandom.current().nextLong(), measurements);
+    }
+
+    private byte[] encode(MeasurementBatch batch) {
+        try {
+            return BatchCodec.encode(batch, json);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not encode " + batch + ". Dropping it.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Written under a temporary name and renamed, so a crash never leaves half a batch to be sent.
+     * Plain file streams, unlike NIO channels, are not closed by the interrupt that stops the
+     * shipper, so spooling at shutdown still works.
+     */
+    private synchronized void spool(MeasurementBatch batch) {
+        byte[] body = encode(batch);
+        if (body == null) {
+            return;
+        }
+        String name = String.format("%013d-%016x%s", System.currentTimeMillis(), batch.getBatchId(),
+                json ? JSON_SUFFIX : BINARY_SUFFIX);
+        Path file = spoolDir.resolve(name);
+        Path temp = spoolDir.resolve(name + TEMP_SUFFIX);
+        try {
+            try (OutputStream out = new FileOutputStream(temp.toFile())) {
+                out.write(body);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            SpeedioMetrics.SHIP_SPOOLED_BATCHES.set(spooledBatches.incrementAndGet());
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not spool " + batch + ". Its measurements are lost.", e);
+            return;
+        }
+        enforceSpoolLimit();
+    }
+
+    private void enforceSpoolLimit() {
+        List<Path> files = listSpool();
+        long total = 0;
+        long[] sizes = new long[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                sizes[i] = Files.size(files.get(i));
+            } catch (IOException e) {
+                sizes[i] = 0; // Already sent and deleted
+            }
+            total += sizes[i];
+        }
+        for (int i = 0; i < files.size() - 1 && total > maxSpoolBytes; i++) { // Always keep the newest
+            logger.warning("Measurement spool is over " + maxSpoolBytes + " bytes. Dropping oldest batch " + files.get(i));
+            SpeedioMetrics.recordError("SHIP_SPOOL_FULL");
+            deleteSpooled(files.get(i));
+            total -= sizes[i];
+        }
+    }
+
+    private void deleteSpooled(Path file) {
+        try {
+            if (Files.deleteIfExists(file)) {
+                SpeedioMetrics.SHIP_SPOOLED_BATCHES.set(spooledBatches.decrementAndGet());
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not delete spooled batch " + file, e);
+        }
+    }
+
+    // Oldest first: names start with the zero-padded spool time
+    private List<Path> listSpool() {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(spoolDir,
+                "*{" + BINARY_SUFFIX + "," + JSON_SUFFIX + "}")) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not list the measurement spool " + spoolDir, e);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static String contentType(boolean json) {
+        return json ? BatchCodec.JSON_TYPE : BatchCodec.BINARY_TYPE;
+    }
+}
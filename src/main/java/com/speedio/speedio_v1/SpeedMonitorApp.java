@@ -7,16 +7,27 @@ import javafx.scene.Scene;
 import javafx.stage.Stage;
 
 public class SpeedMonitorApp extends Application {
+    private SpeedMonitorController controller;
+
     @Override
     public void start(Stage primaryStage) throws Exception {
         LoggingConfig.configureLogging(); // Configure logging
 
-        Parent root = FXMLLoader.load(getClass().getResource("/speed_monitor.fxml"));
+        FXMLLoader loader = new FXMLLoader(getClass().getResource("/speed_monitor.fxml"));
+        Parent root = loader.load();
+        controller = loader.getController();
         primaryStage.setTitle("Internet Speed Monitor");
         primaryStage.setScene(new Scene(root));
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        if (controller != null) {
+            controller.shutdown(); // Stop scheduled tests before the JVM exits
+        }
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -2,15 +2,16 @@ package com.speedio.speedio_v1;
 
 import javafx.application.Platform;
 import javafx.fxml.FXML;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 import javafx.stage.Stage;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Properties;
 import java.util.logging.Logger;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.ButtonType;
@@ -19,47 +20,108 @@ public class SpeedMonitorController {
 
     private static final Logger logger = Logger.getLogger(SpeedMonitorController.class.getName());
 
+    private static final int CHART_POINTS = 300; // 30 s of throughput at one point per 100 ms
+
     @FXML
     private Label downloadSpeedLabel;
     @FXML
+    private Label statsLabel;
+    @FXML
+    private LineChart<Number, Number> throughputChart;
+    @FXML
     private TextField emailField;
     @FXML
     private TextField thresholdField;
     @FXML
+    private TextField intervalField;
+    @FXML
     private Button retryDownloadButton;
     @FXML
     private Button startMonitoringButton;
+    @FXML
+    private LineChart<Number, Number> historyChart;
+    @FXML
+    private NumberAxis historyTimeAxis;
+    @FXML
+    private ComboBox<TrendRange> historyRangeBox;
+    @FXML
+    private Label historySummaryLabel;
 
-    private DownloadSpeedCheckHandler downloadSpeedCheckHandler;
-    private final AtomicBoolean emailSent = new AtomicBoolean(false);
+    private MonitoringService monitoringService;
+    private ProgressSink progressSink;
+    private TrendChart trendChart;
 
     @FXML
     private void initialize() {
+        progressSink = new ProgressSink(downloadSpeedLabel, throughputChart, CHART_POINTS);
+        progressSink.start();
+        monitoringService = new MonitoringService(readConfig(), new MonitoringListener() {
+            @Override
+            public void onTestStarted(Direction direction) {
+                if (direction == Direction.DOWNLOAD) {
+                    progressSink.reset(); // Each test starts with an empty live chart
+                }
+            }
+
+            @Override
+            public void onProgress(Direction direction, double mbps) {
+                progressSink.publish(mbps);
+            }
+
+            @Override
+            public void onResult(Direction direction, String formattedSpeed) {
+                if (direction == Direction.DOWNLOAD) {
+                    progressSink.publishResult(formattedSpeed);
+                }
+            }
+
+            @Override
+            public void onMeasurement(Measurement measurement) {
+                if (measurement.getDirection() == Direction.DOWNLOAD) {
+                    showStatistics();
+                }
+                trendChart.refresh();
+            }
+        });
+        trendChart = new TrendChart(historyChart, historyTimeAxis, historySummaryLabel, monitoringService.getMeasurementStore());
+        historyRangeBox.getItems().setAll(TrendRange.values());
+        historyRangeBox.setValue(trendChart.getRange());
+        trendChart.refresh();
         startDownloadSpeedCheck();
     }
 
-    private void initializeDownloadSpeedCheckHandler() {
-        String thresholdText = thresholdField.getText();
-        double threshold = 0.0;
+    @FXML
+    private void changeHistoryRange() {
+        TrendRange range = historyRangeBox.getValue();
+        if (range != null && range != trendChart.getRange()) {
+            trendChart.setRange(range);
+        }
+    }
 
-        logger.info("Threshold field raw value: " + thresholdText);
+    @FXML
+    private void refreshHistory() {
+        trendChart.refresh();
+    }
 
-        try {
-            threshold = Double.parseDouble(thresholdText);
-            logger.info("Parsed threshold: " + threshold);
-        } catch (NumberFormatException e) {
-            logger.warning("Invalid threshold value. Using default threshold.");
-        }
+    // The form fields map onto the same keys the headless daemon reads from its config file
+    private MonitorConfig readConfig() {
+        Properties properties = new Properties();
+        properties.setProperty(MonitorConfig.EMAIL, textOf(emailField));
+        properties.setProperty(MonitorConfig.THRESHOLD, textOf(thresholdField));
+        properties.setProperty(MonitorConfig.INTERVAL_MINUTES, textOf(intervalField));
+        logger.info("Threshold field raw value: " + thresholdField.getText());
+        return new MonitorConfig(properties);
+    }
 
-        // Initialize the handler with the complete action only.
-        downloadSpeedCheckHandler = new DownloadSpeedCheckHandler(speed -> {
-            Platform.runLater(() -> downloadSpeedLabel.setText(speed));
-        }, threshold, () -> {
-            // After the test is completed, check if speed is below the threshold.
-            if (downloadSpeedCheckHandler.isSpeedBelowThreshold() && emailSent.compareAndSet(false, true)) {
-                sendAlertEmail(downloadSpeedLabel.getText());  // Pass the current speed to the email
-            }
-        });
+    private static String textOf(TextField field) {
+        String text = field.getText();
+        return text == null ? "" : text;
+    }
+
+    private void showStatistics() {
+        StatsSnapshot lastHour = monitoringService.getDownloadStatistics()
+                .snapshot(SpeedStatistics.Window.ONE_HOUR, System.currentTimeMillis());
+        Platform.runLater(() -> statsLabel.setText(lastHour.toString()));
     }
 
     @FXML
@@ -77,7 +139,7 @@ public class SpeedMonitorController {
 
         alert.showAndWait().ifPresent(response -> {
             if (response == ButtonType.OK) {
-                startDownloadSpeedCheck();
+                scheduleDownloadSpeedChecks();
                 minimizeWindow();
             }
         });
@@ -90,10 +152,22 @@ public class SpeedMonitorController {
 
     private void startDownloadSpeedCheck() {
         logger.info("Starting download speed check...");
-        emailSent.set(false);
 
-        initializeDownloadSpeedCheckHandler();
-        downloadSpeedCheckHandler.startSpeedTest();
+        monitoringService.configure(readConfig());
+        if (!monitoringService.runDownloadNow()) {
+            progressSink.publishResult("Test could not be started");
+        }
+    }
+
+    private void scheduleDownloadSpeedChecks() {
+        monitoringService.configure(readConfig());
+        monitoringService.start();
+    }
+
+    public void shutdown() {
+        progressSink.stop();
+        trendChart.shutdown();
+        monitoringService.shutdown();
     }
 
     @FXML
@@ -101,32 +175,4 @@ public class SpeedMonitorController {
         logger.info("Retrying download speed check...");
         startDownloadSpeedCheck();
     }
-
-    private void sendAlertEmail(String currentSpeed) {
-        String email = emailField.getText();
-        String threshold = thresholdField.getText();
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-
-        if (email != null && !email.isEmpty()) {
-            String subject = "Sysmonitor.io - Internet download Speed Alert";
-            String body = String.format(
-                    "Dear User,%n%n" +
-                            "We have detected that your internet d  ownload speed has fallen below the specified threshold.%n%n" +
-                            "Details:%n" +
-                            "------------------------------------%n" +
-                            "Timestamp: %s%n" +
-                            "Threshold: %s Mbps%n" +
-                            "Current Speed: %s %n%n" +
-                            "This may affect your online experience, including streaming, downloading, and other activities that rely on a stable internet connection.%n%n" +
-                            "We recommend checking your network or contacting your internet service provider if the issue persists.%n%n" +
-                            "Best regards,%n" +
-                            "The Sysmonitor.io Team"
-                    , timestamp, threshold, currentSpeed);
-
-            EmailAlertSender.sendEmailAlert(email, subject, body);
-            logger.info("Alert email sent to " + email);
-        } else {
-            logger.warning("Email address is empty. Cannot send alert email.");
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,259 @@
+package com.speedio.speedio_v1;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Constant-memory streaming statistics over speed samples: an EWMA, a ring of the most recent
+ * samples for count-based rules, and sliding time windows built from fixed log-scale histograms.
+ * Each window is split into {@value #SLICES_PER_WINDOW} slices that are reset as time moves past
+ * them, so recording a sample never allocates.
+ */
+public class SpeedStatistics {
+
+    public enum Window {
+        FIFTEEN_MINUTES(TimeUnit.MINUTES.toMillis(15)),
+        ONE_HOUR(TimeUnit.HOURS.toMillis(1)),
+        ONE_DAY(TimeUnit.DAYS.toMillis(1));
+
+        private final long millis;
+
+        Window(long millis) {
+            this.millis = millis;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+    }
+
+    private static final int SLICES_PER_WINDOW = 15;
+    private static final double MIN_MBPS = 0.01; // Everything below lands in bucket 0
+    private static final int BUCKETS_PER_DECADE = 20; // ~12% wide buckets
+    private static final int DECADES = 7; // 0.01 Mbps .. 100 Gbps
+    private static final int BUCKETS = 1 + BUCKETS_PER_DECADE * DECADES;
+    private static final int DEFAULT_RECENT_SAMPLES = 256;
+    private static final double DEFAULT_EWMA_ALPHA = 0.3;
+
+    private final double ewmaAlpha;
+    private final WindowHistogram[] windows;
+    private final double[] recentSamples;
+    private final double[] sortScratch;
+    private final long[] mergedCounts = new long[BUCKETS];
+    private int recentHead;
+    private int recentCount;
+    private long sampleCount;
+    private double ewma = Double.NaN;
+    private double lastSample = Double.NaN;
+
+    public SpeedStatistics() {
+        this(DEFAULT_RECENT_SAMPLES, DEFAULT_EWMA_ALPHA);
+    }
+
+    public SpeedStatistics(int recentSampleCapacity, double ewmaAlpha) {
+        if (recentSampleCapacity <= 0) {
+            throw new IllegalArgumentException("Recent sample capacity must be positive: " + recentSampleCapacity);
+        }
+        if (ewmaAlpha <= 0 || ewmaAlpha > 1) {
+            throw new IllegalArgumentException("EWMA alpha must be in (0, 1]: " + ewmaAlpha);
+        }
+        this.ewmaAlpha = ewmaAlpha;
+        this.recentSamples = new double[recentSampleCapacity];
+        this.sortScratch = new double[recentSampleCapacity];
+        this.windows = new WindowHistogram[Window.values().length];
+        for (Window window : Window.values()) {
+            windows[window.ordinal()] = new WindowHistogram(window.getMillis() / SLICES_PER_WINDOW);
+        }
+    }
+
+    public synchronized void record(long timestampMillis, double mbps) {
+        ewma = Double.isNaN(ewma) ? mbps : ewmaAlpha * mbps + (1 - ewmaAlpha) * ewma;
+        lastSample = mbps;
+        sampleCount++;
+
+        recentSamples[recentHead] = mbps;
+        recentHead = (recentHead + 1) % recentSamples.length;
+        if (recentCount < recentSamples.length) {
+            recentCount++;
+        }
+
+        int bucket = bucketOf(mbps);
+        for (WindowHistogram window : windows) {
+            window.record(timestampMillis, mbps, bucket);
+        }
+    }
+
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    public synchronized double getLastSample() {
+        return lastSample;
+    }
+
+    public synchronized double getEwma() {
+        return ewma;
+    }
+
+    // How many of the last m samples (or fewer, if fewer were recorded) are below the threshold
+    public synchronized int countBelow(double threshold, int m) {
+        int n = Math.min(m, recentCount);
+        int below = 0;
+        for (int i = 1; i <= n; i++) {
+            if (recentSample(i) < threshold) {
+                below++;
+            }
+        }
+        return below;
+    }
+
+    // Same for samples above the threshold, for metrics where higher is worse such as latency
+    public synchronized int countAbove(double threshold, int m) {
+        int n = Math.min(m, recentCount);
+        int above = 0;
+        for (int i = 1; i <= n; i++) {
+            if (recentSample(i) > threshold) {
+                above++;
+            }
+        }
+        return above;
+    }
+
+    // Exact percentile (nearest rank) of the last n samples; NaN when nothing was recorded
+    public synchronized double recentPercentile(double percentile, int n) {
+        int size = Math.min(n, recentCount);
+        if (size == 0) {
+            return Double.NaN;
+        }
+        for (int i = 0; i < size; i++) {
+            sortScratch[i] = recentSample(i + 1);
+        }
+        Arrays.sort(sortScratch, 0, size);
+        int rank = (int) Math.ceil(percentile * size);
+        return sortScratch[Math.max(0, Math.min(size - 1, rank - 1))];
+    }
+
+    public synchronized double windowPercentile(Window window, double percentile, long nowMillis) {
+        WindowHistogram histogram = windows[window.ordinal()];
+        long count = histogram.merge(nowMillis, mergedCounts);
+        if (count == 0) {
+            return Double.NaN;
+        }
+        return histogram.clamp(percentileOf(mergedCounts, count, percentile));
+    }
+
+    public synchronized StatsSnapshot snapshot(Window window, long nowMillis) {
+        WindowHistogram histogram = windows[window.ordinal()];
+        long count = histogram.merge(nowMillis, mergedCounts);
+        if (count == 0) {
+            return new StatsSnapshot(window, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, ewma);
+        }
+        return new StatsSnapshot(window, count, histogram.mergedMin, histogram.mergedMax, histogram.mergedSum / count,
+                histogram.clamp(percentileOf(mergedCounts, count, 0.05)),
+                histogram.clamp(percentileOf(mergedCounts, count, 0.50)),
+                histogram.clamp(percentileOf(mergedCounts, count, 0.95)),
+                ewma);
+    }
+
+    // i = 1 is the most recent sample
+    private double recentSample(int i) {
+        int index = Math.floorMod(recentHead - i, recentSamples.length);
+        return recentSamples[index];
+    }
+
+    static int bucketOf(double mbps) {
+        if (!(mbps >= MIN_MBPS)) {
+            return 0; // Also catches NaN
+        }
+        int bucket = 1 + (int) (Math.log10(mbps / MIN_MBPS) * BUCKETS_PER_DECADE);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    // Geometric middle of the bucket
+    static double bucketValue(int bucket) {
+        if (bucket == 0) {
+            return 0.0;
+        }
+        return MIN_MBPS * Math.pow(10, (bucket - 1 + 0.5) / BUCKETS_PER_DECADE);
+    }
+
+    private static double percentileOf(long[] counts, long total, double percentile) {
+        long rank = Math.max(1, (long) Math.ceil(percentile * total));
+        long cumulative = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            cumulative += counts[bucket];
+            if (cumulative >= rank) {
+                return bucketValue(bucket);
+            }
+        }
+        return bucketValue(counts.length - 1);
+    }
+
+    private static final class WindowHistogram {
+        private final long sliceMillis;
+        private final long[] sliceEpochs = new long[SLICES_PER_WINDOW];
+        private final long[][] sliceCounts = new long[SLICES_PER_WINDOW][BUCKETS];
+        private final long[] sliceTotals = new long[SLICES_PER_WINDOW];
+        private final double[] sliceSums = new double[SLICES_PER_WINDOW];
+        private final double[] sliceMins = new double[SLICES_PER_WINDOW];
+        private final double[] sliceMaxes = new double[SLICES_PER_WINDOW];
+        private double mergedMin;
+        private double mergedMax;
+        private double mergedSum;
+
+        WindowHistogram(long sliceMillis) {
+            this.sliceMillis = sliceMillis;
+            Arrays.fill(sliceEpochs, Long.MIN_VALUE);
+        }
+
+        void record(long timestampMillis, double mbps, int bucket) {
+            long epoch = Math.floorDiv(timestampMillis, sliceMillis);
+            int slice = (int) Math.floorMod(epoch, (long) SLICES_PER_WINDOW);
+            if (sliceEpochs[slice] != epoch) {
+                if (sliceEpochs[slice] > epoch) {
+                    return; // Older than anything this window still covers
+                }
+                Arrays.fill(sliceCounts[slice], 0L);
+                sliceTotals[slice] = 0;
+                sliceSums[slice] = 0.0;
+                sliceMins[slice] = Double.POSITIVE_INFINITY;
+                sliceMaxes[slice] = Double.NEGATIVE_INFINITY;
+                sliceEpochs[slice] = epoch;
+            }
+            sliceCounts[slice][bucket]++;
+            sliceTotals[slice]++;
+            sliceSums[slice] += mbps;
+            sliceMins[slice] = Math.min(sliceMins[slice], mbps);
+            sliceMaxes[slice] = Math.max(sliceMaxes[slice], mbps);
+        }
+
+        // Sums every slice still inside the window into counts; returns the number of samples
+        long merge(long nowMillis, long[] counts) {
+            Arrays.fill(counts, 0L);
+            long currentEpoch = Math.floorDiv(nowMillis, sliceMillis);
+            long total = 0;
+            mergedMin = Double.POSITIVE_INFINITY;
+            mergedMax = Double.NEGATIVE_INFINITY;
+            mergedSum = 0.0;
+            for (int slice = 0; slice < SLICES_PER_WINDOW; slice++) {
+                long age = currentEpoch - sliceEpochs[slice];
+                if (sliceEpochs[slice] == Long.MIN_VALUE || age < 0 || age >= SLICES_PER_WINDOW) {
+                    continue;
+                }
+                long[] bucketCounts = sliceCounts[slice];
+                for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                    counts[bucket] += bucketCounts[bucket];
+                }
+                total += sliceTotals[slice];
+                mergedSum += sliceSums[slice];
+                mergedMin = Math.min(mergedMin, sliceMins[slice]);
+                mergedMax = Math.max(mergedMax, sliceMaxes[slice]);
+            }
+            return total;
+        }
+
+        double clamp(double value) {
+            return Math.max(mergedMin, Math.min(mergedMax, value));
+        }
+    }
+}
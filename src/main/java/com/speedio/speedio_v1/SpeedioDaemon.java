@@ -0,0 +1,133 @@
+package com.speedio.speedio_v1;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Headless entry point for servers and routers. Runs the same monitoring core as the GUI without
+ * loading any JavaFX class:
+ * {@code java -cp speedio_v1.jar com.speedio.speedio_v1.SpeedioDaemon --config=speedio.properties}
+ * If the configuration lists {@code target.<id>.*} entries, the daemon monitors that fleet instead
+ * of the single local link. With {@code metrics.port} set, {@code /metrics} serves Prometheus metrics.
+ * With {@code collector.port} set it also stores the results that agents ship to it, and with
+ * {@code collector.only=true} it does nothing else.
+ */
+public class SpeedioDaemon {
+
+    private static final Logger logger = Logger.getLogger(SpeedioDaemon.class.getName());
+
+    public static void main(String[] args) {
+        LoggingConfig.configureLogging();
+
+        MonitorConfig config;
+        try {
+            config = MonitorConfig.fromArgs(args);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not read configuration", e);
+            System.exit(2);
+            return;
+        }
+        if (config.isCollectorOnly() && config.getCollectorPort() < 0) {
+            logger.severe(MonitorConfig.COLLECTOR_ONLY + "=true needs " + MonitorConfig.COLLECTOR_PORT + "; there is nothing to run");
+            System.exit(2);
+            return;
+        }
+
+        MonitoringListener listener = new MonitoringListener() {
+            @Override
+            public void onMeasurement(Measurement measurement) {
+                logger.info("Measurement: " + measurement);
+            }
+        };
+
+        MetricsServer metricsServer = null;
+        if (config.getMetricsPort() >= 0) {
+            metricsServer = new MetricsServer(new InetSocketAddress(config.getMetricsPort()), SpeedioMetrics.REGISTRY);
+            try {
+                metricsServer.start();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not start the metrics endpoint on port " + config.getMetricsPort(), e);
+                metricsServer = null;
+            }
+        }
+
+        Runnable shutdown;
+        MeasurementStore store;
+        if (config.isCollectorOnly()) {
+            try {
+                store = new MeasurementStore(config.getHistoryDir());
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Could not open the measurement history for collected results", e);
+                System.exit(2);
+                return;
+            }
+            shutdown = store::close;
+        } else if (config.getTargets().isEmpty()) {
+            MonitoringService service = new MonitoringService(config, listener);
+            service.start();
+            shutdown = service::shutdown;
+            store = service.getMeasurementStore();
+        } else {
+            FleetMonitor fleet = new FleetMonitor(config, listener);
+            fleet.start();
+            shutdown = fleet::shutdown;
+            store = fleet.getMeasurementStore();
+        }
+
+        ResultCollector collector = null;
+        if (config.getCollectorPort() >= 0) {
+            collector = new ResultCollector(new InetSocketAddress(config.getCollectorPort()), config.getCollectorThreads(),
+                    storeSink(store));
+            try {
+                collector.start();
+            } catch (IOException e) {
+                if (config.isCollectorOnly()) { // Nothing else would run
+                    logger.log(Level.SEVERE, "Could not start the collector on port " + config.getCollectorPort(), e);
+                    shutdown.run();
+                    System.exit(2);
+                    return;
+                }
+                logger.log(Level.WARNING, "Could not start the collector on port " + config.getCollectorPort(), e);
+                collector = null;
+            }
+        }
+
+        MetricsServer metrics = metricsServer;
+        ResultCollector runningCollector = collector;
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (runningCollector != null) {
+                runningCollector.shutdown(); // Before the history it writes to is closed
+            }
+            shutdown.run();
+            if (metrics != null) {
+                metrics.shutdown();
+            }
+            stopped.countDown();
+        }, "speedio-shutdown"));
+
+        logger.info("Speedio daemon started");
+
+        try {
+            stopped.await(); // Scheduler threads are daemons, so keep the JVM alive here
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Stores agents' results as <agent id>/<target>; without a history, batches are refused and stay with the agents
+    static ResultCollector.BatchSink storeSink(MeasurementStore store) {
+        return batch -> {
+            if (store == null) {
+                throw new IOException("No measurement history to store collected results in");
+            }
+            for (Measurement measurement : batch.getMeasurements()) {
+                store.append(measurement.withTarget(batch.getAgentId() + "/" + measurement.getTarget()));
+            }
+            logger.fine(() -> "Stored " + batch);
+        };
+    }
+}
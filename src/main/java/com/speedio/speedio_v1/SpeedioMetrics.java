@@ -0,0 +1,95 @@
+package com.speedio.speedio_v1;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The application's metrics, all in one {@link MetricsRegistry}. Series with fixed labels are
+ * created once here so the instrumented code only touches an adder; error types are only known
+ * when an error happens, so those series are looked up on the (cold) error path.
+ */
+public final class SpeedioMetrics {
+
+    public static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+    // 1 ms to 2 min, roughly x2.5 per bucket: connects and chunks land low, whole transfers high
+    private static final double[] PHASE_BUCKETS = {
+            0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120
+    };
+    private static final String PHASE_SECONDS = "speedio_phase_seconds";
+    private static final String PHASE_HELP = "Duration of each speed-test phase";
+    private static final String ERRORS_TOTAL = "speedio_test_errors_total";
+    private static final String ERRORS_HELP = "Failed transfers by error type";
+    private static final String ALERTS_TOTAL = "speedio_alerts_total";
+    private static final String ALERTS_HELP = "Alert emails by outcome: queued, or suppressed as duplicate, over quota or queue full";
+
+    // Every phase series carries a direction, "none" for probes that move no payload
+    public static final MetricsRegistry.Histogram WARM_UP = phase("warmup", "download");
+    // TCP connect, measured by the latency probe; jspeedtest does not report its own connects
+    public static final MetricsRegistry.Histogram CONNECT = phase("connect", "none");
+    // TCP connect of each plain-HTTP stream of the NIO download engine
+    public static final MetricsRegistry.Histogram DOWNLOAD_CONNECT = phase("connect", "download");
+    // From starting a download to its first progress event, connect and request included
+    public static final MetricsRegistry.Histogram FIRST_BYTE = phase("first_byte", "download");
+    public static final MetricsRegistry.Histogram DOWNLOAD_TRANSFER = phase("transfer", "download");
+    public static final MetricsRegistry.Histogram UPLOAD_TRANSFER = phase("transfer", "upload");
+    public static final MetricsRegistry.Histogram UPLOAD_CHUNK = phase("upload_chunk", "upload");
+
+    public static final MetricsRegistry.Gauge ACTIVE_DOWNLOADS = REGISTRY.gauge("speedio_active_tests",
+            "Speed tests currently running", "direction", "download");
+    public static final MetricsRegistry.Gauge ACTIVE_UPLOADS = REGISTRY.gauge("speedio_active_tests",
+            "Speed tests currently running", "direction", "upload");
+    public static final MetricsRegistry.Counter DOWNLOADS = REGISTRY.counter("speedio_tests_total",
+            "Completed speed tests", "direction", "download");
+    public static final MetricsRegistry.Counter UPLOADS = REGISTRY.counter("speedio_tests_total",
+            "Completed speed tests", "direction", "upload");
+
+    public static final MetricsRegistry.Counter ALERTS_QUEUED = alerts("queued");
+    public static final MetricsRegistry.Counter ALERTS_DUPLICATE = alerts("duplicate");
+    public static final MetricsRegistry.Counter ALERTS_OVER_QUOTA = alerts("over_quota");
+    public static final MetricsRegistry.Counter ALERTS_QUEUE_FULL = alerts("queue_full");
+    public static final MetricsRegistry.Gauge BACKGROUND_REQUESTS = REGISTRY.gauge("speedio_background_http_requests",
+            "Alert and shipping requests in flight on the shared JDK HTTP client");
+
+    // Passive samples of the monitored interface, this process's own tests included
+    public static final MetricsRegistry.Gauge INTERFACE_RX_BITS = REGISTRY.gauge("speedio_interface_bits_per_second",
+            "Traffic on the monitored network interface", "direction", "rx");
+    public static final MetricsRegistry.Gauge INTERFACE_TX_BITS = REGISTRY.gauge("speedio_interface_bits_per_second",
+            "Traffic on the monitored network interface", "direction", "tx");
+    public static final MetricsRegistry.Counter PROBES_QUEUED = REGISTRY.counter("speedio_probes_queued_total",
+            "Scheduled probe runs that waited for another probe on the same link");
+    public static final MetricsRegistry.Counter TESTS_DEFERRED = REGISTRY.counter("speedio_tests_deferred_total",
+            "Scheduled test runs put off because the link was busy with other traffic");
+
+    public static final MetricsRegistry.Counter SHIPPED_MEASUREMENTS = REGISTRY.counter("speedio_shipped_measurements_total",
+            "Measurements acknowledged by the collector");
+    public static final MetricsRegistry.Gauge SHIP_SPOOLED_BATCHES = REGISTRY.gauge("speedio_ship_spooled_batches",
+            "Batches waiting in the spool for the collector");
+    public static final MetricsRegistry.Counter COLLECTED_BATCHES = REGISTRY.counter("speedio_collected_batches_total",
+            "Batches ingested from agents");
+    public static final MetricsRegistry.Counter COLLECTED_MEASUREMENTS = REGISTRY.counter("speedio_collected_measurements_total",
+            "Measurements ingested from agents");
+    public static final MetricsRegistry.Counter COLLECTED_DUPLICATES = REGISTRY.counter("speedio_collected_duplicate_batches_total",
+            "Re-sent batches that had already been ingested");
+
+    public static final MetricsRegistry.Counter LOG_RECORDS_DROPPED = REGISTRY.counter("speedio_log_records_dropped_total",
+            "Log records dropped because the async log buffer was full");
+
+    private static final Map<String, MetricsRegistry.Counter> errors = new ConcurrentHashMap<>();
+
+    private SpeedioMetrics() {
+    }
+
+    // type is a SpeedTestError name for downloads, or a short reason for uploads and probes
+    public static void recordError(String type) {
+        errors.computeIfAbsent(type, key -> REGISTRY.counter(ERRORS_TOTAL, ERRORS_HELP, "type", key)).increment();
+    }
+
+    private static MetricsRegistry.Histogram phase(String phase, String direction) {
+        return REGISTRY.histogram(PHASE_SECONDS, PHASE_HELP, PHASE_BUCKETS, "phase", phase, "direction", direction);
+    }
+
+    private static MetricsRegistry.Counter alerts(String result) {
+        return REGISTRY.counter(ALERTS_TOTAL, ALERTS_HELP, "result", result);
+    }
+}
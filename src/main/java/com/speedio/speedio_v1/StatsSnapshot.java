@@ -0,0 +1,76 @@
+package com.speedio.speedio_v1;
+
+/**
+ * Point-in-time view of one {@link SpeedStatistics} window. Percentiles are accurate to the
+ * histogram bucket width (about 12%) and clamped to the observed min/max.
+ */
+public class StatsSnapshot {
+
+    private final SpeedStatistics.Window window;
+    private final long count;
+    private final double min;
+    private final double max;
+    private final double mean;
+    private final double p5;
+    private final double p50;
+    private final double p95;
+    private final double ewma;
+
+    public StatsSnapshot(SpeedStatistics.Window window, long count, double min, double max, double mean,
+                         double p5, double p50, double p95, double ewma) {
+        this.window = window;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+        this.p5 = p5;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.ewma = ewma;
+    }
+
+    public SpeedStatistics.Window getWindow() {
+        return window;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getP5() {
+        return p5;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP95() {
+        return p95;
+    }
+
+    public double getEwma() {
+        return ewma;
+    }
+
+    @Override
+    public String toString() {
+        if (count == 0) {
+            return "No samples";
+        }
+        return String.format("p5 %.2f / p50 %.2f / p95 %.2f Mbps (min %.2f, max %.2f, avg %.2f, n=%d)",
+                p5, p50, p95, min, max, mean, count);
+    }
+}
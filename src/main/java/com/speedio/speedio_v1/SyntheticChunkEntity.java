@@ -0,0 +1,172 @@
+package com.speedio.speedio_v1;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Multipart upload chunk whose file body is generated while it is written, so no chunk or file
+ * sized array is ever allocated. The body is pseudo-random and therefore incompressible, which
+ * keeps compressing proxies on the path from inflating the measured upload speed.
+ */
+public class SyntheticChunkEntity extends AbstractHttpEntity {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final ThreadLocal<byte[]> BLOCK = ThreadLocal.withInitial(() -> new byte[BLOCK_SIZE]);
+    private static final String CRLF = "\r\n";
+
+    private final byte[] head;
+    private final byte[] tail;
+    private final long payloadLength;
+
+    public SyntheticChunkEntity(String fileId, int chunkNumber, long totalChunks, int fileSizeMB, long payloadLength) {
+        String boundary = "speedio" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+        setContentType("multipart/form-data; boundary=" + boundary);
+
+        // Same parts MultipartEntityBuilder produced: the file first, then the text fields
+        StringBuilder headBuilder = new StringBuilder(512);
+        headBuilder.append("--").append(boundary).append(CRLF)
+                .append("Content-Disposition: form-data; name=\"file\"; filename=\"testfile_chunk_")
+                .append(chunkNumber).append(".bin\"").append(CRLF)
+                .append("Content-Type: application/octet-stream").append(CRLF)
+                .append(CRLF);
+
+        StringBuilder tailBuilder = new StringBuilder(512);
+        tailBuilder.append(CRLF);
+        appendTextPart(tailBuilder, boundary, "chunkNumber", String.valueOf(chunkNumber));
+        appendTextPart(tailBuilder, boundary, "totalChunks", String.valueOf(totalChunks));
+        appendTextPart(tailBuilder, boundary, "fileSizeMB", String.valueOf(fileSizeMB));
+        appendTextPart(tailBuilder, boundary, "fileId", fileId);
+        tailBuilder.append("--").append(boundary).append("--").append(CRLF);
+
+        this.head = headBuilder.toString().getBytes(StandardCharsets.US_ASCII);
+        this.tail = tailBuilder.toString().getBytes(StandardCharsets.UTF_8);
+        this.payloadLength = payloadLength;
+    }
+
+    private static void appendTextPart(StringBuilder builder, String boundary, String name, String value) {
+        builder.append("--").append(boundary).append(CRLF)
+                .append("Content-Disposition: form-data; name=\"").append(name).append('"').append(CRLF)
+                .append(CRLF)
+                .append(value).append(CRLF);
+    }
+
+    public long getPayloadLength() {
+        return payloadLength;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return head.length + payloadLength + tail.length;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        // Only for callers that cannot stream; the upload path always goes through writeTo
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) Math.min(getContentLength(), Integer.MAX_VALUE));
+        writeTo(buffer);
+        return new ByteArrayInputStream(buffer.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        outStream.write(head);
+
+        byte[] block = BLOCK.get();
+        long state = ThreadLocalRandom.current().nextLong() | 1L; // xorshift state must never be zero
+        long remaining = payloadLength;
+        while (remaining > 0) {
+            int length = (int) Math.min(remaining, BLOCK_SIZE);
+            state = fillRandom(block, length, state);
+            outStream.write(block, 0, length);
+            remaining -= length;
+        }
+
+        outStream.write(tail);
+        outStream.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * The same body as {@link #writeTo}, generated straight into the reader's buffer, for clients
+     * that pull the body instead of having it pushed (the JDK HttpClient). onDrained runs once the
+     * last byte has been read, i.e. when the client has taken the whole body.
+     */
+    public InputStream newContentStream(Runnable onDrained) {
+        return new InputStream() {
+            private long position;
+            private long state = ThreadLocalRandom.current().nextLong() | 1L;
+            private boolean drained;
+
+            @Override
+            public int read() {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) {
+                if (position >= getContentLength()) {
+                    return -1;
+                }
+                if (length == 0) {
+                    return 0;
+                }
+                int count;
+                if (position < head.length) {
+                    count = (int) Math.min(length, head.length - position);
+                    System.arraycopy(head, (int) position, buffer, offset, count);
+                } else if (position < head.length + payloadLength) {
+                    count = (int) Math.min(length, head.length + payloadLength - position);
+                    state = fillRandom(buffer, offset, count, state);
+                } else {
+                    int tailPosition = (int) (position - head.length - payloadLength);
+                    count = Math.min(length, tail.length - tailPosition);
+                    System.arraycopy(tail, tailPosition, buffer, offset, count);
+                }
+                position += count;
+                if (position == getContentLength() && !drained) { // Not at EOF: a client that knows the length may never read it
+                    drained = true;
+                    onDrained.run();
+                }
+                return count;
+            }
+        };
+    }
+
+    static long fillRandom(byte[] block, int length, long state) {
+        return fillRandom(block, 0, length, state);
+    }
+
+    // xorshift64*: cheap enough to outpace any network link and not compressible by gzip/brotli
+    static long fillRandom(byte[] block, int offset, int length, long state) {
+        int i = offset;
+        int end = offset + length;
+        while (i < end) {
+            state ^= state >>> 12;
+            state ^= state << 25;
+            state ^= state >>> 27;
+            long value = state * 0x2545F4914F6CDD1DL;
+            for (int b = 0; b < 8 && i < end; b++, i++) {
+                block[i] = (byte) value;
+                value >>>= 8;
+            }
+        }
+        return state;
+    }
+}
@@ -0,0 +1,91 @@
+package com.speedio.speedio_v1;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * The set of monitored targets, keyed by id. Targets are read from {@code target.<id>.*}
+ * properties, e.g.
+ * <pre>
+ * target.branch-12.url=https://speed.example.com/10mb.bin
+ * target.branch-12.direction=download
+ * target.branch-12.link=branch-12-wan
+ * target.branch-12.interval.minutes=10
+ * target.branch-12.threshold=50
+ * target.branch-12.email=noc@example.com
+ * target.branch-12.streams=4
+ * </pre>
+ * Everything but the URL falls back to the global settings.
+ */
+public class TargetRegistry {
+
+    private static final Logger logger = Logger.getLogger(TargetRegistry.class.getName());
+
+    static final String PREFIX = "target.";
+
+    private final Map<String, MonitorTarget> targets = new ConcurrentSkipListMap<>();
+
+    // Returns the target previously registered under the same id, if any
+    public MonitorTarget register(MonitorTarget target) {
+        return targets.put(target.getId(), target);
+    }
+
+    public MonitorTarget remove(String id) {
+        return targets.remove(id);
+    }
+
+    public MonitorTarget get(String id) {
+        return targets.get(id);
+    }
+
+    public Collection<MonitorTarget> getTargets() {
+        return Collections.unmodifiableCollection(targets.values());
+    }
+
+    public int size() {
+        return targets.size();
+    }
+
+    // Invalid targets are logged and skipped so one typo does not take down the whole fleet; the other
+    // arguments are the global settings a target falls back to
+    static List<MonitorTarget> parseTargets(Properties properties, long defaultIntervalMillis, double defaultThreshold,
+                                            String defaultEmail, int defaultStreams) {
+        TreeSet<String> ids = new TreeSet<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(PREFIX) && key.endsWith(".url")) {
+                ids.add(key.substring(PREFIX.length(), key.length() - ".url".length()));
+            }
+        }
+
+        List<MonitorTarget> parsed = new ArrayList<>();
+        for (String id : ids) {
+            String prefix = PREFIX + id + ".";
+            try {
+                String direction = properties.getProperty(prefix + "direction", "download").trim().toUpperCase(Locale.ROOT);
+                String minutes = properties.getProperty(prefix + "interval.minutes");
+                String threshold = properties.getProperty(prefix + "threshold");
+                String streams = properties.getProperty(prefix + "streams");
+                parsed.add(new MonitorTarget(id,
+                        properties.getProperty(prefix + "link", id).trim(),
+                        Direction.valueOf(direction),
+                        properties.getProperty(prefix + "url").trim(),
+                        minutes != null ? TimeUnit.MINUTES.toMillis(Long.parseLong(minutes.trim())) : defaultIntervalMillis,
+                        threshold != null ? Double.parseDouble(threshold.trim()) : defaultThreshold,
+                        properties.getProperty(prefix + "email", defaultEmail).trim(),
+                        streams != null ? Integer.parseInt(streams.trim()) : defaultStreams));
+            } catch (IllegalArgumentException e) {
+                logger.warning("Skipping invalid target " + id + ": " + e.getMessage());
+            }
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,12 @@
+package com.speedio.speedio_v1;
+
+/**
+ * State of a {@link TestRun}. A run leaves RUNNING exactly once; errors reported by the test
+ * itself (a failed socket, a bad response) still end as COMPLETED.
+ */
+public enum TestOutcome {
+    RUNNING,
+    COMPLETED,
+    CANCELLED,
+    TIMED_OUT
+}
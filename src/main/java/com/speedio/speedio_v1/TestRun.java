@@ -0,0 +1,173 @@
+package com.speedio.speedio_v1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One speed test with a hard deadline. Every blocking wait of the test goes through
+ * {@link #await}, which returns early once the run is cancelled or its deadline passes. At that
+ * point the abort actions the test registered close its sockets and stop its threads, so nothing
+ * of an aborted test keeps running or competes with the next one for bandwidth.
+ *
+ * <p>Threads working for a run {@link #bind()} it, which tags their log records with the run id.
+ */
+public class TestRun {
+
+    private static final Logger logger = Logger.getLogger(TestRun.class.getName());
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 180_000; // A fixed-size test on a slow DSL line still fits
+
+    private static final AtomicLong nextId = new AtomicLong();
+    private static final ThreadLocal<TestRun> boundRun = new ThreadLocal<>();
+
+    private final long id = nextId.incrementAndGet();
+    private final long timeoutMillis;
+    private final long deadlineNanos;
+    private final AtomicReference<TestOutcome> outcome = new AtomicReference<>(TestOutcome.RUNNING);
+    private final List<Runnable> abortActions = new ArrayList<>(); // Guarded by this
+
+    public TestRun(long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Test timeout must be positive: " + timeoutMillis);
+        }
+        this.timeoutMillis = timeoutMillis;
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    // Returns false if the run had already ended
+    public boolean cancel() {
+        return abort(TestOutcome.CANCELLED);
+    }
+
+    // Marks a run that ran to the end; later cancel() calls do nothing
+    public void complete() {
+        if (outcome.compareAndSet(TestOutcome.RUNNING, TestOutcome.COMPLETED)) {
+            synchronized (this) {
+                abortActions.clear();
+            }
+        }
+    }
+
+    /**
+     * Waits for the latch until the deadline. Returns true if the latch opened and the run is still
+     * going; false once it was cancelled or timed out, in which case the abort actions have run.
+     */
+    public boolean await(CountDownLatch latch) throws InterruptedException {
+        Runnable release = () -> release(latch);
+        onAbort(release);
+        try {
+            if (!latch.await(remainingNanos(), TimeUnit.NANOSECONDS)) {
+                abort(TestOutcome.TIMED_OUT);
+            }
+        } catch (InterruptedException e) {
+            cancel(); // Shutdown interrupts the test thread; its sockets must still be closed
+            throw e;
+        } finally {
+            removeOnAbort(release);
+        }
+        return !isAborted();
+    }
+
+    // For loops that wait on their own terms; returns true once the run has been aborted
+    public boolean checkDeadline() {
+        if (outcome.get() == TestOutcome.RUNNING && remainingNanos() <= 0) {
+            abort(TestOutcome.TIMED_OUT);
+        }
+        return isAborted();
+    }
+
+    // Runs the action when the run is aborted, or right away if it already was
+    public void onAbort(Runnable action) {
+        synchronized (this) {
+            if (!isAborted()) {
+                abortActions.add(action);
+                return;
+            }
+        }
+        runQuietly(action);
+    }
+
+    public synchronized void removeOnAbort(Runnable action) {
+        abortActions.remove(action);
+    }
+
+    public boolean isAborted() {
+        TestOutcome current = outcome.get();
+        return current == TestOutcome.CANCELLED || current == TestOutcome.TIMED_OUT;
+    }
+
+    // Marks the calling thread as working for this run; returns the previous binding for restore()
+    public TestRun bind() {
+        TestRun previous = boundRun.get();
+        boundRun.set(this);
+        return previous;
+    }
+
+    public static void restore(TestRun previous) {
+        if (previous == null) {
+            boundRun.remove();
+        } else {
+            boundRun.set(previous);
+        }
+    }
+
+    // The run bound to the calling thread, or null
+    public static TestRun current() {
+        return boundRun.get();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public TestOutcome getOutcome() {
+        return outcome.get();
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public long remainingNanos() {
+        return Math.max(0, deadlineNanos - System.nanoTime());
+    }
+
+    private boolean abort(TestOutcome reason) {
+        if (!outcome.compareAndSet(TestOutcome.RUNNING, reason)) {
+            return false;
+        }
+        List<Runnable> actions;
+        synchronized (this) {
+            actions = new ArrayList<>(abortActions);
+            abortActions.clear();
+        }
+        if (reason == TestOutcome.TIMED_OUT) {
+            logger.warning("Speed test did not finish within " + timeoutMillis + " ms. Stopping it.");
+        } else {
+            logger.info("Speed test cancelled. Stopping it.");
+        }
+        SpeedioMetrics.recordError("TEST_" + reason.name());
+        actions.forEach(TestRun::runQuietly);
+        return true;
+    }
+
+    private static void release(CountDownLatch latch) {
+        while (latch.getCount() > 0) {
+            latch.countDown();
+        }
+    }
+
+    private static void runQuietly(Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            logger.log(Level.FINE, "Error while stopping a speed test", e);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.speedio.speedio_v1;
+
+import java.util.function.Predicate;
+
+/**
+ * Decides whether recent speed (or latency) samples are bad enough to alert. Rules that look at
+ * more than one sample keep a single noisy test from sending an email.
+ */
+public final class ThresholdRule {
+
+    private final String description;
+    private final Predicate<SpeedStatistics> breached;
+
+    private ThresholdRule(String description, Predicate<SpeedStatistics> breached) {
+        this.description = description;
+        this.breached = breached;
+    }
+
+    // The original behaviour: alert whenever the latest sample is below the threshold
+    public static ThresholdRule singleSample(double threshold) {
+        return new ThresholdRule("last sample < " + threshold + " Mbps",
+                stats -> stats.getSampleCount() > 0 && stats.getLastSample() < threshold);
+    }
+
+    public static ThresholdRule kOfLastM(int k, int m, double threshold) {
+        if (k < 1 || k > m) {
+            throw new IllegalArgumentException("Need 1 <= k <= m, got k=" + k + ", m=" + m);
+        }
+        return new ThresholdRule(k + " of last " + m + " samples < " + threshold + " Mbps",
+                stats -> stats.countBelow(threshold, m) >= k);
+    }
+
+    // For latency, jitter and loss, where a breach means too high rather than too low
+    public static ThresholdRule kOfLastMAbove(int k, int m, double threshold, String unit) {
+        if (k < 1 || k > m) {
+            throw new IllegalArgumentException("Need 1 <= k <= m, got k=" + k + ", m=" + m);
+        }
+        return new ThresholdRule(k + " of last " + m + " samples > " + threshold + " " + unit,
+                stats -> stats.countAbove(threshold, m) >= k);
+    }
+
+    public static ThresholdRule percentileOfLastSamples(double percentile, int samples, double threshold) {
+        return new ThresholdRule("p" + Math.round(percentile * 100) + " of last " + samples + " samples < " + threshold + " Mbps",
+                stats -> stats.getSampleCount() > 0 && stats.recentPercentile(percentile, samples) < threshold);
+    }
+
+    public static ThresholdRule windowPercentile(SpeedStatistics.Window window, double percentile, double threshold) {
+        return new ThresholdRule("p" + Math.round(percentile * 100) + " over " + window + " < " + threshold + " Mbps",
+                stats -> stats.windowPercentile(window, percentile, System.currentTimeMillis()) < threshold);
+    }
+
+    public boolean isBreached(SpeedStatistics statistics) {
+        return breached.test(statistics);
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
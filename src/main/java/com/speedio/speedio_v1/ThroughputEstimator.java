@@ -0,0 +1,207 @@
+package com.speedio.speedio_v1;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when an adaptive speed test has seen enough. Cumulative byte counts are sampled every
+ * few hundred milliseconds; TCP slow start is taken to be over once a window is no longer clearly
+ * faster than the one before it, and everything up to that point is discarded. After that the
+ * sliding-window rate is checked at every window boundary, and the test stops once the last few
+ * windows agree within the policy's tolerance, or the byte or time budget runs out.
+ *
+ * <p>Safe to feed from several transfer threads at once with the combined byte count.
+ */
+public class ThroughputEstimator {
+
+    public enum StopReason {
+        CONVERGED, BYTE_BUDGET, TIME_BUDGET, COMPLETED
+    }
+
+    private static final double SLOW_START_GROWTH = 0.10; // Still ramping while a window is >10% faster than the previous one
+
+    private final AdaptiveTestPolicy policy;
+    private final int windowSamples;
+    private final long sampleIntervalNanos;
+    private final long maxNanos;
+    private final long startNanos;
+    private final long[] sampleTimes;
+    private final long[] sampleBytes;
+    private final double[] stableRates;
+    private int sampleHead;
+    private int sampleCount;
+    private int stableHead;
+    private int stableCount;
+    private int samplesSinceWindow;
+    private boolean steady;
+    private long baseNanos;
+    private long baseBytes;
+    private long lastNanos;
+    private long lastBytes;
+    private double lastWindowRate = Double.NaN;
+    private StopReason stopReason;
+
+    ThroughputEstimator(AdaptiveTestPolicy policy) {
+        this(policy, System.nanoTime());
+    }
+
+    ThroughputEstimator(AdaptiveTestPolicy policy, long startNanos) {
+        this.policy = policy;
+        this.windowSamples = (int) Math.max(1, policy.getWindowMillis() / policy.getSampleIntervalMillis());
+        this.sampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(policy.getSampleIntervalMillis());
+        this.maxNanos = TimeUnit.MILLISECONDS.toNanos(policy.getMaxMillis());
+        this.startNanos = startNanos;
+        this.sampleTimes = new long[2 * windowSamples + 1];
+        this.sampleBytes = new long[2 * windowSamples + 1];
+        this.stableRates = new double[policy.getStableWindows()];
+        this.lastNanos = startNanos;
+        addSample(startNanos, 0);
+    }
+
+    // Returns true once the test should stop; later calls keep returning true
+    public synchronized boolean update(long nowNanos, long totalBytes) {
+        if (stopReason != null) {
+            return true;
+        }
+        lastNanos = Math.max(lastNanos, nowNanos);
+        lastBytes = Math.max(lastBytes, totalBytes); // Streams may report out of order
+
+        if (lastBytes >= policy.getMaxBytes()) {
+            stopReason = StopReason.BYTE_BUDGET;
+            return true;
+        }
+        if (lastNanos - startNanos >= maxNanos) {
+            stopReason = StopReason.TIME_BUDGET;
+            return true;
+        }
+        if (lastNanos - sampleTime(0) < sampleIntervalNanos) {
+            return false;
+        }
+
+        addSample(lastNanos, lastBytes);
+        if (sampleCount <= windowSamples) {
+            return false;
+        }
+        double windowRate = rate(windowSamples, 0);
+        lastWindowRate = windowRate;
+
+        if (!steady) {
+            if (sampleCount > 2 * windowSamples && windowRate < rate(2 * windowSamples, windowSamples) * (1 + SLOW_START_GROWTH)) {
+                steady = true;
+                baseNanos = sampleTime(windowSamples);
+                baseBytes = sampleBytes(windowSamples);
+                samplesSinceWindow = 0;
+                addStableRate(windowRate);
+            }
+            return false;
+        }
+
+        if (++samplesSinceWindow < windowSamples) {
+            return false;
+        }
+        samplesSinceWindow = 0;
+        addStableRate(windowRate);
+        if (stableCount == stableRates.length && spread() <= policy.getTolerance()) {
+            stopReason = StopReason.CONVERGED;
+            return true;
+        }
+        return false;
+    }
+
+    // The transfer ended on its own, e.g. the test file was shorter than the budget
+    public synchronized void finish(long nowNanos, long totalBytes) {
+        lastNanos = Math.max(lastNanos, nowNanos);
+        lastBytes = Math.max(lastBytes, totalBytes);
+        if (stopReason == null) {
+            stopReason = StopReason.COMPLETED;
+        }
+    }
+
+    // Steady-state rate since the end of slow start; the latest window rate if slow start never ended
+    public synchronized double getBitsPerSecond() {
+        if (steady && lastNanos > baseNanos) {
+            return (lastBytes - baseBytes) * 8.0 * 1e9 / (lastNanos - baseNanos);
+        }
+        if (!Double.isNaN(lastWindowRate)) {
+            return lastWindowRate;
+        }
+        return lastNanos > startNanos ? lastBytes * 8.0 * 1e9 / (lastNanos - startNanos) : 0.0;
+    }
+
+    // 1 - relative spread of the recent steady-state windows; 0 when there is too little data to tell
+    public synchronized double getConfidence() {
+        if (stableCount < 2) {
+            return 0.0;
+        }
+        return Math.max(0.0, 1.0 - spread());
+    }
+
+    public synchronized long getBytes() {
+        return lastBytes;
+    }
+
+    public synchronized long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastNanos - startNanos);
+    }
+
+    public synchronized boolean isSlowStartOver() {
+        return steady;
+    }
+
+    public synchronized StopReason getStopReason() {
+        return stopReason;
+    }
+
+    public AdaptiveTestPolicy getPolicy() {
+        return policy;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%.0f bit/s after %d bytes in %d ms, confidence %.0f%%, stopped: %s",
+                getBitsPerSecond(), lastBytes, getElapsedMillis(), getConfidence() * 100, stopReason);
+    }
+
+    private void addSample(long nanos, long bytes) {
+        sampleTimes[sampleHead] = nanos;
+        sampleBytes[sampleHead] = bytes;
+        sampleHead = (sampleHead + 1) % sampleTimes.length;
+        if (sampleCount < sampleTimes.length) {
+            sampleCount++;
+        }
+    }
+
+    // back = 0 is the newest sample
+    private long sampleTime(int back) {
+        return sampleTimes[Math.floorMod(sampleHead - 1 - back, sampleTimes.length)];
+    }
+
+    private long sampleBytes(int back) {
+        return sampleBytes[Math.floorMod(sampleHead - 1 - back, sampleBytes.length)];
+    }
+
+    private double rate(int olderBack, int newerBack) {
+        long nanos = sampleTime(newerBack) - sampleTime(olderBack);
+        return nanos > 0 ? (sampleBytes(newerBack) - sampleBytes(olderBack)) * 8.0 * 1e9 / nanos : 0.0;
+    }
+
+    private void addStableRate(double rate) {
+        stableRates[stableHead] = rate;
+        stableHead = (stableHead + 1) % stableRates.length;
+        if (stableCount < stableRates.length) {
+            stableCount++;
+        }
+    }
+
+    private double spread() {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double sum = 0.0;
+        for (int i = 0; i < stableCount; i++) {
+            min = Math.min(min, stableRates[i]);
+            max = Math.max(max, stableRates[i]);
+            sum += stableRates[i];
+        }
+        double mean = sum / stableCount;
+        return mean > 0 ? (max - min) / mean : Double.POSITIVE_INFINITY;
+    }
+}
@@ -0,0 +1,59 @@
+package com.speedio.speedio_v1;
+
+/**
+ * Fixed-capacity ring of (time, Mbps) samples backed by primitive arrays. Once full, each new sample
+ * overwrites the oldest one. Not thread-safe; the owner decides which thread writes and reads it.
+ */
+public class ThroughputRingBuffer {
+
+    private final long[] timesNanos;
+    private final double[] values;
+    private int head; // Next slot to write
+    private int size;
+
+    public ThroughputRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.timesNanos = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    public void add(long timeNanos, double value) {
+        timesNanos[head] = timeNanos;
+        values[head] = value;
+        head = (head + 1) % values.length;
+        if (size < values.length) {
+            size++;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    // Index 0 is the oldest sample still held
+    public long timeAt(int index) {
+        return timesNanos[slot(index)];
+    }
+
+    public double valueAt(int index) {
+        return values[slot(index)];
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    private int slot(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + size);
+        }
+        return Math.floorMod(head - size + index, values.length);
+    }
+}
@@ -0,0 +1,44 @@
+package com.speedio.speedio_v1;
+
+/**
+ * Traffic seen on the network interface over a window, in Mbps per direction. Receive is what a
+ * download competes with, transmit what an upload competes with.
+ */
+public final class TrafficLoad {
+
+    private final double rxMbps;
+    private final double txMbps;
+    private final long windowMillis;
+
+    public TrafficLoad(double rxMbps, double txMbps, long windowMillis) {
+        this.rxMbps = rxMbps;
+        this.txMbps = txMbps;
+        this.windowMillis = windowMillis;
+    }
+
+    public double getRxMbps() {
+        return rxMbps;
+    }
+
+    public double getTxMbps() {
+        return txMbps;
+    }
+
+    // The direction a test of this kind shares with the background traffic
+    public double getMbps(Direction direction) {
+        return direction == Direction.DOWNLOAD ? rxMbps : txMbps;
+    }
+
+    public double getMaxMbps() {
+        return Math.max(rxMbps, txMbps);
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("rx %.2f Mbps, tx %.2f Mbps over %d ms", rxMbps, txMbps, windowMillis);
+    }
+}
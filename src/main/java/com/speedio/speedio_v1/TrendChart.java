@@ -0,0 +1,172 @@
+package com.speedio.speedio_v1;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.Label;
+import javafx.util.StringConverter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Plots stored download and upload results over a {@link TrendRange}. Each refresh scans the
+ * {@link MeasurementStore} on a background thread straight into a {@link MinMaxDownsampler} with
+ * one bucket per pixel column of the time axis, so the chart holds at most two points per pixel
+ * whatever the range. Refreshes requested while one is still queued are merged into it.
+ */
+public class TrendChart {
+
+    private static final Logger logger = Logger.getLogger(TrendChart.class.getName());
+
+    private static final int MIN_BUCKETS = 100; // Until the axis has been laid out
+    private static final int TICKS = 6;
+    private static final DateTimeFormatter HOURS = DateTimeFormatter.ofPattern("HH:mm");
+    private static final DateTimeFormatter DAYS = DateTimeFormatter.ofPattern("MM-dd");
+
+    private final NumberAxis timeAxis;
+    private final Label summaryLabel;
+    private final MeasurementStore store;
+    private final XYChart.Series<Number, Number> downloadSeries = new XYChart.Series<>();
+    private final XYChart.Series<Number, Number> uploadSeries = new XYChart.Series<>();
+    private final ExecutorService loader;
+    private final AtomicBoolean refreshQueued = new AtomicBoolean(false);
+    private volatile TrendRange range = TrendRange.LAST_WEEK;
+    private volatile int pixelWidth;
+
+    // The store may be null when the history could not be opened; the chart then stays empty
+    public TrendChart(LineChart<Number, Number> chart, NumberAxis timeAxis, Label summaryLabel, MeasurementStore store) {
+        this.timeAxis = timeAxis;
+        this.summaryLabel = summaryLabel;
+        this.store = store;
+        this.loader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "speedio-history");
+            thread.setDaemon(true);
+            return thread;
+        });
+        downloadSeries.setName("Download");
+        uploadSeries.setName("Upload");
+        chart.getData().add(downloadSeries);
+        chart.getData().add(uploadSeries);
+
+        timeAxis.setAutoRanging(false);
+        timeAxis.setTickLabelFormatter(new StringConverter<>() {
+            @Override
+            public String toString(Number millis) {
+                DateTimeFormatter format = range == TrendRange.LAST_DAY ? HOURS : DAYS;
+                return format.format(Instant.ofEpochMilli(millis.longValue()).atZone(ZoneId.systemDefault()));
+            }
+
+            @Override
+            public Number fromString(String text) {
+                throw new UnsupportedOperationException();
+            }
+        });
+        // Bucket count follows the axis width; small resizes are not worth another scan
+        timeAxis.widthProperty().addListener((observable, oldWidth, newWidth) -> {
+            int width = newWidth.intValue();
+            if (Math.abs(width - pixelWidth) > pixelWidth / 10) {
+                pixelWidth = width;
+                refresh();
+            }
+        });
+    }
+
+    public void setRange(TrendRange range) {
+        this.range = range;
+        refresh();
+    }
+
+    public TrendRange getRange() {
+        return range;
+    }
+
+    // Called from any thread, e.g. after every stored measurement
+    public void refresh() {
+        if (store == null) {
+            Platform.runLater(() -> summaryLabel.setText("No history"));
+            return;
+        }
+        if (refreshQueued.compareAndSet(false, true)) {
+            try {
+                loader.execute(this::load);
+            } catch (RejectedExecutionException e) {
+                logger.fine("History chart is shut down, dropping refresh");
+            }
+        }
+    }
+
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+
+    private void load() {
+        refreshQueued.set(false);
+        TrendRange current = range;
+        long to = System.currentTimeMillis();
+        long from = to - current.getMillis();
+        int buckets = Math.max(MIN_BUCKETS, pixelWidth);
+        MinMaxDownsampler download = new MinMaxDownsampler(from, to, buckets);
+        MinMaxDownsampler upload = new MinMaxDownsampler(from, to, buckets);
+        try {
+            store.scan(from, to, null, null, measurement -> {
+                if (measurement.isAborted()) {
+                    return; // Partial transfers are not part of the trend
+                }
+                MinMaxDownsampler target = measurement.getDirection() == Direction.DOWNLOAD ? download : upload;
+                target.add(measurement.getTimestampMillis(), measurement.getMbps());
+            });
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not read measurement history", e);
+            return;
+        }
+        TrendSeries downloads = download.finish();
+        TrendSeries uploads = upload.finish();
+        long tests = download.getSampleCount() + upload.getSampleCount();
+        Platform.runLater(() -> render(from, to, downloads, uploads, tests));
+    }
+
+    private void render(long from, long to, TrendSeries downloads, TrendSeries uploads, long tests) {
+        timeAxis.setLowerBound(from);
+        timeAxis.setUpperBound(to);
+        timeAxis.setTickUnit((double) (to - from) / TICKS);
+        setPoints(downloadSeries, downloads);
+        setPoints(uploadSeries, uploads);
+        summaryLabel.setText(tests == 0 ? "No tests in range"
+                : String.format("%d tests, %d points drawn", tests, downloads.size() + uploads.size()));
+        logger.fine(() -> "History chart: " + tests + " tests over " + TimeUnit.MILLISECONDS.toHours(to - from) + " h");
+    }
+
+    // Reuses the existing data points, like the live chart, instead of rebuilding the series
+    private static void setPoints(XYChart.Series<Number, Number> series, TrendSeries points) {
+        ObservableList<XYChart.Data<Number, Number>> data = series.getData();
+        int size = points.size();
+        if (data.size() > size) {
+            data.remove(size, data.size());
+        }
+        int reused = data.size();
+        for (int i = 0; i < reused; i++) {
+            XYChart.Data<Number, Number> point = data.get(i);
+            point.setXValue(points.timeAt(i));
+            point.setYValue(points.valueAt(i));
+        }
+        List<XYChart.Data<Number, Number>> added = new ArrayList<>(size - reused);
+        for (int i = reused; i < size; i++) {
+            added.add(new XYChart.Data<>(points.timeAt(i), points.valueAt(i)));
+        }
+        data.addAll(added); // One layout pass instead of one per point
+    }
+}
@@ -0,0 +1,30 @@
+package com.speedio.speedio_v1;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time ranges offered by the history chart, ending now.
+ */
+public enum TrendRange {
+    LAST_DAY("Last 24 hours", 1),
+    LAST_WEEK("Last 7 days", 7),
+    LAST_MONTH("Last 30 days", 30),
+    LAST_QUARTER("Last 90 days", 90);
+
+    private final String label;
+    private final long millis;
+
+    TrendRange(String label, int days) {
+        this.label = label;
+        this.millis = TimeUnit.DAYS.toMillis(days);
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    @Override
+    public String toString() {
+        return label; // Shown as is in the range picker
+    }
+}
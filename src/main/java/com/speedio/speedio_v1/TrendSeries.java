@@ -0,0 +1,28 @@
+package com.speedio.speedio_v1;
+
+/**
+ * Downsampled history of one direction, as produced by {@link MinMaxDownsampler}: timestamps in
+ * epoch milliseconds, in ascending order, with one Mbps value each.
+ */
+public final class TrendSeries {
+
+    private final long[] timestamps;
+    private final double[] values;
+
+    TrendSeries(long[] timestamps, double[] values) {
+        this.timestamps = timestamps;
+        this.values = values;
+    }
+
+    public int size() {
+        return timestamps.length;
+    }
+
+    public long timeAt(int index) {
+        return timestamps[index];
+    }
+
+    public double valueAt(int index) {
+        return values[index];
+    }
+}
@@ -0,0 +1,11 @@
+package com.speedio.speedio_v1;
+
+/**
+ * How {@link UploadSpeedCheckHandler} sends chunks: one at a time per connection, waiting for each
+ * response, or several in flight per connection with {@link ConcurrentChunkUploader}. Both report
+ * the same quantity, the payload throughput of all connections combined, so their results compare.
+ */
+public enum UploadMode {
+    SEQUENTIAL,
+    CONCURRENT
+}
@@ -1,130 +1,310 @@
 package com.speedio.speedio_v1;
 
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 
-import java.io.*;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 public class UploadSpeedCheckHandler {
 
     private static final Logger logger = Logger.getLogger(UploadSpeedCheckHandler.class.getName());
-    private static final String LIBRESPEED_URL = "https://speedio-server-16655e5b4064.herokuapp.com/upload"; // Replace with your Heroku app URL
+    static final String LIBRESPEED_URL = "https://speedio-server-16655e5b4064.herokuapp.com/upload"; // Replace with your Heroku app URL
     private static final int FILE_SIZE_MB = 10; // File size for upload tests
     private static final int TIMEOUT_MS = 300000; // Timeout for HTTP requests (5 minutes)
     private static final int CHUNK_SIZE_MB = 1; // Chunk size (1 MB)
+    private static final double BITS_PER_MEGABIT = 1_000_000; // Same decimal unit as the download test
+    public static final int DEFAULT_CHUNKS_IN_FLIGHT = 4;
+    private static final RequestConfig REQUEST_CONFIG = RequestConfig.custom()
+            .setSocketTimeout(TIMEOUT_MS)
+            .setConnectTimeout(TIMEOUT_MS)
+            .build();
 
 
     private final Consumer<Double> uploadSpeedCallback;
     private final int numberOfConnections; // Now fixed in code
     private final String alertEmail;
+    private final String uploadUrl;
     private boolean emailSent = false;
+    private volatile Consumer<Measurement> measurementListener = measurement -> { };
+    private volatile AdaptiveTestPolicy adaptivePolicy; // Null uploads the fixed FILE_SIZE_MB per connection
+    private volatile UploadMode uploadMode = UploadMode.SEQUENTIAL;
+    private volatile int chunksInFlight = DEFAULT_CHUNKS_IN_FLIGHT;
+    private volatile ChunkUploadResult lastConcurrentResult;
+    private volatile long testTimeoutMillis = TestRun.DEFAULT_TIMEOUT_MILLIS;
+    private volatile TestRun currentRun;
 
     public UploadSpeedCheckHandler(Consumer<Double> uploadSpeedCallback, String alertEmail) {
+        this(uploadSpeedCallback, alertEmail, LIBRESPEED_URL);
+    }
+
+    // Any server speaking the chunk protocol works, e.g. LocalSpeedTestServer for a LAN baseline
+    public UploadSpeedCheckHandler(Consumer<Double> uploadSpeedCallback, String alertEmail, String uploadUrl) {
         this.uploadSpeedCallback = uploadSpeedCallback;
         this.numberOfConnections = 5; // Fixed value
         this.alertEmail = alertEmail;
+        this.uploadUrl = uploadUrl;
+    }
+
+    // Receives one Measurement per completed test, e.g. MeasurementStore::append
+    public void setMeasurementListener(Consumer<Measurement> measurementListener) {
+        this.measurementListener = measurementListener;
+    }
+
+    // Keeps every connection sending chunks until the combined throughput estimate converges
+    public void setAdaptivePolicy(AdaptiveTestPolicy adaptivePolicy) {
+        this.adaptivePolicy = adaptivePolicy;
+    }
+
+    // CONCURRENT keeps chunksInFlight requests open per connection instead of waiting for every response
+    public void setUploadMode(UploadMode uploadMode, int chunksInFlight) {
+        if (chunksInFlight < 1) {
+            throw new IllegalArgumentException("At least one chunk must be in flight: " + chunksInFlight);
+        }
+        this.uploadMode = uploadMode;
+        this.chunksInFlight = chunksInFlight;
+    }
+
+    // Wire rate and protocol overhead of the last concurrent upload; null until one has run
+    public ChunkUploadResult getLastConcurrentResult() {
+        return lastConcurrentResult;
+    }
+
+    // Deadline for the tests this handler starts itself; callers passing a TestRun set their own
+    public void setTestTimeoutMillis(long testTimeoutMillis) {
+        if (testTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Test timeout must be positive: " + testTimeoutMillis);
+        }
+        this.testTimeoutMillis = testTimeoutMillis;
+    }
+
+    // Stops the running test, if any: open requests are aborted and the upload threads released
+    public boolean cancel() {
+        TestRun run = currentRun;
+        return run != null && run.cancel();
     }
 
     public void startSpeedTest() {
-        ExecutorService executorService = Executors.newFixedThreadPool(numberOfConnections);
+        startSpeedTest(new TestRun(testTimeoutMillis));
+    }
+
+    public void startSpeedTest(TestRun run) {
+        currentRun = run;
+        TestRun previous = run.bind();
+        try {
+            if (uploadMode == UploadMode.CONCURRENT) {
+                startConcurrentSpeedTest(run);
+            } else {
+                startSequentialSpeedTest(run);
+            }
+        } finally {
+            run.complete();
+            currentRun = null;
+            TestRun.restore(previous);
+        }
+    }
+
+    private void startSequentialSpeedTest(TestRun run) {
+        long startMillis = System.currentTimeMillis();
+        long startTime = System.nanoTime();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(numberOfConnections, runnable -> {
+            Thread thread = new Thread(runnable, "speedio-upload-" + threadCount.incrementAndGet());
+            thread.setDaemon(true); // A stalled upload must never keep the JVM alive
+            return thread;
+        });
         List<Future<Double>> futures = new ArrayList<>();
+        AdaptiveTestPolicy policy = adaptivePolicy;
+        ThroughputEstimator estimator = policy != null ? policy.newEstimator() : null;
+        AtomicLong uploadedBytes = new AtomicLong();
+        CountDownLatch finished = new CountDownLatch(numberOfConnections);
 
+        SpeedioMetrics.ACTIVE_UPLOADS.increment();
+        run.onAbort(executorService::shutdownNow);
         for (int i = 0; i < numberOfConnections; i++) {
-            futures.add(executorService.submit(this::checkUploadSpeed));
+            futures.add(executorService.submit(() -> {
+                TestRun previous = run.bind();
+                try {
+                    return checkUploadSpeed(estimator, uploadedBytes, run);
+                } finally {
+                    TestRun.restore(previous);
+                    finished.countDown();
+                }
+            }));
         }
 
         executorService.shutdown();
 
-        double totalSpeed = 0.0;
+        int successfulConnections = 0;
         try {
+            if (!run.await(finished)) {
+                long durationMillis = (System.nanoTime() - startTime) / 1_000_000;
+                measurementListener.accept(new Measurement(startMillis, Direction.UPLOAD, uploadUrl, 0.0,
+                        uploadedBytes.get(), durationMillis, Measurement.errorCodeOf(run.getOutcome())));
+                return;
+            }
+            long durationNanos = System.nanoTime() - startTime;
             for (Future<Double> future : futures) {
-                totalSpeed += future.get();
+                if (future.get() > 0) {
+                    successfulConnections++;
+                }
+            }
+            // Combined throughput of all connections, the same quantity the concurrent mode reports
+            long uploaded = uploadedBytes.get();
+            double speed = DownloadTimeSeries.mbps(uploaded, durationNanos);
+            double confidence = Double.NaN;
+            if (estimator != null) {
+                // Adaptive results leave out slow start, but are still summed over all connections
+                estimator.finish(System.nanoTime(), uploaded);
+                logger.info("Adaptive upload result (" + numberOfConnections + " connections, " + policy + "): " + estimator);
+                speed = estimator.getBitsPerSecond() / BITS_PER_MEGABIT;
+                uploaded = estimator.getBytes();
+                confidence = estimator.getConfidence();
             }
-            double averageSpeed = totalSpeed / numberOfConnections;
-            uploadSpeedCallback.accept(averageSpeed);
+            logger.info("Upload result (" + numberOfConnections + " connections): " + String.format("%.2f Mbps", speed));
+            uploadSpeedCallback.accept(speed);
+            logger.fine(() -> "Connection pool after upload test: " + HttpClientPool.getTotalStats());
+
+            SpeedioMetrics.UPLOAD_TRANSFER.observeNanos(durationNanos);
+            SpeedioMetrics.UPLOADS.increment();
+            long durationMillis = durationNanos / 1_000_000;
+            short errorCode = successfulConnections == numberOfConnections ? Measurement.ERROR_NONE : Measurement.ERROR_UPLOAD_FAILED;
+            measurementListener.accept(new Measurement(startMillis, Direction.UPLOAD, uploadUrl, speed,
+                    uploaded, durationMillis, errorCode, confidence));
 
             // Send email alert after speed test is completed
             if (alertEmail != null && !emailSent) {
-                sendAlertEmail(averageSpeed);
+                sendAlertEmail(speed);
                 emailSent = true;
             }
         } catch (InterruptedException | ExecutionException e) {
             logger.log(Level.SEVERE, "Error during concurrent upload speed test", e);
+        } finally {
+            SpeedioMetrics.ACTIVE_UPLOADS.decrement();
         }
     }
 
-    public double checkUploadSpeed() {
-        logger.info("Checking upload speed...");
+    private void startConcurrentSpeedTest(TestRun run) {
+        long startMillis = System.currentTimeMillis();
+        AdaptiveTestPolicy policy = adaptivePolicy;
+        ThroughputEstimator estimator = policy != null ? policy.newEstimator() : null;
+        long bytesPerConnection = policy != null
+                ? policy.getMaxBytes() / numberOfConnections
+                : FILE_SIZE_MB * 1024L * 1024L;
 
-        String fileId = UUID.randomUUID().toString(); // Generate unique file ID for each upload session
+        ChunkUploadResult result;
+        SpeedioMetrics.ACTIVE_UPLOADS.increment();
+        try {
+            result = new ConcurrentChunkUploader(uploadUrl, numberOfConnections, chunksInFlight, CHUNK_SIZE_MB * 1024L * 1024L)
+                    .upload(bytesPerConnection, estimator, run);
+        } finally {
+            SpeedioMetrics.ACTIVE_UPLOADS.decrement();
+        }
+        lastConcurrentResult = result;
+        SpeedioMetrics.UPLOAD_TRANSFER.observeNanos(result.getElapsedNanos());
+        SpeedioMetrics.UPLOADS.increment();
+        if (run.isAborted()) {
+            measurementListener.accept(new Measurement(startMillis, Direction.UPLOAD, uploadUrl, result.getPayloadMbps(),
+                    result.getPayloadBytes(), result.getElapsedNanos() / 1_000_000, Measurement.errorCodeOf(run.getOutcome())));
+            return;
+        }
 
-        try (CloseableHttpClient client = HttpClients.createDefault()) {
-            long startTime = System.nanoTime();
+        double speed = result.getPayloadMbps();
+        double confidence = Double.NaN;
+        if (estimator != null) {
+            estimator.finish(System.nanoTime(), result.getPayloadBytes());
+            speed = estimator.getBitsPerSecond() / BITS_PER_MEGABIT;
+            confidence = estimator.getConfidence();
+            logger.info("Adaptive concurrent upload (" + policy + "): " + estimator);
+        }
+        logger.info("Concurrent upload result (" + numberOfConnections + " connections x " + chunksInFlight + " in flight): " + result);
+        uploadSpeedCallback.accept(speed);
 
-            byte[] data = new byte[CHUNK_SIZE_MB * 1024 * 1024]; // Chunk size (1 MB)
-            ByteArrayInputStream dataStream = new ByteArrayInputStream(new byte[FILE_SIZE_MB * 1024 * 1024]);
+        short errorCode = result.getErrorType() == null ? Measurement.ERROR_NONE : Measurement.ERROR_UPLOAD_FAILED;
+        measurementListener.accept(new Measurement(startMillis, Direction.UPLOAD, uploadUrl, speed,
+                result.getPayloadBytes(), result.getElapsedNanos() / 1_000_000, errorCode, confidence));
 
-            long totalChunks = (long) Math.ceil((double) FILE_SIZE_MB / CHUNK_SIZE_MB);
+        if (alertEmail != null && !emailSent) {
+            sendAlertEmail(speed);
+            emailSent = true;
+        }
+    }
 
-            for (int chunkNumber = 1; chunkNumber <= totalChunks; chunkNumber++) {
-                int bytesRead = dataStream.read(data);
+    public double checkUploadSpeed() {
+        TestRun run = new TestRun(testTimeoutMillis);
+        try {
+            return checkUploadSpeed(null, new AtomicLong(), run);
+        } finally {
+            run.complete();
+        }
+    }
 
-                if (bytesRead > 0) {
-                    HttpPost uploadFile = new HttpPost(LIBRESPEED_URL);
-                    MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+    // With an estimator the connection sends chunks until it says stop, up to the policy's byte budget
+    private double checkUploadSpeed(ThroughputEstimator estimator, AtomicLong uploadedBytes, TestRun run) {
+        logger.info("Checking upload speed...");
 
-                    // Add the file data to the request
-                    builder.addBinaryBody("file", new ByteArrayInputStream(data, 0, bytesRead),
-                            ContentType.APPLICATION_OCTET_STREAM, "testfile_chunk_" + chunkNumber + ".bin");
+        String fileId = UUID.randomUUID().toString(); // Generate unique file ID for each upload session
 
-                    // Add additional fields
-                    builder.addTextBody("chunkNumber", String.valueOf(chunkNumber));
-                    builder.addTextBody("totalChunks", String.valueOf(totalChunks));
-                    builder.addTextBody("fileSizeMB", String.valueOf(FILE_SIZE_MB));
-                    builder.addTextBody("fileId", fileId); // Add the unique fileId
+        CloseableHttpClient client = HttpClientPool.getClient(); // Shared keep-alive pool, never closed here
 
-                    HttpEntity multipart = builder.build();
-                    uploadFile.setEntity(multipart);
+        try {
+            long startTime = System.nanoTime();
 
-                    RequestConfig requestConfig = RequestConfig.custom()
-                            .setSocketTimeout(TIMEOUT_MS)
-                            .setConnectTimeout(TIMEOUT_MS)
-                            .build();
-                    uploadFile.setConfig(requestConfig);
+            long chunkBytes = CHUNK_SIZE_MB * 1024L * 1024L;
+            long totalChunks = (long) Math.ceil((double) FILE_SIZE_MB / CHUNK_SIZE_MB);
+            if (estimator != null) {
+                long budgetPerConnection = estimator.getPolicy().getMaxBytes() / numberOfConnections;
+                totalChunks = Math.max(1, (budgetPerConnection + chunkBytes - 1) / chunkBytes);
+            }
+            long fileBytes = totalChunks * chunkBytes;
+            int fileSizeMB = (int) (fileBytes / (1024 * 1024));
+            long sentBytes = 0;
 
-                    HttpResponse response = client.execute(uploadFile);
-                    String responseBody = new BufferedReader(new InputStreamReader(response.getEntity().getContent()))
-                            .lines().collect(Collectors.joining("\n"));
+            for (int chunk = 1; chunk <= totalChunks; chunk++) {
+                final int chunkNumber = chunk;
+                long payloadLength = Math.min(chunkBytes, fileBytes - (chunkNumber - 1) * chunkBytes);
+
+                if (run.isAborted()) {
+                    return 0.0;
+                }
+                if (payloadLength > 0) {
+                    // The chunk body is generated while it is sent, so nothing chunk-sized is allocated
+                    String responseBody = postChunk(client, uploadUrl,
+                            new SyntheticChunkEntity(fileId, chunkNumber, totalChunks, fileSizeMB, payloadLength), run);
 
-                    logger.info("Response for chunk " + chunkNumber + ": " + responseBody);
+                    logger.fine(() -> "Response for chunk " + chunkNumber + ": " + responseBody);
 
                     if (!responseBody.contains("Chunk received, waiting for more chunks")) {
                         logger.warning("Unexpected response for chunk " + chunkNumber + ": " + responseBody);
+                        SpeedioMetrics.recordError("UPLOAD_UNEXPECTED_RESPONSE");
                         return 0.0;
                     }
+                    sentBytes += payloadLength;
+                    long uploaded = uploadedBytes.addAndGet(payloadLength);
+                    // Stopping early leaves the server with fewer chunks than announced in totalChunks
+                    if (estimator != null && estimator.update(System.nanoTime(), uploaded)) {
+                        break;
+                    }
                 } else {
-                    logger.warning("Failed to read data for chunk " + chunkNumber);
+                    logger.warning("No data left for chunk " + chunkNumber);
                     return 0.0;
                 }
             }
 
             long endTime = System.nanoTime();
             double durationSeconds = (endTime - startTime) / 1_000_000_000.0;
-            double uploadSpeed = (FILE_SIZE_MB * 8.0) / durationSeconds; // Mbps (Megabits per second)
+            double uploadSpeed = (sentBytes * 8.0 / BITS_PER_MEGABIT) / durationSeconds; // Mbps (Megabits per second)
 
             // Round to two decimal places
             uploadSpeed = Math.round(uploadSpeed * 100.0) / 100.0;
@@ -134,15 +314,38 @@ public class UploadSpeedCheckHandler {
 
             return uploadSpeed;
         } catch (IOException e) {
+            if (run.isAborted()) {
+                return 0.0; // The run aborted the request itself
+            }
             logger.log(Level.SEVERE, "Error during HTTP upload", e);
+            SpeedioMetrics.recordError("UPLOAD_IO_ERROR");
             return 0.0;
         }
     }
 
+    // Aborting the run aborts the request, which closes its connection instead of returning it to the pool
+    static String postChunk(CloseableHttpClient client, String url, SyntheticChunkEntity chunk, TestRun run) throws IOException {
+        HttpPost uploadFile = new HttpPost(url);
+        uploadFile.setEntity(chunk);
+        uploadFile.setConfig(REQUEST_CONFIG);
+
+        Runnable abort = uploadFile::abort;
+        run.onAbort(abort);
+        long startNanos = System.nanoTime();
+        try (CloseableHttpResponse response = client.execute(uploadFile)) {
+            // Consuming the entity returns the connection to the pool for the next chunk
+            return EntityUtils.toString(response.getEntity());
+        } finally {
+            run.removeOnAbort(abort);
+            SpeedioMetrics.UPLOAD_CHUNK.observeNanos(System.nanoTime() - startNanos);
+        }
+    }
+
     private void sendAlertEmail(double uploadSpeed) {
         if (alertEmail != null && !alertEmail.isEmpty()) {
-            EmailAlertSender.sendEmailAlert(alertEmail, "Upload Speed Alert", "The upload speed has fallen below the threshold. Current speed: " + uploadSpeed + " Mbps.");
-            logger.info("Alert email sent to " + alertEmail);
+            if (EmailAlertSender.sendEmailAlert(alertEmail, "Upload Speed Alert", "The upload speed has fallen below the threshold. Current speed: " + uploadSpeed + " Mbps.")) {
+                logger.info("Alert email queued for " + alertEmail);
+            }
         } else {
             logger.warning("Email address is empty. Cannot send alert email.");
         }
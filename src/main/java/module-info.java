@@ -5,6 +5,7 @@ module com.speedio.speedio_v1 {
     requires org.apache.commons.net;
     requires jspeedtest;
     requires java.net.http;
+    requires jdk.httpserver;
     requires com.fasterxml.jackson.databind;
     requires org.apache.httpcomponents.httpcore;  // Use 'static' for non-modularized libraries
     requires org.apache.httpcomponents.httpclient;
@@ -0,0 +1,70 @@
+package com.speedio.speedio_v1;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BatchCodecTest {
+
+    static final List<Measurement> MEASUREMENTS = List.of(
+            new Measurement(1_700_000_000_000L, Direction.DOWNLOAD, "https://a.example/file", 93.25, 10_485_760, 900,
+                    Measurement.ERROR_NONE),
+            new Measurement(1_700_000_060_000L, Direction.UPLOAD, "https://b.example/upload", 41.5, 52_428_800, 10_250,
+                    Measurement.ERROR_UPLOAD_FAILED, 0.87).withBackgroundMbps(3.75),
+            // The agent's clock stepped back
+            new Measurement(1_699_999_990_000L, Direction.DOWNLOAD, "https://a.example/file", 0.0, 0, 180_000,
+                    Measurement.ERROR_TIMED_OUT, Double.NaN).withBackgroundMbps(0.0));
+
+    private static final MeasurementBatch BATCH = new MeasurementBatch("agent-1", 0x1234_5678_9abc_def0L, MEASUREMENTS);
+
+    @Test
+    void binaryRoundTrip() throws IOException {
+        byte[] body = BatchCodec.encode(BATCH, false);
+        assertBatch(BATCH, BatchCodec.decode(body, BatchCodec.BINARY_TYPE));
+    }
+
+    @Test
+    void jsonRoundTrip() throws IOException {
+        byte[] body = BatchCodec.encode(BATCH, true);
+        assertBatch(BATCH, BatchCodec.decode(body, BatchCodec.JSON_TYPE + "; charset=utf-8"));
+    }
+
+    @Test
+    void truncatedBinaryBatchIsRejected() throws IOException {
+        byte[] body = BatchCodec.encodeBinary(BATCH);
+        assertThrows(IOException.class, () -> BatchCodec.decodeBinary(Arrays.copyOf(body, body.length - 3)));
+    }
+
+    @Test
+    void bodyThatIsNotABatchIsRejected() {
+        assertThrows(IOException.class, () -> BatchCodec.decode("{\"hello\":1}".getBytes(), BatchCodec.JSON_TYPE));
+        assertThrows(IOException.class, () -> BatchCodec.decode(new byte[16], BatchCodec.BINARY_TYPE));
+    }
+
+    static void assertBatch(MeasurementBatch expected, MeasurementBatch actual) {
+        assertEquals(expected.getAgentId(), actual.getAgentId());
+        assertEquals(expected.getBatchId(), actual.getBatchId());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertMeasurement(expected.getMeasurements().get(i), actual.getMeasurements().get(i));
+        }
+    }
+
+    // assertEquals on doubles treats NaN as equal to NaN
+    static void assertMeasurement(Measurement expected, Measurement actual) {
+        assertEquals(expected.getTimestampMillis(), actual.getTimestampMillis());
+        assertEquals(expected.getDirection(), actual.getDirection());
+        assertEquals(expected.getTarget(), actual.getTarget());
+        assertEquals(expected.getMbps(), actual.getMbps());
+        assertEquals(expected.getBytes(), actual.getBytes());
+        assertEquals(expected.getDurationMillis(), actual.getDurationMillis());
+        assertEquals(expected.getErrorCode(), actual.getErrorCode());
+        assertEquals(expected.getConfidence(), actual.getConfidence());
+        assertEquals(expected.getBackgroundMbps(), actual.getBackgroundMbps());
+    }
+}
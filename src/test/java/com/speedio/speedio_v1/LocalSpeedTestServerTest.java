@@ -0,0 +1,140 @@
+package com.speedio.speedio_v1;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalSpeedTestServerTest {
+
+    private static final long DOWNLOAD_BYTES = 6L * 1024 * 1024; // Splits evenly over 1 and 3 streams
+    private static final long WARM_UP_BYTES = 256 * 1024;
+    private static final long UPLOAD_BYTES = 5 * 10L * 1024 * 1024; // 5 connections x 10 MB, as the handler sends
+
+    private LocalSpeedTestServer server;
+    private final List<Measurement> measurements = new ArrayList<>();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = LocalSpeedTestServer.loopback();
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.shutdown();
+    }
+
+    @Test
+    void singleStreamDownloadMeasuresEveryByte() {
+        assertDownload(download(1, DownloadEngine.JSPEEDTEST));
+    }
+
+    @Test
+    void parallelDownloadMeasuresEveryByte() {
+        assertDownload(download(3, DownloadEngine.JSPEEDTEST));
+    }
+
+    @Test
+    void nioDownloadMeasuresEveryByte() {
+        assertDownload(download(1, DownloadEngine.NIO));
+    }
+
+    @Test
+    void adaptiveDownloadFetchesAShortFileAgainUntilItHasEnough() {
+        assertAdaptiveDownloadOutlastsTheFile(DownloadEngine.JSPEEDTEST);
+    }
+
+    @Test
+    void adaptiveNioDownloadFetchesAShortFileAgainUntilItHasEnough() {
+        assertAdaptiveDownloadOutlastsTheFile(DownloadEngine.NIO);
+    }
+
+    @Test
+    void sequentialUploadIsAcknowledgedChunkByChunk() {
+        assertUpload(upload(UploadMode.SEQUENTIAL));
+    }
+
+    @Test
+    void concurrentUploadIsAcknowledgedChunkByChunk() {
+        assertUpload(upload(UploadMode.CONCURRENT));
+    }
+
+    @Test
+    void everyChunkGetsTheReplyTheUploadClientExpects() throws IOException {
+        TestRun run = new TestRun(TestRun.DEFAULT_TIMEOUT_MILLIS);
+        try {
+            for (int chunk = 1; chunk <= 2; chunk++) {
+                String reply = UploadSpeedCheckHandler.postChunk(HttpClientPool.getClient(), server.getUploadUrl(),
+                        new SyntheticChunkEntity("loopback-test", chunk, 2, 2, 1024 * 1024), run);
+                assertEquals(LocalSpeedTestServer.CHUNK_RECEIVED_REPLY, reply);
+            }
+        } finally {
+            run.complete();
+        }
+        assertTrue(server.getBytesReceived() >= 2 * 1024 * 1024);
+    }
+
+    private Measurement download(int streams, DownloadEngine engine) {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < streams; i++) {
+            urls.add(server.getDownloadUrl(DOWNLOAD_BYTES / streams));
+        }
+        DownloadSpeedCheckHandler handler = new DownloadSpeedCheckHandler(speed -> { }, 0.0, () -> { }, streams, urls);
+        handler.setWarmUpUrl(server.getDownloadUrl(WARM_UP_BYTES));
+        handler.setEngine(engine);
+        handler.setMeasurementListener(measurements::add);
+        handler.checkAndUpdateSpeed();
+        assertEquals(1, measurements.size());
+        return measurements.get(0);
+    }
+
+    // Two streams of a 1 MB file used to end an adaptive test at 2 MB, long before the estimate could settle
+    private void assertAdaptiveDownloadOutlastsTheFile(DownloadEngine engine) {
+        long fileBytes = 1024 * 1024;
+        DownloadSpeedCheckHandler handler = new DownloadSpeedCheckHandler(speed -> { }, 0.0, () -> { }, 2,
+                List.of(server.getDownloadUrl(fileBytes)));
+        handler.setAdaptivePolicy(new AdaptiveTestPolicy(8 * fileBytes, 15_000, 0.05));
+        handler.setEngine(engine);
+        handler.setMeasurementListener(measurements::add);
+        handler.checkAndUpdateSpeed();
+
+        assertEquals(1, measurements.size());
+        Measurement measurement = measurements.get(0);
+        assertEquals(Measurement.ERROR_NONE, measurement.getErrorCode());
+        assertTrue(measurement.getBytes() > 2 * fileBytes, measurement::toString);
+        assertTrue(measurement.getMbps() > 0, measurement::toString);
+    }
+
+    private void assertDownload(Measurement measurement) {
+        assertEquals(Direction.DOWNLOAD, measurement.getDirection());
+        assertEquals(Measurement.ERROR_NONE, measurement.getErrorCode());
+        assertEquals(DOWNLOAD_BYTES, measurement.getBytes());
+        assertTrue(measurement.getMbps() > 0, measurement::toString);
+        assertTrue(server.getBytesServed() >= DOWNLOAD_BYTES + WARM_UP_BYTES);
+    }
+
+    private Measurement upload(UploadMode mode) {
+        UploadSpeedCheckHandler handler = new UploadSpeedCheckHandler(speed -> { }, null, server.getUploadUrl());
+        handler.setUploadMode(mode, UploadSpeedCheckHandler.DEFAULT_CHUNKS_IN_FLIGHT);
+        handler.setMeasurementListener(measurements::add);
+        handler.startSpeedTest();
+        assertEquals(1, measurements.size());
+        return measurements.get(0);
+    }
+
+    // The handlers only count a chunk once the server answered it with CHUNK_RECEIVED_REPLY
+    private void assertUpload(Measurement measurement) {
+        assertEquals(Direction.UPLOAD, measurement.getDirection());
+        assertEquals(Measurement.ERROR_NONE, measurement.getErrorCode());
+        assertEquals(UPLOAD_BYTES, measurement.getBytes());
+        assertTrue(measurement.getMbps() > 0, measurement::toString);
+        assertTrue(server.getBytesReceived() >= UPLOAD_BYTES);
+    }
+}
@@ -0,0 +1,99 @@
+package com.speedio.speedio_v1;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MeasurementStoreTest {
+
+    private static final int RECORDS_PER_SEGMENT = 4;
+    private static final long RETENTION_MILLIS = Long.MAX_VALUE / 2;
+    private static final long START = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void reopeningDropsATruncatedLastRecord() throws IOException {
+        appendRecords(6); // One full segment, two records in the active one
+        Path active = directory.resolve("segment-0000000001.dat");
+        try (RandomAccessFile file = new RandomAccessFile(active.toFile(), "rw")) {
+            file.setLength(MeasurementStore.RECORD_SIZE + 20); // Tear the second record mid-way
+        }
+
+        assertRecoveredAndAppendable(5);
+    }
+
+    @Test
+    void reopeningDropsACorruptLastRecord() throws IOException {
+        appendRecords(6);
+        Path active = directory.resolve("segment-0000000001.dat");
+        try (RandomAccessFile file = new RandomAccessFile(active.toFile(), "rw")) {
+            long mbpsOffset = MeasurementStore.RECORD_SIZE + 8;
+            file.seek(mbpsOffset);
+            int b = file.read();
+            file.seek(mbpsOffset);
+            file.write(b ^ 0x01);
+        }
+
+        assertRecoveredAndAppendable(5);
+    }
+
+    @Test
+    void backgroundLoadSurvivesAReopen() throws IOException {
+        try (MeasurementStore store = new MeasurementStore(directory, RECORDS_PER_SEGMENT, RETENTION_MILLIS)) {
+            store.append(measurement(0).withBackgroundMbps(12.5));
+            store.append(measurement(1));
+        }
+
+        try (MeasurementStore store = new MeasurementStore(directory, RECORDS_PER_SEGMENT, RETENTION_MILLIS)) {
+            List<Measurement> all = store.query(Long.MIN_VALUE, Long.MAX_VALUE, null, null);
+            assertEquals(12.5, all.get(0).getBackgroundMbps());
+            assertTrue(Double.isNaN(all.get(1).getBackgroundMbps()));
+            assertEquals(1000, all.get(0).getDurationMillis());
+            assertEquals(1001, all.get(1).getDurationMillis());
+        }
+    }
+
+    private void appendRecords(int count) throws IOException {
+        try (MeasurementStore store = new MeasurementStore(directory, RECORDS_PER_SEGMENT, RETENTION_MILLIS)) {
+            for (int i = 0; i < count; i++) {
+                store.append(measurement(i));
+            }
+        }
+    }
+
+    private void assertRecoveredAndAppendable(int survivors) throws IOException {
+        try (MeasurementStore store = new MeasurementStore(directory, RECORDS_PER_SEGMENT, RETENTION_MILLIS)) {
+            List<Measurement> recovered = store.query(Long.MIN_VALUE, Long.MAX_VALUE, null, null);
+            assertEquals(survivors, recovered.size());
+            for (int i = 0; i < survivors; i++) {
+                assertEquals(START + i, recovered.get(i).getTimestampMillis());
+                assertEquals(100.0 + i, recovered.get(i).getMbps());
+            }
+
+            store.append(measurement(survivors));
+            store.append(measurement(survivors + 1));
+        }
+
+        try (MeasurementStore store = new MeasurementStore(directory, RECORDS_PER_SEGMENT, RETENTION_MILLIS)) {
+            List<Measurement> all = store.query(Long.MIN_VALUE, Long.MAX_VALUE, null, null);
+            assertEquals(survivors + 2, all.size());
+            for (int i = 0; i < all.size(); i++) {
+                assertEquals(START + i, all.get(i).getTimestampMillis());
+            }
+        }
+    }
+
+    private static Measurement measurement(int i) {
+        return new Measurement(START + i, i % 2 == 0 ? Direction.DOWNLOAD : Direction.UPLOAD, "target-" + (i % 3),
+                100.0 + i, 1_000_000L * (i + 1), 1000 + i, Measurement.ERROR_NONE);
+    }
+}
@@ -0,0 +1,112 @@
+package com.speedio.speedio_v1;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MonitoringSchedulerTest {
+
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final MonitoringScheduler scheduler = new MonitoringScheduler(1, 4);
+
+    @AfterEach
+    void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void runOnABusyLinkWaitsForItInsteadOfBeingSkipped() throws InterruptedException {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch secondRan = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        scheduler.schedule("first", "link", () -> {
+            order.add("first");
+            firstStarted.countDown();
+            awaitQuietly(releaseFirst);
+        }, HOUR_MILLIS, 0, 0);
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+
+        scheduler.schedule("second", "link", () -> {
+            order.add("second");
+            secondRan.countDown();
+        }, HOUR_MILLIS, 0, 0);
+        Thread.sleep(200); // The second run finds the link busy and queues
+        assertEquals(List.of("first"), order);
+
+        releaseFirst.countDown();
+        assertTrue(secondRan.await(5, TimeUnit.SECONDS), "queued run never started");
+        assertEquals(List.of("first", "second"), order);
+    }
+
+    @Test
+    void cancelledProbeLeavesTheQueue() throws InterruptedException {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch thirdRan = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        scheduler.schedule("first", "link", () -> {
+            firstStarted.countDown();
+            awaitQuietly(releaseFirst);
+        }, HOUR_MILLIS, 0, 0);
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        scheduler.schedule("second", "link", () -> order.add("second"), HOUR_MILLIS, 0, 0);
+        scheduler.schedule("third", "link", () -> {
+            order.add("third");
+            thirdRan.countDown();
+        }, HOUR_MILLIS, 0, 50);
+        Thread.sleep(200);
+
+        scheduler.cancel("second");
+        releaseFirst.countDown();
+        assertTrue(thirdRan.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("third"), order);
+    }
+
+    @Test
+    void oneOffRunGoesAheadOfQueuedScheduledRuns() throws InterruptedException {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch bothRan = new CountDownLatch(2);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        scheduler.schedule("first", "link", () -> {
+            firstStarted.countDown();
+            awaitQuietly(releaseFirst);
+        }, HOUR_MILLIS, 0, 0);
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        scheduler.schedule("scheduled", "link", () -> {
+            order.add("scheduled");
+            bothRan.countDown();
+        }, HOUR_MILLIS, 0, 0);
+        Thread.sleep(200); // Queued behind the first run
+
+        assertTrue(scheduler.runNext("link", () -> {
+            order.add("one-off");
+            bothRan.countDown();
+        }));
+        assertEquals(List.of(), order); // Returned without waiting for the link
+
+        releaseFirst.countDown();
+        assertTrue(bothRan.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("one-off", "scheduled"), order);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
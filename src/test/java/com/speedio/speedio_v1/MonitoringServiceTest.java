@@ -0,0 +1,86 @@
+package com.speedio.speedio_v1;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MonitoringServiceTest {
+
+    private static final long ADAPTIVE_MAX_MB = 2;
+
+    @TempDir
+    Path historyDir;
+
+    private MonitoringService service;
+
+    @AfterEach
+    void shutdown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void scheduledRunUsesTheSettingsOfTheLatestConfigure() throws InterruptedException {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch bothMeasured = new CountDownLatch(2);
+        List<Measurement> measurements = new CopyOnWriteArrayList<>();
+
+        service = new MonitoringService(config(false), new MonitoringListener() {
+            @Override
+            public void onTestStarted(Direction direction) {
+                if (firstStarted.getCount() > 0) { // Hold the link with the first run
+                    firstStarted.countDown();
+                    awaitQuietly(releaseFirst);
+                }
+            }
+
+            @Override
+            public void onMeasurement(Measurement measurement) {
+                measurements.add(measurement);
+                bothMeasured.countDown();
+            }
+        });
+        assertTrue(service.runDownloadNow());
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+
+        service.start(); // Its first run waits for the link
+        service.configure(config(true)); // As a Retry with new settings does while monitoring
+        releaseFirst.countDown();
+        assertTrue(bothMeasured.await(30, TimeUnit.SECONDS), "scheduled run never finished");
+
+        // A download's target is its URL, which is sized to the adaptive budget once adaptive is on
+        LocalSpeedTestServer server = service.getLocalServer();
+        assertEquals(server.getDownloadUrl(LocalSpeedTestServer.DEFAULT_DOWNLOAD_BYTES), measurements.get(0).getTarget());
+        assertEquals(server.getDownloadUrl(ADAPTIVE_MAX_MB * 1024 * 1024), measurements.get(1).getTarget());
+    }
+
+    private MonitorConfig config(boolean adaptive) {
+        Properties properties = new Properties();
+        properties.setProperty(MonitorConfig.HISTORY_DIR, historyDir.toString());
+        properties.setProperty(MonitorConfig.LOCAL_TARGET, "true");
+        properties.setProperty(MonitorConfig.INTERVAL_MINUTES, "60");
+        properties.setProperty(MonitorConfig.ADAPTIVE, Boolean.toString(adaptive));
+        properties.setProperty(MonitorConfig.ADAPTIVE_MAX_MB, Long.toString(ADAPTIVE_MAX_MB));
+        return new MonitorConfig(properties);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
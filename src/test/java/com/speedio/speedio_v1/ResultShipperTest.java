@@ -0,0 +1,158 @@
+package com.speedio.speedio_v1;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResultShipperTest {
+
+    private static final long BATCH_MILLIS = 50;
+    private static final long MAX_SPOOL_BYTES = 1024 * 1024;
+    private static final long WAIT_MILLIS = TimeUnit.SECONDS.toMillis(20); // Covers the shipper's first 5 s retry
+
+    @TempDir
+    Path spoolDir;
+
+    @TempDir
+    Path storeDir;
+
+    private final List<Measurement> received = new ArrayList<>();
+    private final List<AutoCloseable> cleanup = new ArrayList<>();
+
+    @AfterEach
+    void close() throws Exception {
+        for (int i = cleanup.size() - 1; i >= 0; i--) {
+            cleanup.get(i).close();
+        }
+    }
+
+    @Test
+    void measurementsReachTheCollectorAndItsStore() throws Exception {
+        MeasurementStore store = new MeasurementStore(storeDir);
+        cleanup.add(store);
+        ResultCollector collector = startCollector(0, SpeedioDaemon.storeSink(store));
+        ResultShipper shipper = startShipper(collector.getPort(), false, 2);
+
+        for (Measurement measurement : BatchCodecTest.MEASUREMENTS) {
+            shipper.ship(measurement);
+        }
+        awaitTrue(() -> store.size() == BatchCodecTest.MEASUREMENTS.size());
+
+        List<Measurement> stored = store.query(Long.MIN_VALUE, Long.MAX_VALUE, null, null);
+        for (int i = 0; i < stored.size(); i++) {
+            Measurement sent = BatchCodecTest.MEASUREMENTS.get(i);
+            // The collector files results under the agent's id; the rest, background load included, is kept
+            BatchCodecTest.assertMeasurement(sent.withTarget("agent-1/" + sent.getTarget()), stored.get(i));
+        }
+    }
+
+    @Test
+    void spooledBatchesAreReplayedOnceTheCollectorIsBack() throws Exception {
+        int port = freePort();
+        long shippedBefore = SpeedioMetrics.SHIPPED_MEASUREMENTS.get();
+        ResultShipper shipper = startShipper(port, false, 4);
+        List<Measurement> sent = ship(shipper, 10);
+        awaitTrue(() -> spooledFiles() >= 3); // Usually 4 + 4 + 2: the first failed send and two behind it
+
+        startCollector(port, this::receive);
+        awaitTrue(() -> receivedCount() == sent.size());
+        assertInOrder(sent);
+        awaitTrue(() -> spooledFiles() == 0);
+        assertEquals(sent.size(), SpeedioMetrics.SHIPPED_MEASUREMENTS.get() - shippedBefore);
+    }
+
+    @Test
+    void spoolSurvivesARestartOfTheAgent() throws Exception {
+        int port = freePort();
+        ResultShipper shipper = startShipper(port, true, 4);
+        List<Measurement> sent = ship(shipper, 6);
+        awaitTrue(() -> spooledFiles() >= 1);
+        shipper.close(); // Spools what is still queued
+        long spooled = spooledFiles();
+        assertTrue(spooled >= 2, "spooled " + spooled + " batches");
+
+        startCollector(port, this::receive);
+        startShipper(port, true, 4); // A new agent process on the same spool
+        awaitTrue(() -> receivedCount() == sent.size());
+        assertInOrder(sent);
+    }
+
+    private ResultCollector startCollector(int port, ResultCollector.BatchSink sink) throws IOException {
+        ResultCollector collector = new ResultCollector(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 2, sink);
+        collector.start();
+        cleanup.add(collector::shutdown);
+        return collector;
+    }
+
+    private ResultShipper startShipper(int port, boolean json, int batchSize) throws IOException {
+        URI uri = URI.create("http://127.0.0.1:" + port + ResultCollector.PATH);
+        ResultShipper shipper = new ResultShipper(uri, "agent-1", spoolDir, batchSize, BATCH_MILLIS, json, MAX_SPOOL_BYTES);
+        shipper.start();
+        cleanup.add(shipper);
+        return shipper;
+    }
+
+    private static List<Measurement> ship(ResultShipper shipper, int count) {
+        List<Measurement> sent = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Measurement measurement = new Measurement(1_700_000_000_000L + i, Direction.DOWNLOAD, "target", 50.0 + i,
+                    1_000_000, 1000, Measurement.ERROR_NONE).withBackgroundMbps(i);
+            shipper.ship(measurement);
+            sent.add(measurement);
+        }
+        return sent;
+    }
+
+    private synchronized void receive(MeasurementBatch batch) {
+        received.addAll(batch.getMeasurements());
+    }
+
+    private synchronized int receivedCount() {
+        return received.size();
+    }
+
+    private synchronized void assertInOrder(List<Measurement> sent) {
+        assertEquals(sent.size(), received.size());
+        for (int i = 0; i < sent.size(); i++) {
+            BatchCodecTest.assertMeasurement(sent.get(i), received.get(i));
+        }
+    }
+
+    private long spooledFiles() {
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            return files.filter(file -> !file.getFileName().toString().endsWith(".tmp")).count();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT_MILLIS);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out waiting");
+            Thread.sleep(20);
+        }
+    }
+}